@@ -151,6 +151,19 @@ public class Configuration {
         return sttFile;
     }
 
+    /**
+     * @return if mutations of the .stt file are appended to a journal instead
+     *         of rewriting the whole file
+     */
+    public boolean getSttJournalEnabled() {
+        return Boolean.parseBoolean(getPropertiesReplaced("sttJournal", "false"));
+    }
+
+    public int getSttJournalCompactionThreshold() {
+        return Integer.parseInt(getPropertiesReplaced(
+                "sttJournalCompactionThreshold", "200"));
+    }
+
     public File getDatabaseFile()
     {
     	return getSttFile();
@@ -176,6 +189,13 @@ public class Configuration {
         return getPropertiesReplaced("sysoutEncoding", "UTF-8");
     }
 
+    /**
+     * @return the file a running CLI daemon announces its port in
+     */
+    public File getCliDaemonFile() {
+        return new File(getPropertiesReplaced("cliDaemonFile", "$HOME$/.stt_daemon"));
+    }
+
     public int getCliReportingWidth() {
         return Integer.parseInt(getPropertiesReplaced(
                 "cliReportingWidth", "80"));
@@ -0,0 +1,147 @@
+package org.stt.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.base.Optional;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Lets a running {@link CommandServer} execute commands instead of starting
+ * everything needed to execute them here.
+ */
+class CommandClient {
+
+	private static final Logger LOG = Logger.getLogger(CommandClient.class.getName());
+
+	private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+	// the daemon executes the commands of all clients one after the other
+	private static final int READ_TIMEOUT_MILLIS = 60000;
+
+	private final File daemonFile;
+
+	CommandClient(File daemonFile) {
+		this.daemonFile = checkNotNull(daemonFile);
+	}
+
+	/**
+	 * Executes the command with the running daemon, copying its output as it
+	 * arrives.
+	 * 
+	 * @return the exit status of the command, absent if no daemon is
+	 *         running, the command has not been executed then
+	 */
+	Optional<Integer> forward(List<String> args, OutputStream printTo) throws IOException {
+		Properties daemon = readDaemonFile();
+		if (daemon == null) {
+			return Optional.absent();
+		}
+		try (Socket socket = connect(daemon)) {
+			if (socket == null) {
+				return Optional.absent();
+			}
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			out.writeUTF(daemon.getProperty(CommandServer.PROPERTY_TOKEN, ""));
+			out.writeInt(args.size());
+			for (String arg : args) {
+				out.writeUTF(arg);
+			}
+			out.flush();
+
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			try {
+				return Optional.of(copyOutput(in, printTo));
+			} catch (EOFException e) {
+				throw new IOException("Daemon closed the connection without reporting the status of the command",
+						e);
+			}
+		}
+	}
+
+	/**
+	 * @return the exit status following the output
+	 */
+	private static int copyOutput(DataInputStream in, OutputStream printTo) throws IOException {
+		byte[] buffer = new byte[0];
+		int length;
+		while ((length = in.readInt()) != CommandServer.END_OF_OUTPUT) {
+			if (length < 0) {
+				throw new IOException("Invalid frame length " + length);
+			}
+			if (buffer.length < length) {
+				buffer = new byte[length];
+			}
+			in.readFully(buffer, 0, length);
+			printTo.write(buffer, 0, length);
+			printTo.flush();
+		}
+		return in.readInt();
+	}
+
+	boolean isDaemonRunning() throws IOException {
+		Properties daemon = readDaemonFile();
+		if (daemon == null) {
+			return false;
+		}
+		try (Socket socket = connect(daemon)) {
+			return socket != null;
+		}
+	}
+
+	private Properties readDaemonFile() {
+		if (!daemonFile.isFile()) {
+			return null;
+		}
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream(daemonFile)) {
+			properties.load(in);
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Cannot read daemon file " + daemonFile.getAbsolutePath(), e);
+			return null;
+		}
+		return properties;
+	}
+
+	/**
+	 * @return null if the daemon is not running anymore
+	 */
+	private Socket connect(Properties daemon) throws IOException {
+		int port;
+		try {
+			port = Integer.parseInt(daemon.getProperty(CommandServer.PROPERTY_PORT, ""));
+		} catch (NumberFormatException e) {
+			LOG.warning("Invalid port in daemon file " + daemonFile.getAbsolutePath());
+			return null;
+		}
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MILLIS);
+			socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+			return socket;
+		} catch (ConnectException e) {
+			socket.close();
+			// left behind by a daemon that has been killed
+			return null;
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package org.stt.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.AclEntry;
+import java.nio.file.attribute.AclEntryPermission;
+import java.nio.file.attribute.AclEntryType;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Executes the commands of {@link CommandClient}s with a {@link Main} that
+ * stays initialized in between, so they don't pay for starting up.
+ * <p>
+ * Listens on a local port, which is announced together with a random token
+ * in the daemon file. Clients have to send the token first, so only users
+ * able to read the file can execute commands. The file is created readable
+ * by its owner only. Commands are executed one after the other.
+ * </p>
+ * <p>
+ * Commands are executed with the daemon's working directory and without
+ * input, so {@link Main#runsLocally(List) commands needing them} are
+ * rejected.
+ * </p>
+ * <p>
+ * The output is streamed back while the command runs, as frames of its
+ * length followed by the bytes. A frame of length {@link #END_OF_OUTPUT}
+ * ends the output, followed by the exit status of the command.
+ * </p>
+ */
+class CommandServer implements Closeable {
+
+	private static final Logger LOG = Logger.getLogger(CommandServer.class.getName());
+
+	static final String PROPERTY_PORT = "port";
+	static final String PROPERTY_TOKEN = "token";
+	static final int END_OF_OUTPUT = 0;
+
+	private static final int READ_TIMEOUT_MILLIS = 5000;
+
+	private final Main main;
+	private final File daemonFile;
+	private final String encoding;
+	private final String token = new BigInteger(130, new SecureRandom()).toString(32);
+	private final ServerSocket serverSocket;
+
+	CommandServer(Main main, File daemonFile, String encoding) throws IOException {
+		this.main = checkNotNull(main);
+		this.daemonFile = checkNotNull(daemonFile);
+		this.encoding = checkNotNull(encoding);
+		serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		try {
+			writeDaemonFile();
+		} catch (IOException e) {
+			serverSocket.close();
+			throw e;
+		}
+	}
+
+	int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Executes the commands of clients until the server is closed
+	 */
+	void serve() {
+		while (!serverSocket.isClosed()) {
+			try (Socket socket = serverSocket.accept()) {
+				execute(socket);
+			} catch (IOException | RuntimeException e) {
+				if (!serverSocket.isClosed()) {
+					LOG.log(Level.WARNING, "Exception executing command of client", e);
+				}
+			}
+		}
+	}
+
+	private void execute(Socket socket) throws IOException {
+		// only a stalled client must not block the others, commands may run
+		// as long as they need
+		socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		if (!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+				in.readUTF().getBytes(StandardCharsets.UTF_8))) {
+			LOG.warning("Rejected client with invalid token");
+			return;
+		}
+		int argCount = in.readInt();
+		List<String> args = new ArrayList<>();
+		for (int i = 0; i < argCount; i++) {
+			args.add(in.readUTF());
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		// every line is sent right away
+		PrintStream printTo = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out)), true,
+				encoding);
+		int status;
+		if (Main.runsLocally(args)) {
+			printTo.println("cannot be executed by the daemon, it needs the input of the calling process");
+			status = Main.STATUS_FAILED;
+		} else {
+			status = main.executeCommand(args, printTo);
+		}
+		printTo.flush();
+
+		out.writeInt(END_OF_OUTPUT);
+		out.writeInt(status);
+		out.flush();
+	}
+
+	private void writeDaemonFile() throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(PROPERTY_PORT, Integer.toString(getPort()));
+		properties.setProperty(PROPERTY_TOKEN, token);
+
+		Path path = daemonFile.toPath();
+		Files.deleteIfExists(path);
+		createOwnerOnlyFile(path);
+		try (OutputStream out = Files.newOutputStream(path)) {
+			properties.store(out, "stt daemon");
+		}
+	}
+
+	/**
+	 * Creates the file with its permissions already restricted, so the token
+	 * is never readable by others.
+	 */
+	private static void createOwnerOnlyFile(Path path) throws IOException {
+		if (path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+			Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		} else if (path.getFileSystem().supportedFileAttributeViews().contains("acl")) {
+			UserPrincipal owner = path.getFileSystem().getUserPrincipalLookupService()
+					.lookupPrincipalByName(System.getProperty("user.name"));
+			final AclEntry ownerOnly = AclEntry.newBuilder().setType(AclEntryType.ALLOW).setPrincipal(owner)
+					.setPermissions(EnumSet.allOf(AclEntryPermission.class)).build();
+			Files.createFile(path, new FileAttribute<List<AclEntry>>() {
+				@Override
+				public String name() {
+					return "acl:acl";
+				}
+
+				@Override
+				public List<AclEntry> value() {
+					return Collections.singletonList(ownerOnly);
+				}
+			});
+		} else {
+			throw new IOException("Cannot restrict access to daemon file " + path.toAbsolutePath());
+		}
+	}
+
+	/**
+	 * Sends everything written as one frame, without closing the socket.
+	 */
+	private static class FrameOutputStream extends OutputStream {
+		private final DataOutputStream out;
+
+		FrameOutputStream(DataOutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				// would end the output
+				return;
+			}
+			out.writeInt(len);
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+	}
+
+	/**
+	 * Stops accepting commands, a command being executed is finished
+	 */
+	@Override
+	public void close() {
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Unable to close server socket", e);
+		}
+		if (!daemonFile.delete()) {
+			LOG.warning("Unable to delete daemon file " + daemonFile.getAbsolutePath());
+		}
+	}
+}
@@ -3,8 +3,10 @@ package org.stt.cli;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.PrintStream;
 import java.io.Reader;
 import java.util.List;
 
@@ -13,6 +15,7 @@ import org.stt.csv.importer.CsvImporter;
 import org.stt.model.TimeTrackingItem;
 import org.stt.persistence.ItemReader;
 import org.stt.persistence.ItemWriter;
+import org.stt.persistence.db.DBItemWriter;
 import org.stt.persistence.stt.STTItemReader;
 import org.stt.persistence.stt.STTItemWriter;
 import org.stt.ti.importer.TiImporter;
@@ -30,18 +33,21 @@ public class FormatConverter {
 	private ItemReader from;
 	private ItemWriter to;
 	private ItemWriter defaultItemWriter;
+	private PrintStream printTo;
 
 	/**
 	 * 
-	 * @param input
-	 *            if null, System.in is assumed
-	 * @param output
-	 *            if null, System.out is assumed
 	 * @param args
+	 * @param in
+	 *            read from if no source file is given
+	 * @param printTo
+	 *            progress and items without target file are written to
 	 */
-	public FormatConverter(ItemWriter itemWriter, List<String> args) {
+	public FormatConverter(ItemWriter itemWriter, List<String> args, InputStream in, PrintStream printTo) {
 		this.defaultItemWriter = Preconditions.checkNotNull(itemWriter);
 		Preconditions.checkNotNull(args);
+		Preconditions.checkNotNull(in);
+		this.printTo = Preconditions.checkNotNull(printTo);
 
 		File sourceFile = null;
 		String sourceFormat = "stt";
@@ -72,7 +78,7 @@ public class FormatConverter {
 			args.remove(targetIndex);
 		}
 
-		from = getReaderFrom(sourceFile, sourceFormat);
+		from = getReaderFrom(in, sourceFile, sourceFormat);
 		to = getWriterFrom(targetFile, targetFormat);
 	}
 
@@ -81,7 +87,7 @@ public class FormatConverter {
 			switch (targetFormat) {
 			case "stt":
 				if (output == null) {
-					return new STTItemWriter(new OutputStreamWriter(System.out,
+					return new STTItemWriter(new OutputStreamWriter(printTo,
 							"UTF-8"));
 				}
 				
@@ -98,10 +104,10 @@ public class FormatConverter {
 		}
 	}
 
-	private ItemReader getReaderFrom(File input, String sourceFormat) {
+	private ItemReader getReaderFrom(InputStream in, File input, String sourceFormat) {
 		Reader inputReader = null;
 		try {
-			inputReader = new InputStreamReader(System.in, "UTF-8");
+			inputReader = new InputStreamReader(in, "UTF-8");
 			if (input != null) {
 				inputReader = new InputStreamReader(new FileInputStream(input),
 						"UTF-8");
@@ -124,16 +130,20 @@ public class FormatConverter {
 	}
 
 	public void convert() throws IOException {
-		System.out.println("Converting...");
+		printTo.println("Converting...");
 		int count = 0;
-		Optional<TimeTrackingItem> current = null;
-		while ((current = from.read()).isPresent()) {
-			to.write(current.get());
-			++count;
+		if (to instanceof DBItemWriter) {
+			count = ((DBItemWriter) to).writeAll(from);
+		} else {
+			Optional<TimeTrackingItem> current = null;
+			while ((current = from.read()).isPresent()) {
+				to.write(current.get());
+				++count;
+			}
 		}
 
 		from.close();
 		to.close();
-		System.out.println(count+" items converted.");
+		printTo.println(count+" items converted.");
 	}
 }
@@ -4,15 +4,12 @@ import java.io.FileDescriptor;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.logging.Logger;
 
 import org.stt.BaseModule;
@@ -25,14 +22,12 @@ import org.stt.config.ConfigModule;
 import org.stt.event.EventBusAware;
 import org.stt.event.EventBusModule;
 import org.stt.model.TimeTrackingItem;
-import org.stt.persistence.IOUtil;
 import org.stt.persistence.ItemPersister;
-import org.stt.persistence.ItemReader;
 import org.stt.persistence.ItemReaderProvider;
 import org.stt.persistence.ItemWriter;
+import org.stt.persistence.db.DBStorage;
 import org.stt.persistence.db.h2.H2PersistenceModule;
 import org.stt.query.DNFClause;
-import org.stt.query.FilteredItemReader;
 import org.stt.query.TimeTrackingItemQueries;
 import org.stt.text.TextModule;
 
@@ -50,6 +45,9 @@ import com.google.inject.Provider;
 public class Main {
 
 	private static Logger LOG = Logger.getLogger(Main.class.getName());
+
+	static final int STATUS_OK = 0;
+	static final int STATUS_FAILED = 1;
 	
 
 	/*
@@ -65,6 +63,24 @@ public class Main {
 	 * ti fin // sets end time of previous item
 	 */
 	public static void main(String[] args) throws IOException {
+		List<String> argsList = new ArrayList<>(Arrays.asList(args));
+		boolean startDaemon = !argsList.isEmpty() && argsList.get(0).equals("daemon");
+
+		// a running daemon executes the command without starting up
+		// everything here
+		CommandClient client = new CommandClient(new Configuration().getCliDaemonFile());
+		if (startDaemon && client.isDaemonRunning()) {
+			System.out.println("daemon is already running");
+			return;
+		}
+		if (!startDaemon && !runsLocally(argsList)) {
+			Optional<Integer> status = client.forward(argsList, new FileOutputStream(FileDescriptor.out));
+			if (status.isPresent()) {
+				exitWith(status.get());
+				return;
+			}
+		}
+
         LOG.info("Starting injector");
         Injector injector = Guice.createInjector(new H2PersistenceModule(), new BaseModule(),  new TextModule(), new ConfigModule(), new EventBusModule());
 		
@@ -76,30 +92,51 @@ public class Main {
 				true, configuration.getSystemOutEncoding()));
 
 		Main main = injector.getInstance(Main.class);
-		List<String> argsList = new ArrayList<>(Arrays.asList(args));
-		main.executeCommand(argsList, System.out);
+		if (startDaemon) {
+			main.serve(configuration, System.out);
+			return;
+		}
+		exitWith(main.executeCommand(argsList, System.out));
 
 		// perform backup
 		//main.createNewBackupCreator(configuration).start();
 	}
 
+	private static void exitWith(int status) {
+		if (status != STATUS_OK) {
+			System.exit(status);
+		}
+	}
+
+	/**
+	 * @return whether the command uses the standard input or the working
+	 *         directory of the calling process, so a daemon can't execute it
+	 */
+	static boolean runsLocally(List<String> args) {
+		// convert reads from stdin and resolves relative paths
+		return !args.isEmpty() && args.get(0).startsWith("c");
+	}
+
 	//private Injector injector;
 	private Provider<ItemPersister> itemPersisterProvider;
 	private TimeTrackingItemQueries timeTrackingItemQueries;
 	private ItemReaderProvider itemReaderProvider;
 	private ReportPrinter reportPrinter;
 	private Provider<ItemWriter> itemWriterProvider;
+	private Optional<DBStorage> dbStorage;
 
 	@Inject public Main(@EventBusAware Provider<ItemPersister> itemPersisterProvider, 
 			ItemReaderProvider itemReaderProvider,
 			Provider<ItemWriter> itemWriterProvider,
 			TimeTrackingItemQueries timeTrackingItemQueries,
-			ReportPrinter reportPrinter) {
+			ReportPrinter reportPrinter,
+			Optional<DBStorage> dbStorage) {
 		this.itemPersisterProvider = checkNotNull(itemPersisterProvider);
 		this.itemReaderProvider = checkNotNull(itemReaderProvider);
 		this.itemWriterProvider = checkNotNull(itemWriterProvider);
 		this.timeTrackingItemQueries = checkNotNull(timeTrackingItemQueries);
 		this.reportPrinter = checkNotNull(reportPrinter);
+		this.dbStorage = checkNotNull(dbStorage);
 		
 
 	}
@@ -134,42 +171,70 @@ public class Main {
 	 * output all items where the comment contains (ignoring case) the given
 	 * args.
 	 * 
-	 * Only unique comments are printed.
+	 * Only unique comments are printed, with --limit N at most N of them.
 	 * 
 	 * The ordering of the output is from newest to oldest.
 	 * 
-	 * Useful for completion.
+	 * Useful for completion, where the limit keeps searching the history
+	 * short.
 	 */
-	private void search(Collection<String> args, PrintStream printTo)
-			throws IOException {
-
-		SortedSet<TimeTrackingItem> sortedItems = new TreeSet<>(
-				new Comparator<TimeTrackingItem>() {
-
-					@Override
-					public int compare(TimeTrackingItem o1, TimeTrackingItem o2) {
-						return o2.getStart().compareTo(o1.getStart());
-					}
-				});
-
-		
-		ItemReader readFrom = itemReaderProvider.provideReader();
+	private void search(List<String> args, PrintStream printTo) {
+		int limit = Integer.MAX_VALUE;
+		List<String> searchWords = new ArrayList<>();
+		Iterator<String> arg = args.iterator();
+		while (arg.hasNext()) {
+			String next = arg.next();
+			if (next.equals("--limit") && arg.hasNext()) {
+				try {
+					limit = Integer.parseInt(arg.next());
+				} catch (NumberFormatException e) {
+					usage(printTo);
+					return;
+				}
+			} else {
+				searchWords.add(next);
+			}
+		}
 
 		DNFClause searchFilter = new DNFClause();
 		searchFilter.withCommentContains(Joiner.on(" ")
-				.join(args));
-		ItemReader reader = new FilteredItemReader(readFrom, searchFilter);
-		sortedItems.addAll(IOUtil.readAll(reader));
+				.join(searchWords));
+		for (String comment : timeTrackingItemQueries.queryLatestComments(searchFilter, limit)) {
+			printTo.println(comment);
+		}
+	}
 
-		Set<String> sortedUniqueComments = new HashSet<>(sortedItems.size());
+	/**
+	 * Recalculates the daily totals of the database from its items, e.g.
+	 * after changing them with other tools
+	 */
+	private void rebuild(PrintStream printTo) throws IOException {
+		if (!dbStorage.isPresent()) {
+			printTo.println("nothing to rebuild");
+			return;
+		}
+		try {
+			dbStorage.get().rebuildDailyTotals();
+		} catch (SQLException e) {
+			throw new IOException(e);
+		}
+		printTo.println("rebuilt daily totals");
+	}
 
-		for (TimeTrackingItem i : sortedItems) {
-			String comment = i.getComment().orNull();
-			if (comment != null && !sortedUniqueComments.contains(comment)) {
-				sortedUniqueComments.add(comment);
-				printTo.println(comment);
+	/**
+	 * Executes the commands of later calls until the process is terminated
+	 */
+	private void serve(Configuration configuration, PrintStream printTo) throws IOException {
+		final CommandServer server = new CommandServer(this, configuration.getCliDaemonFile(),
+				configuration.getSystemOutEncoding());
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				server.close();
 			}
-		}
+		});
+		printTo.println("daemon listening on port " + server.getPort());
+		server.serve();
 	}
 
 	private void report(List<String> args, PrintStream printTo) {
@@ -220,15 +285,20 @@ public class Main {
 	}
 
 
-	void executeCommand(List<String> args, PrintStream printTo) {
+	/**
+	 * @return the exit status, {@link #STATUS_OK} if the command succeeded
+	 */
+	int executeCommand(List<String> args, PrintStream printTo) {
 		if (args.size() == 0) {
 			usage(printTo);
-			return;
+			return STATUS_FAILED;
 		}
 		
 		try {
 			String mainOperator = args.remove(0);
-			if (mainOperator.startsWith("o")) {
+			if (mainOperator.equals("rebuild")) {
+				rebuild(printTo);
+			} else if (mainOperator.startsWith("o")) {
 				// on
 				on(args, printTo);
 			} else if (mainOperator.startsWith("r")) {
@@ -242,13 +312,16 @@ public class Main {
 				search(args, printTo);
 			} else if (mainOperator.startsWith("c")) {
 				// convert
-				new FormatConverter(itemWriterProvider.get(), args).convert();
+				new FormatConverter(itemWriterProvider.get(), args, System.in, printTo).convert();
 			} else {
 				usage(printTo);
+				return STATUS_FAILED;
 			}
 		} catch (IOException e) {
 			LOG.throwing(Main.class.getName(), "parseCommandString", e);
+			return STATUS_FAILED;
 		}
+		return STATUS_OK;
 	}
 
 	/**
@@ -259,7 +332,9 @@ public class Main {
 				+ "on comment\t\t\tto start working on something\n"
 				+ "report [X days] [searchstring]\tto display a report\n"
 				+ "fin [and resume]\t\tto stop working\n"
-				+ "search [searchstring]\t\tto get a list of all comments of items matching the given search string\n"
+				+ "rebuild\t\t\t\tto recalculate the daily totals of the database\n"
+				+ "daemon\t\t\t\tto keep running and execute the commands of later calls, which start faster then\n"
+				+ "search [--limit N] [searchstring]\tto get a list of all comments (or the latest N) of items matching the given search string\n"
 				+ "convert [--sourceFormat stt|ti|csv] [--source sourceFile] [--targetFormat default|stt] [--target targetFile]\tConvert between different time tracking formats\n"
 				+ "\t\t\t\t--sourceFormat (optional; Default: stt): one of stt, ti, csv \n"
 				+ "\t\t\t\t--sourceFile (optional; Default: StdIn): Input file\n"
@@ -21,7 +21,9 @@ import org.stt.model.TimeTrackingItem;
 import org.stt.persistence.ItemReader;
 import org.stt.persistence.ItemReaderProvider;
 import org.stt.query.DNFClause;
+import org.stt.query.DefaultTimeTrackingItemQueries;
 import org.stt.query.FilteredItemReader;
+import org.stt.query.TimeTrackingItemQueries;
 import org.stt.reporting.OvertimeReportGenerator;
 import org.stt.reporting.SummingReportGenerator;
 import org.stt.reporting.SummingReportGenerator.Report;
@@ -42,12 +44,23 @@ public class ReportPrinter {
 	private final Configuration configuration;
 	private final WorkingtimeItemProvider workingtimeItemProvider;
 	private final ItemCategorizer categorizer;
+	private final TimeTrackingItemQueries queries;
+
+	public ReportPrinter(ItemReaderProvider readFrom,
+			Configuration configuration,
+			WorkingtimeItemProvider workingtimeItemProvider,
+			ItemCategorizer categorizer) {
+		this(readFrom, new DefaultTimeTrackingItemQueries(readFrom),
+				configuration, workingtimeItemProvider, categorizer);
+	}
 
 	@Inject public ReportPrinter(ItemReaderProvider readFrom,
+			TimeTrackingItemQueries queries,
 			Configuration configuration,
 			WorkingtimeItemProvider workingtimeItemProvider,
 			ItemCategorizer categorizer) {
 		this.readFrom = readFrom;
+		this.queries = queries;
 		this.configuration = configuration;
 		this.workingtimeItemProvider = workingtimeItemProvider;
 		this.categorizer = categorizer;
@@ -259,7 +272,7 @@ public class ReportPrinter {
 	}
 
 	private OvertimeReportGenerator createOvertimeReportGenerator() {
-		return new OvertimeReportGenerator(readFrom, categorizer,
+		return new OvertimeReportGenerator(queries, categorizer,
 				workingtimeItemProvider);
 	}
 
@@ -0,0 +1,149 @@
+package org.stt.event;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.stt.Service;
+import org.stt.model.FileChanged;
+import org.stt.model.ItemModified;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Collapses the change events posted within a short window into one
+ * {@link DataChanged}. A single command posts an {@link ItemModified}, and the
+ * file watcher follows with a {@link FileChanged} for the same write.
+ * <p>
+ * The window starts with the first change after the last notification, so
+ * notifications are late by at most the window. They are posted on a thread
+ * of the coalescer, so subscribers can query the items without blocking the
+ * UI. Subscribers updating the UI hand the results over to its thread.
+ * </p>
+ * <p>
+ * Caches that apply the individual events keep subscribing to them. They see
+ * every change before the notification is posted.
+ * </p>
+ */
+@Singleton
+public class ChangeCoalescer implements Service {
+    private static final Logger LOG = Logger.getLogger(ChangeCoalescer.class.getName());
+
+    public static final long DEFAULT_WINDOW_MILLIS = 250;
+
+    private final EventBus eventBus;
+    private final long windowMillis;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("stt-change-coalescer").build());
+
+    // guarded by this
+    private int pendingEvents;
+    private ScheduledFuture<?> scheduledNotification;
+    private long version;
+
+    private final AtomicLong receivedEventCount = new AtomicLong();
+    private final AtomicLong coalescedEventCount = new AtomicLong();
+    private final AtomicLong notificationCount = new AtomicLong();
+
+    @Inject
+    public ChangeCoalescer(EventBus eventBus) {
+        this(eventBus, DEFAULT_WINDOW_MILLIS);
+    }
+
+    public ChangeCoalescer(EventBus eventBus, long windowMillis) {
+        this.eventBus = checkNotNull(eventBus);
+        this.windowMillis = windowMillis;
+    }
+
+    @Override
+    public void start() throws Exception {
+        eventBus.register(this);
+    }
+
+    @Override
+    public void stop() {
+        eventBus.unregister(this);
+        scheduler.shutdownNow();
+        LOG.info("Posted " + getNotificationCount() + " notifications for " + getReceivedEventCount()
+                + " change events, saved " + getSavedRecomputationCount() + " recomputations per subscriber");
+    }
+
+    @Subscribe
+    public void itemModified(ItemModified event) {
+        changed();
+    }
+
+    @Subscribe
+    public void fileChanged(FileChanged event) {
+        changed();
+    }
+
+    private synchronized void changed() {
+        receivedEventCount.incrementAndGet();
+        pendingEvents++;
+        if (scheduledNotification == null) {
+            scheduledNotification = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Posts the notification for the pending changes now instead of at the
+     * end of the window.
+     */
+    void flush() {
+        DataChanged notification;
+        synchronized (this) {
+            if (scheduledNotification != null) {
+                scheduledNotification.cancel(false);
+                scheduledNotification = null;
+            }
+            if (pendingEvents == 0) {
+                return;
+            }
+            notification = new DataChanged(++version, pendingEvents);
+            pendingEvents = 0;
+        }
+        coalescedEventCount.addAndGet(notification.getCoalescedEvents());
+        notificationCount.incrementAndGet();
+        LOG.finest("Posting change " + notification.getVersion() + " for " + notification.getCoalescedEvents()
+                + " events");
+        // outside the lock, subscribers may cause further changes
+        eventBus.post(notification);
+    }
+
+    /**
+     * @return the number of change events received
+     */
+    public long getReceivedEventCount() {
+        return receivedEventCount.get();
+    }
+
+    /**
+     * @return the number of notifications posted
+     */
+    public long getNotificationCount() {
+        return notificationCount.get();
+    }
+
+    /**
+     * @return how often each subscriber of {@link DataChanged} did not have to
+     *         recompute, compared to recomputing on every change event. Changes
+     *         not yet notified are not included.
+     */
+    public long getSavedRecomputationCount() {
+        return coalescedEventCount.get() - notificationCount.get();
+    }
+}
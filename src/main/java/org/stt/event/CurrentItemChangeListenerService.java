@@ -5,8 +5,6 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import org.stt.Service;
 import org.stt.model.CurrentItemChanged;
-import org.stt.model.FileChanged;
-import org.stt.model.ItemModified;
 import org.stt.model.TimeTrackingItem;
 import org.stt.query.TimeTrackingItemQueries;
 
@@ -38,13 +36,7 @@ public class CurrentItemChangeListenerService implements Service {
 	}
 	
 	@Subscribe
-	public void onFileChange(FileChanged event)
-	{
-		checkActiveItem();
-	}
-	
-	@Subscribe
-	public void itemChanged(ItemModified itemModified)
+	public void onDataChanged(DataChanged event)
 	{
 		checkActiveItem();
 	}
@@ -0,0 +1,30 @@
+package org.stt.event;
+
+/**
+ * Posted once for a burst of {@link org.stt.model.ItemModified} and
+ * {@link org.stt.model.FileChanged} events, for subscribers that recompute
+ * everything on any change.
+ */
+public class DataChanged {
+    private final long version;
+    private final int coalescedEvents;
+
+    public DataChanged(long version, int coalescedEvents) {
+        this.version = version;
+        this.coalescedEvents = coalescedEvents;
+    }
+
+    /**
+     * @return increases with every notification, starting at 1
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the number of change events this notification stands for
+     */
+    public int getCoalescedEvents() {
+        return coalescedEvents;
+    }
+}
@@ -11,19 +11,30 @@ import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.stt.Service;
 import org.stt.model.FileChanged;
 import org.stt.persistence.DatabaseFile;
+import org.stt.persistence.OwnFileWrites;
+import org.stt.persistence.stt.STTJournal;
 
 import com.google.common.eventbus.EventBus;
 import com.google.inject.Inject;
 
 import javafx.application.Platform;
 
+/**
+ * Posts {@link FileChanged} when the watched files are changed by someone
+ * else. Changes of this process are followed by item events instead, so
+ * changes leaving a file just as its last {@link OwnFileWrites own write}
+ * are skipped.
+ */
 public class FileChangeListenerService implements Service
 {
 	
@@ -32,17 +43,18 @@ public class FileChangeListenerService implements Service
 	private EventBus eventBus;
 	private WatchService watchService;
 
-	private Path databaseFile;
+	private List<Path> watchedFiles;
+	private final OwnFileWrites ownWrites;
 
 	class WatchHandler extends Thread
 	{
 		Logger LOG = Logger.getLogger(WatchHandler.class.getName());
 		
-		private Path fileToWatch;
+		private List<Path> filesToWatch;
 		private WatchService watchService;
 
-		public WatchHandler(Path fileToWatch, WatchService watchService) {
-			this.fileToWatch = checkNotNull(fileToWatch);
+		public WatchHandler(List<Path> filesToWatch, WatchService watchService) {
+			this.filesToWatch = checkNotNull(filesToWatch);
 			this.watchService = checkNotNull(watchService);
 		}
 		
@@ -51,13 +63,18 @@ public class FileChangeListenerService implements Service
 		{
 
 			try {
-				Path parentDir = fileToWatch.getParent();
-				if (parentDir == null)
+				Set<Path> parentDirs = new HashSet<>();
+				for (Path fileToWatch : filesToWatch) {
+					Path parentDir = fileToWatch.getParent();
+					if (parentDir != null && parentDirs.add(parentDir)) {
+						parentDir.register(watchService, 
+								StandardWatchEventKinds.ENTRY_CREATE,
+					            StandardWatchEventKinds.ENTRY_DELETE, 
+					            StandardWatchEventKinds.ENTRY_MODIFY);
+					}
+				}
+				if (parentDirs.isEmpty())
 					return;
-				parentDir.register(watchService, 
-						StandardWatchEventKinds.ENTRY_CREATE,
-			            StandardWatchEventKinds.ENTRY_DELETE, 
-			            StandardWatchEventKinds.ENTRY_MODIFY);
 				
 				while (!Thread.interrupted()) {
 					try {
@@ -65,9 +82,9 @@ public class FileChangeListenerService implements Service
 						List<WatchEvent<?>> pollEvents = watchKey.pollEvents();
 						for (WatchEvent<?> event : pollEvents)
 						{
-							Path changedFile = (Path) event.context();
+							Path changedFile = watchedFile((Path) event.context());
 							
-							if (fileToWatch.endsWith(changedFile))
+							if (changedFile != null)
 							{
 								Platform.runLater(new Runnable() {
 									
@@ -91,21 +108,32 @@ public class FileChangeListenerService implements Service
 				LOG.log(Level.SEVERE, "Exception in WatchHandler", e);
 			}
 		}
+
+		private Path watchedFile(Path changedFile) {
+			for (Path fileToWatch : filesToWatch) {
+				if (fileToWatch.endsWith(changedFile)) {
+					return fileToWatch;
+				}
+			}
+			return null;
+		}
 	}
 	
 
 	@Inject
-	public FileChangeListenerService(@DatabaseFile File file, EventBus eventBus) {
-		this.databaseFile = checkNotNull(file).toPath();
+	public FileChangeListenerService(@DatabaseFile File file, EventBus eventBus, OwnFileWrites ownWrites) {
+		// in journal mode, changes of the .stt file only go to its journal
+		this.watchedFiles = Arrays.asList(checkNotNull(file).toPath(), STTJournal.journalFileOf(file).toPath());
 		this.eventBus = checkNotNull(eventBus);
-		LOG.info("Starting FileChangeListenerService for file "+this.databaseFile);
+		this.ownWrites = checkNotNull(ownWrites);
+		LOG.info("Starting FileChangeListenerService for files "+this.watchedFiles);
 	}
 	
 	@Override
 	public void start() throws Exception {
 		watchService = FileSystems.getDefault().newWatchService();
 		
-		WatchHandler handler = new WatchHandler(databaseFile, watchService);
+		WatchHandler handler = new WatchHandler(watchedFiles, watchService);
 		handler.start();
 	}
 
@@ -121,6 +149,10 @@ public class FileChangeListenerService implements Service
 	}
 	
 	protected void notifyFileChanged(Path changedFile) {
+		if (ownWrites.consume(changedFile)) {
+			LOG.finest("Skipping own change of " + changedFile);
+			return;
+		}
 		eventBus.post(new FileChanged(changedFile));
 	}
 }
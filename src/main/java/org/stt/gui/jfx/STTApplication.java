@@ -29,6 +29,7 @@ import org.stt.command.NewItemCommand;
 import org.stt.command.NothingCommand;
 import org.stt.config.CommandTextConfig;
 import org.stt.config.TimeTrackingItemListConfig;
+import org.stt.event.DataChanged;
 import org.stt.event.ShuttingDown;
 import org.stt.fun.Achievement;
 import org.stt.fun.AchievementService;
@@ -45,8 +46,6 @@ import org.stt.gui.jfx.text.CommandHighlighter;
 import org.stt.gui.jfx.text.ContextPopupCreator;
 import org.stt.gui.jfx.text.HighlightingOverlay;
 import org.stt.gui.jfx.text.PopupAtCaretPlacer;
-import org.stt.model.FileChanged;
-import org.stt.model.ItemModified;
 import org.stt.model.TimeTrackingItem;
 import org.stt.model.TimeTrackingItemFilter;
 import org.stt.query.TimeTrackingItemQueries;
@@ -314,12 +313,7 @@ public class STTApplication implements DeleteActionHandler, EditActionHandler,
     }
     
     @Subscribe
-    public void updateOnModification(ItemModified event) {
-        updateItems();
-    }
-
-    @Subscribe
-    public void updateOnFileChanged(FileChanged event) {
+    public void updateOnDataChanged(DataChanged event) {
         updateItems();
     }
     
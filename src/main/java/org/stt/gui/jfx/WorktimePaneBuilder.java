@@ -3,6 +3,7 @@ package org.stt.gui.jfx;
 import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.collections.ObservableList;
 import javafx.scene.Node;
@@ -14,10 +15,9 @@ import javafx.scene.layout.Pane;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.joda.time.Period;
+import org.stt.event.DataChanged;
 import org.stt.event.TimePassedEvent;
 import org.stt.model.CurrentItemChanged;
-import org.stt.model.FileChanged;
-import org.stt.model.ItemModified;
 import org.stt.gui.jfx.binding.STTBindings;
 import org.stt.query.WorkTimeQueries;
 
@@ -37,7 +37,8 @@ public class WorktimePaneBuilder implements AdditionalPaneBuilder {
     private SimpleObjectProperty<Duration> weekWorktime = new SimpleObjectProperty<>();
     private WorkTimeQueries workTimeQueries;
 	private DateTime lastUpdate;
-	private boolean activeItem = true;
+	// changed on the thread of the events
+	private volatile boolean activeItem = true;
 
     @Inject
     public WorktimePaneBuilder(ResourceBundle i18n, WorkTimeQueries workTimeQueries) {
@@ -46,14 +47,9 @@ public class WorktimePaneBuilder implements AdditionalPaneBuilder {
     }
 
     @Subscribe
-    public void updateOnModification(ItemModified event) {
+    public void updateOnDataChanged(DataChanged event) {
         updateItems();
     }
-    
-    @Subscribe
-    public void updateOnFileChanged(FileChanged event) {
-    	updateItems();
-    }
 
 	@Subscribe 
 	public void onCurrentItemChanged(CurrentItemChanged event)
@@ -69,8 +65,25 @@ public class WorktimePaneBuilder implements AdditionalPaneBuilder {
 
     private void updateItems() {
         LOG.finest("Updating remaining worktime");
-        remainingWorktime.setValue(workTimeQueries.queryRemainingWorktimeToday());
-        weekWorktime.setValue(workTimeQueries.queryWeekWorktime());
+        final Duration remainingWorktimeToday = workTimeQueries.queryRemainingWorktimeToday();
+        final Duration worktimeWeek = workTimeQueries.queryWeekWorktime();
+        if (Platform.isFxApplicationThread()) {
+            show(remainingWorktimeToday, worktimeWeek);
+            return;
+        }
+        // changes are notified on another thread, the labels are bound to
+        // the properties
+        Platform.runLater(new Runnable() {
+            @Override
+            public void run() {
+                show(remainingWorktimeToday, worktimeWeek);
+            }
+        });
+    }
+
+    private void show(Duration remainingWorktimeToday, Duration worktimeWeek) {
+        remainingWorktime.setValue(remainingWorktimeToday);
+        weekWorktime.setValue(worktimeWeek);
         lastUpdate = DateTime.now();
     }
     
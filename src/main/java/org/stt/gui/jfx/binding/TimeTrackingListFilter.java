@@ -1,6 +1,7 @@
 package org.stt.gui.jfx.binding;
 
 import com.google.common.base.Preconditions;
+import javafx.beans.InvalidationListener;
 import javafx.beans.binding.ListBinding;
 import javafx.beans.property.StringProperty;
 import javafx.collections.FXCollections;
@@ -14,6 +15,8 @@ public class TimeTrackingListFilter extends ListBinding<TimeTrackingItem> {
 	private final ObservableList<TimeTrackingItem> allItems;
 	private final StringProperty filterProperty;
 	private final boolean filterDuplicates;
+	// comments are lower cased once instead of on each change of the filter
+	private final Map<String, String> lowerCaseComments = new HashMap<>();
 
 	public TimeTrackingListFilter(ObservableList<TimeTrackingItem> allItems,
 			StringProperty filterProperty, boolean filterDuplicates) {
@@ -22,6 +25,7 @@ public class TimeTrackingListFilter extends ListBinding<TimeTrackingItem> {
 		this.filterDuplicates = filterDuplicates;
 
 		bind(allItems, filterProperty);
+		allItems.addListener((InvalidationListener) observable -> lowerCaseComments.clear());
 	}
 
 	@Override
@@ -54,6 +58,15 @@ public class TimeTrackingListFilter extends ListBinding<TimeTrackingItem> {
 
 	private boolean matchesFilter(TimeTrackingItem item, String filter) {
 		return item.getComment().isPresent()
-				&& item.getComment().get().toLowerCase().contains(filter);
+				&& lowerCase(item.getComment().get()).contains(filter);
+	}
+
+	private String lowerCase(String comment) {
+		String lowerCase = lowerCaseComments.get(comment);
+		if (lowerCase == null) {
+			lowerCase = comment.toLowerCase();
+			lowerCaseComments.put(comment, lowerCase);
+		}
+		return lowerCase;
 	}
 }
@@ -8,11 +8,10 @@ import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.joda.time.Period;
 import org.stt.Service;
+import org.stt.event.DataChanged;
 import org.stt.event.TimePassedEvent;
 import org.stt.gui.Notification;
 import org.stt.model.CurrentItemChanged;
-import org.stt.model.FileChanged;
-import org.stt.model.ItemModified;
 import org.stt.query.TimeTrackingItemQueries;
 import org.stt.query.WorkTimeQueries;
 
@@ -51,27 +50,21 @@ public class WorkStatusService implements Service {
 	}
 
 	@Subscribe
-	public void onCurrentItemChanged(CurrentItemChanged event)
+	public synchronized void onCurrentItemChanged(CurrentItemChanged event)
 	{
 		updateWorktime();
 		checkWorktime();
 	}
 	
 	@Subscribe
-	public void onFileChanged(FileChanged event) {
-		updateWorktime();
-		checkWorktime();
-	}
-	
-	@Subscribe
-	public void updateOnModification(ItemModified event) {
+	public synchronized void onDataChanged(DataChanged event) {
 		updateWorktime();
 		checkWorktime();
 	}
 
 
 	@Subscribe
-	public void timePassed(TimePassedEvent event) {
+	public synchronized void timePassed(TimePassedEvent event) {
 		timeElapsed();
 		checkWorktime();	
 	}
@@ -0,0 +1,179 @@
+package org.stt.persistence;
+
+import com.google.common.base.Optional;
+import org.joda.time.DateTime;
+import org.stt.model.TimeTrackingItem;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Items sorted by start, which can be modified the same way the persisters
+ * modify their storage, without rereading it.
+ * <p>
+ * Inserting resolves overlaps like the STT InsertHelper: items covered by the
+ * new item are removed, others get trimmed or split. Relies on the items not
+ * overlapping each other, which all persisters ensure.
+ * </p>
+ * <p>
+ * Not thread safe.
+ * </p>
+ */
+class ItemTimeline {
+    private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            int result = a.start.compareTo(b.start);
+            return result != 0 ? result : Long.compare(a.sequence, b.sequence);
+        }
+    };
+
+    private final NavigableSet<Entry> entries = new TreeSet<>(ORDER);
+    // keeps items with equal start in the order they were added
+    private long nextSequence;
+
+    ItemTimeline(Collection<TimeTrackingItem> sortedItems) {
+        for (TimeTrackingItem item : sortedItems) {
+            add(item);
+        }
+    }
+
+    void insert(TimeTrackingItem newItem) {
+        checkNotNull(newItem);
+        List<Entry> removed = new ArrayList<>();
+        List<TimeTrackingItem> added = new ArrayList<>();
+        Entry first = firstEntryAffectedBy(newItem);
+        if (first != null) {
+            if (first.start.isBefore(newItem.getStart())) {
+                added.add(first.item.withEnd(newItem.getStart()));
+            }
+            added.add(newItem);
+            Iterator<Entry> iterator = entries.tailSet(first, true).iterator();
+            Entry current = iterator.next();
+            while (current != null && !endsAfterEndOf(current.item, newItem)) {
+                removed.add(current);
+                current = iterator.hasNext() ? iterator.next() : null;
+            }
+            if (current != null && startsBeforeEndOf(current.item, newItem)) {
+                removed.add(current);
+                added.add(current.item.withStart(newItem.getEnd().get()));
+            }
+        } else {
+            added.add(newItem);
+        }
+        entries.removeAll(removed);
+        for (TimeTrackingItem item : added) {
+            add(item);
+        }
+    }
+
+    /**
+     * Removes all items equal to the given one.
+     */
+    void delete(TimeTrackingItem item) {
+        Iterator<Entry> iterator = entries.subSet(probe(item.getStart(), Long.MIN_VALUE), true,
+                probe(item.getStart(), Long.MAX_VALUE), true).iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().item.equals(item)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Replaces the item, if its replacement doesn't overlap any other item.
+     * Persisters differ in how they resolve overlaps on replace, so these
+     * can't be applied here.
+     *
+     * @return false if the replacement overlaps other items and nothing was
+     *         changed
+     */
+    boolean replace(TimeTrackingItem item, TimeTrackingItem with) {
+        checkNotNull(with);
+        List<Entry> deleted = new ArrayList<>();
+        for (Entry entry : entries.subSet(probe(item.getStart(), Long.MIN_VALUE), true,
+                probe(item.getStart(), Long.MAX_VALUE), true)) {
+            if (entry.item.equals(item)) {
+                deleted.add(entry);
+            }
+        }
+        entries.removeAll(deleted);
+        if (overlapsAnyItem(with)) {
+            entries.addAll(deleted);
+            return false;
+        }
+        add(with);
+        return true;
+    }
+
+    List<TimeTrackingItem> toList() {
+        List<TimeTrackingItem> result = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            result.add(entry.item);
+        }
+        return result;
+    }
+
+    private Entry firstEntryAffectedBy(TimeTrackingItem newItem) {
+        Entry startingBefore = entries.lower(probe(newItem.getStart(), Long.MIN_VALUE));
+        if (startingBefore != null && !endsBeforeOrAt(startingBefore.item, newItem.getStart())) {
+            return startingBefore;
+        }
+        // all earlier items end before the one starting before the new item
+        for (Entry entry : entries.tailSet(probe(newItem.getStart(), Long.MIN_VALUE), true)) {
+            if (!endsBeforeOrAt(entry.item, newItem.getStart())) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private boolean overlapsAnyItem(TimeTrackingItem item) {
+        Entry startingBefore = entries.lower(probe(item.getStart(), Long.MIN_VALUE));
+        if (startingBefore != null && !endsBeforeOrAt(startingBefore.item, item.getStart())) {
+            return true;
+        }
+        Entry startingAfter = entries.ceiling(probe(item.getStart(), Long.MIN_VALUE));
+        return startingAfter != null && startsBeforeEndOf(startingAfter.item, item);
+    }
+
+    private static boolean endsBeforeOrAt(TimeTrackingItem item, DateTime time) {
+        return item.getEnd().isPresent() && !item.getEnd().get().isAfter(time);
+    }
+
+    private static boolean endsAfterEndOf(TimeTrackingItem item, TimeTrackingItem other) {
+        Optional<DateTime> otherEnd = other.getEnd();
+        return otherEnd.isPresent() && (!item.getEnd().isPresent() || item.getEnd().get().isAfter(otherEnd.get()));
+    }
+
+    private static boolean startsBeforeEndOf(TimeTrackingItem item, TimeTrackingItem other) {
+        return !other.getEnd().isPresent() || item.getStart().isBefore(other.getEnd().get());
+    }
+
+    private void add(TimeTrackingItem item) {
+        entries.add(new Entry(item.getStart(), nextSequence++, item));
+    }
+
+    private static Entry probe(DateTime start, long sequence) {
+        return new Entry(start, sequence, null);
+    }
+
+    private static class Entry {
+        final DateTime start;
+        final long sequence;
+        final TimeTrackingItem item;
+
+        Entry(DateTime start, long sequence, TimeTrackingItem item) {
+            this.start = start;
+            this.sequence = sequence;
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.stt.persistence;
+
+import com.google.common.base.Optional;
+import org.stt.model.TimeTrackingItem;
+
+import java.util.Iterator;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Reads items from an already loaded list.
+ */
+public class ListItemReader implements ItemReader {
+	private Iterator<TimeTrackingItem> itemIterator;
+
+	public ListItemReader(List<TimeTrackingItem> items) {
+		this(items, 0);
+	}
+
+	/**
+	 * @param fromIndex
+	 *            index of the first item to return
+	 */
+	public ListItemReader(List<TimeTrackingItem> items, int fromIndex) {
+		itemIterator = items.listIterator(fromIndex);
+	}
+
+	@Override
+	public Optional<TimeTrackingItem> read() {
+		checkState(itemIterator != null, "ItemReader already closed!");
+		return itemIterator.hasNext() ? Optional.of(itemIterator.next()) : Optional.<TimeTrackingItem>absent();
+	}
+
+	@Override
+	public void close() {
+		itemIterator = null;
+	}
+}
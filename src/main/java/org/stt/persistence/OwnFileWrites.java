@@ -0,0 +1,57 @@
+package org.stt.persistence;
+
+import com.google.inject.Singleton;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Tells the writes of files by this process from those of others.
+ * <p>
+ * Writers record a file with its length and modification time right after
+ * writing it. A file found just like that is taken to be unchanged since, but
+ * only once: a recorded write never hides more than one change.
+ * </p>
+ */
+@Singleton
+public class OwnFileWrites {
+    // length and modification time after the last write of this process
+    private final ConcurrentMap<Path, List<Long>> stamps = new ConcurrentHashMap<>();
+
+    /**
+     * Call right after the file has been written, i.e. closed or renamed.
+     */
+    public void record(File file) {
+        stamps.put(keyOf(file.toPath()), stampOf(file));
+    }
+
+    /**
+     * @return whether the file is just like after the last recorded write,
+     *         which is forgotten then
+     */
+    public boolean consume(Path file) {
+        return stamps.remove(keyOf(checkNotNull(file)), stampOf(file.toFile()));
+    }
+
+    /**
+     * Writers may be given the file a link points to
+     */
+    private static Path keyOf(Path file) {
+        try {
+            return file.toRealPath();
+        } catch (IOException e) {
+            return file.toAbsolutePath().normalize();
+        }
+    }
+
+    private static List<Long> stampOf(File file) {
+        return Arrays.asList(file.length(), file.lastModified());
+    }
+}
@@ -1,30 +1,51 @@
 package org.stt.persistence;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
 import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
-import org.stt.model.ItemModified;
+import org.joda.time.DateTime;
+import org.stt.model.FileChanged;
+import org.stt.model.ItemDeleted;
+import org.stt.model.ItemInserted;
+import org.stt.model.ItemReplaced;
 import org.stt.model.TimeTrackingItem;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.List;
 import java.util.logging.Logger;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.base.Preconditions.checkState;
 
 /**
  * Created by dante on 16.03.15.
+ * <p>
+ * Readers work on immutable snapshots of the cached items. Modifications are
+ * applied by one writer at a time, readers keep a consistent view until they
+ * are closed.
+ * </p>
+ * <p>
+ * Copying the items is linear, so snapshots are only taken by the first
+ * reader after modifications, which share one copy. Other readers never
+ * block.
+ * </p>
  */
 @Singleton
-public class PreCachingItemReaderProvider implements ItemReaderProvider {
+public class PreCachingItemReaderProvider implements SeekableItemReaderProvider, ReversibleItemReaderProvider {
     private static final Logger LOG = Logger.getLogger(PreCachingItemReaderProvider.class.getName());
-    private Object lock = new Object();
-    private Collection<Optional<TimeTrackingItem>> cachedItems = new ArrayList<>();
+    // serializes writers, readers only take it if the snapshot is outdated
+    private final Object writeLock = new Object();
+    // null until the source has been read, guarded by writeLock
+    private ItemTimeline timeline;
+    // version of the timeline, only written with writeLock held
+    private volatile long version;
+    // null until the source has been read, older than the timeline after
+    // modifications until the next read
+    private volatile Snapshot snapshot;
     private ItemReaderProvider itemReaderProvider;
 
     @Inject
@@ -33,47 +54,167 @@ public class PreCachingItemReaderProvider implements ItemReaderProvider {
     }
 
     @Subscribe
-    public void sourceChanged(ItemModified event) {
-        rereadSource();
+    public void itemInserted(ItemInserted event) {
+        synchronized (writeLock) {
+            if (timeline != null) {
+                timeline.insert(event.newItem);
+                version++;
+            }
+        }
+    }
+
+    @Subscribe
+    public void itemReplaced(ItemReplaced event) {
+        synchronized (writeLock) {
+            if (timeline == null) {
+                return;
+            }
+            if (timeline.replace(event.beforeUpdate, event.afterUpdate)) {
+                version++;
+            } else {
+                invalidate();
+            }
+        }
+    }
+
+    @Subscribe
+    public void itemDeleted(ItemDeleted event) {
+        synchronized (writeLock) {
+            if (timeline != null) {
+                timeline.delete(event.deletedItem);
+                version++;
+            }
+        }
+    }
+
+    /**
+     * Changes made by someone else can only be picked up by reading
+     * everything again. That happens on the next read, so a burst of changes
+     * is read once.
+     */
+    @Subscribe
+    public void sourceChanged(FileChanged event) {
+        invalidate();
+    }
+
+    private void invalidate() {
+        synchronized (writeLock) {
+            timeline = null;
+            snapshot = null;
+        }
     }
 
     private void rereadSource() {
         LOG.finest("Precaching items");
-        synchronized (lock) {
+        synchronized (writeLock) {
             try (ItemReader reader = itemReaderProvider.provideReader()) {
-                cachedItems = new ArrayList<>();
+                List<TimeTrackingItem> items = new ArrayList<>();
                 Optional<TimeTrackingItem> read;
-                do {
-                    read = reader.read();
-                    cachedItems.add(read);
+                while ((read = reader.read()).isPresent()) {
+                    items.add(read.get());
                 }
-                while (read.isPresent());
+                timeline = new ItemTimeline(items);
+                version++;
+                snapshot = new Snapshot(version, items);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         }
     }
 
+    /**
+     * @return the version of the snapshot new readers get; increases with
+     *         every modification, 0 if nothing has been loaded yet
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return whether the items are cached, so that reading them is cheap
+     */
+    public boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    /**
+     * @return all items sorted by start, loaded if necessary; the list is
+     *         never modified, modifications lead to a new one
+     */
+    public List<TimeTrackingItem> getItems() {
+        return currentSnapshot().items;
+    }
+
     @Override
     public ItemReader provideReader() {
-        synchronized (lock) {
-            if (cachedItems.isEmpty()) {
+        return new ListItemReader(currentSnapshot().items);
+    }
+
+    @Override
+    public ItemReader provideReaderFrom(DateTime start) {
+        checkNotNull(start);
+        Snapshot current = snapshot;
+        if (current == null && itemReaderProvider instanceof SeekableItemReaderProvider) {
+            // don't load everything for a single query
+            return ((SeekableItemReaderProvider) itemReaderProvider).provideReaderFrom(start);
+        }
+        List<TimeTrackingItem> items = currentSnapshot().items;
+        return new ListItemReader(items, Math.max(0, firstIndexNotBefore(items, start) - 1));
+    }
+
+    @Override
+    public ItemReader provideReverseReader() {
+        Snapshot current = snapshot;
+        if (current == null && itemReaderProvider instanceof ReversibleItemReaderProvider) {
+            // don't load everything for the latest items
+            return ((ReversibleItemReaderProvider) itemReaderProvider).provideReverseReader();
+        }
+        return new ListItemReader(Lists.reverse(currentSnapshot().items));
+    }
+
+    private Snapshot currentSnapshot() {
+        Snapshot current = snapshot;
+        if (current != null && current.version == version) {
+            return current;
+        }
+        synchronized (writeLock) {
+            if (timeline == null) {
                 rereadSource();
+            } else if (snapshot.version != version) {
+                snapshot = new Snapshot(version, timeline.toList());
             }
+            return snapshot;
         }
-        return new ItemReader() {
-            Iterator<Optional<TimeTrackingItem>> itemIterator = cachedItems.iterator();
+    }
 
-            @Override
-            public Optional<TimeTrackingItem> read() {
-                checkState(itemIterator != null, "ItemReader already closed!");
-                return itemIterator.next();
+    /**
+     * @param items
+     *            sorted by start
+     * @return the index of the first item starting at or after the given
+     *         time, the size of the list if there is none
+     */
+    public static int firstIndexNotBefore(List<TimeTrackingItem> items, DateTime start) {
+        int low = 0;
+        int high = items.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (items.get(mid).getStart().isBefore(start)) {
+                low = mid + 1;
+            } else {
+                high = mid;
             }
+        }
+        return low;
+    }
 
-            @Override
-            public void close() throws IOException {
-                itemIterator = null;
-            }
-        };
+    private static class Snapshot {
+        final long version;
+        // sorted by start
+        final List<TimeTrackingItem> items;
+
+        Snapshot(long version, List<TimeTrackingItem> items) {
+            this.version = version;
+            this.items = Collections.unmodifiableList(items);
+        }
     }
 }
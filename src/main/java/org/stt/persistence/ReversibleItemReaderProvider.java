@@ -0,0 +1,13 @@
+package org.stt.persistence;
+
+/**
+ * An {@link ItemReaderProvider} that can read the latest items without
+ * reading all earlier ones first.
+ */
+public interface ReversibleItemReaderProvider extends ItemReaderProvider {
+	/**
+	 * Provides a new ItemReader which returns all items from the latest to
+	 * the earliest.
+	 */
+	ItemReader provideReverseReader();
+}
@@ -0,0 +1,16 @@
+package org.stt.persistence;
+
+import org.joda.time.DateTime;
+
+/**
+ * An {@link ItemReaderProvider} that can skip items which are irrelevant for
+ * queries starting at a given time.
+ */
+public interface SeekableItemReaderProvider extends ItemReaderProvider {
+	/**
+	 * Provides a new ItemReader which returns all items starting at or after
+	 * the given time. Reading starts at the last item starting before that
+	 * time at the latest, so some earlier items may be returned, too.
+	 */
+	ItemReader provideReaderFrom(DateTime start);
+}
@@ -2,9 +2,7 @@ package org.stt.persistence.db;
 
 import java.io.IOException;
 import java.sql.SQLException;
-import java.util.List;
 
-import org.joda.time.DateTime;
 import org.stt.model.TimeTrackingItem;
 import org.stt.persistence.ItemPersister;
 
@@ -31,132 +29,18 @@ public class DBItemPersister implements ItemPersister {
 		Preconditions.checkNotNull(item);
 		this.dbStorage.startTransaction();
 		try {
-			DateTime start = item.getStart();
-			Optional<DateTime> itemEnd = item.getEnd();
-			List<TimeTrackingItem> overlappingItems = this.dbStorage.getItemsInRange(Optional.of(start), itemEnd);
-			
-			for (TimeTrackingItem other : overlappingItems) {
-				DateTime otherStart = other.getStart();
-				
-				if (start.isBefore(otherStart) || start.isEqual(otherStart)) {
-
-					if (!itemEnd.isPresent()) // Inserted item has no end
-					{
-						// |------ other
-						// |--------- item
-						this.dbStorage.deleteItemInDB(other);
-					} else { // itemEnd.isPresent
-						DateTime end = itemEnd.get();
-
-						if (other.getEnd().isPresent()) {
-							DateTime otherEnd = other.getEnd().get();
-
-							if (otherEnd.isAfter(end)) {
-								// |--------| other
-								// |-----|    item
-								TimeTrackingItem newItem = new TimeTrackingItem(other.getComment().orNull(), end,
-											otherEnd); 
-								replace(other, newItem);
-							} else { // (end.isAfter(otherEnd) || end.isEqual(otherEnd))
-								// |----| other
-								// |---------| item
-								this.dbStorage.deleteItemInDB(other);
-							}
-						} else { // !other.getEnd().isPresent()
-							//   |--------- other
-							// |------| item
-							if (end.isAfter(other.getStart()))
-							{
-								TimeTrackingItem newItem = new TimeTrackingItem(other.getComment().orNull(), end);
-								replace(other, newItem);
-							}
-						}
-					}
-				} else { // start.isAfter(other.getStart())
-					if (itemEnd.isPresent()) {
-
-						DateTime end = itemEnd.get();
-
-						if (!other.getEnd().isPresent()) {
-							// |---------- other
-							//   |-----| item
-
-							// Split old item
-							TimeTrackingItem first = new TimeTrackingItem(other.getComment().orNull(), otherStart,
-									start);
-							TimeTrackingItem second = new TimeTrackingItem(other.getComment().orNull(), end);
-
-							this.dbStorage.deleteItemInDB(other);
-							this.dbStorage.insertItemInDB(first);
-							this.dbStorage.insertItemInDB(second);
-						} else { // other.getEnd().isPresent()
-
-							DateTime otherEnd = other.getEnd().get();
-
-							if (end.isBefore(other.getEnd().get())) {
-
-								// |----------| other
-								//   |-----| item
-
-								// Split old item
-								TimeTrackingItem first = new TimeTrackingItem(other.getComment().orNull(),
-										otherStart, start);
-								TimeTrackingItem second = new TimeTrackingItem(other.getComment().orNull(), end,
-										otherEnd);
-								this.dbStorage.deleteItemInDB(other);
-								this.dbStorage.insertItemInDB(first);
-								this.dbStorage.insertItemInDB(second);
-							} else {
-
-								// |----|
-								//   |-----| item
-								if (!otherEnd.isEqual(start))
-								{
-									TimeTrackingItem newItem = new TimeTrackingItem(other.getComment().orNull(),
-											otherStart, start);
-									replace(other, newItem);
-								}
-							}
-						}
-					} else { // !itemEnd.isPresent()
-
-						// |----|
-						//   |----- item
-						
-						if (other.getEnd().isPresent())
-						{
-							DateTime otherEnd = other.getEnd().get();
-							
-							if (otherEnd.isAfter(start))
-							{
-								TimeTrackingItem newItem = new TimeTrackingItem(other.getComment().orNull(), otherStart,
-										start);
-								replace(other, newItem);
-							}
-						}
-						else
-						{
-							TimeTrackingItem newItem = new TimeTrackingItem(other.getComment().orNull(), otherStart,
-									start);
-							replace(other, newItem);
-						}
-					}
-				}
-
-			}
+			this.dbStorage.resolveOverlapsWith(item);
 			this.dbStorage.insertItemInDB(item);
+			// without an end, all following items were removed
+			this.dbStorage.updateDailyTotals(item.getStart(), item.getEnd());
 		} catch (SQLException e) {
 			this.dbStorage.rollback();
 			throw new IOException(e);
 		} finally {
 			this.dbStorage.endTransaction();
 		}
-
-		
 	}
 
-	
-
 	@Override
 	public void replace(TimeTrackingItem item, TimeTrackingItem with) throws IOException {
 		Preconditions.checkNotNull(item);
@@ -165,6 +49,8 @@ public class DBItemPersister implements ItemPersister {
 		try {
 			this.dbStorage.deleteItemInDB(item);
 			this.dbStorage.insertItemInDB(with);
+			updateDailyTotals(item);
+			updateDailyTotals(with);
 		} catch (SQLException e) {
 			this.dbStorage.rollback();
 			throw new IOException(e);
@@ -180,6 +66,7 @@ public class DBItemPersister implements ItemPersister {
 		this.dbStorage.startTransaction();
 		try {
 			this.dbStorage.deleteItemInDB(item);
+			updateDailyTotals(item);
 		} catch (SQLException e) {
 			this.dbStorage.rollback();
 			throw new IOException(e);
@@ -188,5 +75,8 @@ public class DBItemPersister implements ItemPersister {
 		}
 	}
 
+	private void updateDailyTotals(TimeTrackingItem item) throws SQLException {
+		this.dbStorage.updateDailyTotals(item.getStart(), Optional.of(item.getEnd().or(item.getStart())));
+	}
 
 }
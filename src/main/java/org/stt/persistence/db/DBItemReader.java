@@ -1,10 +1,10 @@
 package org.stt.persistence.db;
 
 import java.sql.SQLException;
-import java.util.Iterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.apache.commons.io.IOUtils;
 import org.stt.model.TimeTrackingItem;
 import org.stt.persistence.ItemReader;
 
@@ -18,7 +18,7 @@ public class DBItemReader implements ItemReader {
 	
 	private DBStorage dbStorage;
 
-	private Iterator<TimeTrackingItem> itemIter;
+	private ItemReader items;
 	
 
 	@Inject
@@ -28,28 +28,24 @@ public class DBItemReader implements ItemReader {
 
 	@Override
 	public void close()  {
-		itemIter = null;
+		IOUtils.closeQuietly(items);
+		items = null;
 	}
 
 	@Override
 	public Optional<TimeTrackingItem> read() {
 		
-		if (itemIter == null)
+		if (items == null)
 		{
 			try {
-				itemIter = this.dbStorage.getAllItems().iterator();
+				items = this.dbStorage.readAllItems();
 			} catch (SQLException e) {
 				LOG.log(Level.SEVERE, "SQL Exception while reading items", e);
 				return Optional.<TimeTrackingItem>absent();
 			}
 		}
 		
-		if (itemIter.hasNext())
-		{
-			return Optional.of(itemIter.next());
-		}
-				
-		return Optional.<TimeTrackingItem>absent();
+		return items.read();
 	}
 
 }
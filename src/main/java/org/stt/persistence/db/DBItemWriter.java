@@ -4,8 +4,10 @@ import java.io.IOException;
 import java.sql.SQLException;
 
 import org.stt.model.TimeTrackingItem;
+import org.stt.persistence.ItemReader;
 import org.stt.persistence.ItemWriter;
 
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
 
@@ -31,11 +33,35 @@ public class DBItemWriter implements ItemWriter {
 		this.dbStorage.startTransaction();
 		try {
 			dbStorage.insertItemInDB(item);
+			dbStorage.updateDailyTotals(item.getStart(), Optional.of(item.getEnd().or(item.getStart())));
 		} catch (SQLException e) {
 			this.dbStorage.rollback();
 			throw new IOException(e);
+		} finally {
+			this.dbStorage.endTransaction();
+		}
+	}
+
+	/**
+	 * Writes all items of the reader at once, which is much faster than
+	 * writing them one by one. The items are not checked for overlaps.
+	 * 
+	 * @return the number of written items
+	 */
+	public int writeAll(ItemReader sortedItems) throws IOException {
+		Preconditions.checkNotNull(sortedItems);
+		
+		this.dbStorage.startTransaction();
+		try {
+			int count = dbStorage.insertItemsInDB(sortedItems);
+			dbStorage.rebuildDailyTotals();
+			return count;
+		} catch (SQLException e) {
+			this.dbStorage.rollback();
+			throw new IOException(e);
+		} finally {
+			this.dbStorage.endTransaction();
 		}
-		this.dbStorage.endTransaction();
 	}
 	
 
@@ -5,6 +5,7 @@ import java.util.List;
 
 import org.joda.time.DateTime;
 import org.stt.model.TimeTrackingItem;
+import org.stt.persistence.ItemReader;
 import org.stt.query.TimeTrackingItemQueries;
 
 import com.google.common.base.Optional;
@@ -15,9 +16,47 @@ public interface DBStorage extends TimeTrackingItemQueries {
 
 	List<TimeTrackingItem> getAllItems() throws SQLException;
 
+	/**
+	 * Reads all items ordered by start, fetching them from the database while
+	 * reading. The reader holds a connection until it is closed or has read
+	 * all items.
+	 */
+	ItemReader readAllItems() throws SQLException;
+
 	void insertItemInDB(TimeTrackingItem item) throws SQLException;
 
+	/**
+	 * Inserts all items of the reader in one transaction, sending them to the
+	 * database in batches. Like {@link #insertItemInDB(TimeTrackingItem)},
+	 * overlaps are not resolved, so the items must neither overlap each other
+	 * nor the stored items.
+	 * 
+	 * @return the number of inserted items
+	 */
+	int insertItemsInDB(ItemReader sortedItems) throws SQLException;
+
 	void deleteItemInDB(TimeTrackingItem item) throws SQLException;
+
+	/**
+	 * Makes room for the given item: deletes the items it covers, trims the
+	 * ones it partially overlaps and splits the one it lies within. Takes the
+	 * same few statements however many items are affected.
+	 */
+	void resolveOverlapsWith(TimeTrackingItem item) throws SQLException;
+
+	/**
+	 * Recalculates the daily totals of the days items start at from the day
+	 * of from to the day of to, or all following days if absent, including
+	 * the day of the item running at from. Call it after changing items in
+	 * the same transaction, the totals answer duration queries for whole
+	 * days.
+	 */
+	void updateDailyTotals(DateTime from, Optional<DateTime> to) throws SQLException;
+
+	/**
+	 * Recalculates all daily totals, for items written without updating them.
+	 */
+	void rebuildDailyTotals() throws SQLException;
 	
 	void startTransaction();
 	
@@ -0,0 +1,106 @@
+package org.stt.persistence.db.h2;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.jooq.BatchBindStep;
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Record1;
+import org.jooq.SelectConditionStep;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+
+/**
+ * Trigram index of the distinct comments of the items, so searching for
+ * comments containing a string looks up the few comments having all its
+ * trigrams instead of scanning all items. Only those candidates are
+ * checked for the actual string, items are then found by the index on
+ * their comment.
+ * <p>
+ * Comments are added when items are inserted. They are kept when their
+ * items are deleted, which only makes them candidates without items.
+ * </p>
+ */
+class H2CommentIndex {
+
+	static final int GRAM_LENGTH = 3;
+
+	private static final Table<Record> COMMENTS_TABLE = DSL.table("Comments");
+	private static final Field<Long> COLUMN_ID = DSL.field("ID", SQLDataType.BIGINT);
+	private static final Field<String> COLUMN_COMMENT = DSL.field("COMMENT", SQLDataType.VARCHAR);
+
+	private static final Table<Record> TRIGRAMS_TABLE = DSL.table("CommentTrigrams");
+	private static final Field<String> COLUMN_TRIGRAM = DSL.field("TRIGRAM", SQLDataType.VARCHAR);
+	private static final Field<Long> COLUMN_COMMENT_ID = DSL.field("COMMENT_ID", SQLDataType.BIGINT);
+
+	private H2CommentIndex() {
+	}
+
+	/**
+	 * Adds the comments not indexed yet.
+	 */
+	static void add(DSLContext context, Collection<String> comments) {
+		for (String comment : comments) {
+			if (context.fetchExists(COMMENTS_TABLE, COLUMN_COMMENT.eq(comment))) {
+				continue;
+			}
+			context.insertInto(COMMENTS_TABLE, COLUMN_COMMENT).values(comment).execute();
+			Long id = context.select(COLUMN_ID).from(COMMENTS_TABLE).where(COLUMN_COMMENT.eq(comment)).fetchOne()
+					.value1();
+
+			Set<String> trigrams = trigramsOf(comment);
+			if (!trigrams.isEmpty()) {
+				BatchBindStep batch = context.batch(context.insertInto(TRIGRAMS_TABLE, COLUMN_TRIGRAM, COLUMN_COMMENT_ID)
+						.values((String) null, null));
+				for (String trigram : trigrams) {
+					batch.bind(trigram, id);
+				}
+				batch.execute();
+			}
+		}
+	}
+
+	/**
+	 * @return the condition for items with a comment containing the string
+	 */
+	static Condition commentContains(Field<String> itemComment, String string) {
+		return itemComment.in(candidates(string));
+	}
+
+	/**
+	 * @return the indexed comments containing the string, comments of
+	 *         deleted items included
+	 */
+	static Set<String> commentsContaining(DSLContext context, String string) {
+		return new HashSet<>(context.fetch(candidates(string)).getValues(COLUMN_COMMENT));
+	}
+
+	private static SelectConditionStep<Record1<String>> candidates(String string) {
+		SelectConditionStep<Record1<String>> candidates = DSL.select(COLUMN_COMMENT)
+				.from(COMMENTS_TABLE)
+				.where(COLUMN_COMMENT.contains(string));
+		Set<String> trigrams = trigramsOf(string);
+		if (!trigrams.isEmpty()) {
+			candidates = candidates.and(COLUMN_ID.in(DSL.select(COLUMN_COMMENT_ID)
+					.from(TRIGRAMS_TABLE)
+					.where(COLUMN_TRIGRAM.in(trigrams))
+					.groupBy(COLUMN_COMMENT_ID)
+					.having(DSL.count().eq(trigrams.size()))));
+		}
+		return candidates;
+	}
+
+	static Set<String> trigramsOf(String string) {
+		Set<String> trigrams = new LinkedHashSet<>();
+		for (int i = 0; i + GRAM_LENGTH <= string.length(); i++) {
+			trigrams.add(string.substring(i, i + GRAM_LENGTH));
+		}
+		return trigrams;
+	}
+}
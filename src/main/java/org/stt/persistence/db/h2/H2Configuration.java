@@ -49,5 +49,37 @@ public class H2Configuration extends Configuration {
 		return this.getPropertiesReplaced("h2_password", "password");
 	}
 
+	/**
+	 * @return if the first process opening the database serves it to other
+	 *         processes, instead of them failing to open it
+	 */
+	public boolean getAutoServer() {
+		return Boolean.parseBoolean(this.getPropertiesReplaced("h2_autoServer", "true"));
+	}
+
+	/**
+	 * @return how many connections may be open at once
+	 */
+	public int getMaxConnections() {
+		return Integer.parseInt(this.getPropertiesReplaced("h2_maxConnections",
+				String.valueOf(H2ConnectionProvider.DEFAULT_MAX_CONNECTIONS)));
+	}
+
+	/**
+	 * @return how many statements bulk operations send at once
+	 */
+	public int getBatchSize() {
+		return Integer.parseInt(this.getPropertiesReplaced("h2_batchSize",
+				String.valueOf(H2DBStorage.DEFAULT_BATCH_SIZE)));
+	}
+
+	/**
+	 * @return how many rows reading all items fetches at once
+	 */
+	public int getFetchSize() {
+		return Integer.parseInt(this.getPropertiesReplaced("h2_fetchSize",
+				String.valueOf(H2DBStorage.DEFAULT_FETCH_SIZE)));
+	}
+
 
 }
@@ -1,106 +1,344 @@
 package org.stt.persistence.db.h2;
 
-import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.h2.api.ErrorCode;
-import org.h2.mvstore.FileStore;
 import org.jooq.ConnectionProvider;
 import org.jooq.exception.DataAccessException;
 
+/**
+ * Bounded pool of connections to the configured database.
+ * <p>
+ * A thread acquiring connections while holding one gets the same connection
+ * again, so nested operations see the same transaction. The connection is
+ * returned to the pool when the thread released it as often as it acquired
+ * it. Threads needing a new connection while all connections are leased wait
+ * for one to be released.
+ * </p>
+ * <p>
+ * With auto server enabled, the first process opening a database file also
+ * serves it on a local port. Other processes, e.g. the CLI while the GUI is
+ * running, connect to that server instead of waiting for the file to be
+ * released. If the serving process exits, one of the others takes over.
+ * </p>
+ * <p>
+ * Idle connections are only checked with the database if they have been
+ * idle for a while, otherwise just if they are still open.
+ * </p>
+ * <p>
+ * Without auto server, a database file can only be opened by one process at
+ * a time. Connections idle for longer than the idle timeout are closed then,
+ * so the database is closed and the CLI can open it while the GUI is idle.
+ * </p>
+ */
 public class H2ConnectionProvider implements ConnectionProvider {
 
-	
 	private static final Logger LOG = Logger.getLogger(H2ConnectionProvider.class.getName());
-	
+
+	public static final int DEFAULT_MAX_CONNECTIONS = 4;
+	private static final long DEFAULT_LEASE_TIMEOUT_MILLIS = 30000;
+	private static final long VALIDATION_INTERVAL_MILLIS = 30000;
+	// below the time the CLI retries opening the database
+	private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 2000;
+	private static final int OPEN_RETRIES = 5;
+
 	private final H2Configuration configuration;
-	private Connection connection;
-	private int openConnectionCount;
-	
-	public H2ConnectionProvider(H2Configuration config) throws ClassNotFoundException
-	{
+	private final long leaseTimeoutMillis;
+	private final long idleTimeoutMillis;
+	// null if idle connections are kept open
+	private final ScheduledExecutorService idleCloser;
+	private final AtomicBoolean idleCloseScheduled = new AtomicBoolean();
+	private final Semaphore permits;
+	// most recently used first, so few connections stay busy
+	private final Deque<IdleConnection> idleConnections = new LinkedBlockingDeque<>();
+	private final Map<Connection, Lease> leases = new ConcurrentHashMap<>();
+	private final ThreadLocal<Lease> threadLease = new ThreadLocal<>();
+	private final AtomicInteger openConnectionCount = new AtomicInteger();
+
+	private final AtomicLong leaseCount = new AtomicLong();
+	private final AtomicLong leaseWaitNanos = new AtomicLong();
+	private final AtomicLong maxLeaseWaitNanos = new AtomicLong();
+
+	public H2ConnectionProvider(H2Configuration config) throws ClassNotFoundException {
+		this(config, DEFAULT_MAX_CONNECTIONS);
+	}
+
+	public H2ConnectionProvider(H2Configuration config, int maxConnections) throws ClassNotFoundException {
+		this(config, maxConnections, DEFAULT_LEASE_TIMEOUT_MILLIS);
+	}
+
+	H2ConnectionProvider(H2Configuration config, int maxConnections, long leaseTimeoutMillis)
+			throws ClassNotFoundException {
+		this(config, maxConnections, leaseTimeoutMillis, DEFAULT_IDLE_TIMEOUT_MILLIS);
+	}
+
+	H2ConnectionProvider(H2Configuration config, int maxConnections, long leaseTimeoutMillis,
+			long idleTimeoutMillis) throws ClassNotFoundException {
+		if (maxConnections < 1) {
+			throw new IllegalArgumentException("At least one connection is required, got " + maxConnections);
+		}
 		configuration = config;
+		this.leaseTimeoutMillis = leaseTimeoutMillis;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		idleCloser = locksDatabaseFile(config) ? Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "h2-idle-connection-closer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}) : null;
+		permits = new Semaphore(maxConnections, true);
 		Class.forName("org.h2.Driver");
 	}
 
-	public synchronized Connection acquire() throws DataAccessException {
-		boolean connectionValid;
-		try {
-			connectionValid = connection != null && connection.isValid(5);
-		} catch (SQLException e) {
-			LOG.log(Level.WARNING, "Exception determining connection state", e);
-			connectionValid = false;
+	@Override
+	public Connection acquire() throws DataAccessException {
+		Lease lease = threadLease.get();
+		if (lease == null || lease.returned) {
+			lease = newLease();
+			leases.put(lease.connection, lease);
+			threadLease.set(lease);
 		}
+		lease.count.incrementAndGet();
+		openConnectionCount.incrementAndGet();
+		return lease.connection;
+	}
 
-		if (!connectionValid) {
-			if (connection != null) {
-				try {
-					connection.close();
-				} catch (SQLException e) {
-					LOG.log(Level.WARNING, "Unable to close invalid connection", e);
+	@Override
+	public void release(Connection connection) throws DataAccessException {
+		Lease lease = leases.get(connection);
+		if (lease == null) {
+			return;
+		}
+		openConnectionCount.decrementAndGet();
+		if (lease.count.decrementAndGet() > 0) {
+			return;
+		}
+		lease.returned = true;
+		leases.remove(connection);
+		if (threadLease.get() == lease) {
+			threadLease.remove();
+		}
+		try {
+			if (!connection.isClosed()) {
+				if (!connection.getAutoCommit()) {
+					LOG.warning("Connection released within a transaction, rolling back");
+					connection.rollback();
+					connection.setAutoCommit(true);
 				}
-				connection = null;
+				idleConnections.offerFirst(new IdleConnection(connection));
+				scheduleIdleClose(idleTimeoutMillis);
 			}
+		} catch (SQLException e) {
+			LOG.log(Level.WARNING, "Unable to return connection to the pool", e);
+			closeQuietly(connection);
+		} finally {
+			permits.release();
+		}
+	}
 
-			int i = 0;
-			
-			while (connection == null)
-			{
-				try {
-					connection = DriverManager.getConnection("jdbc:h2:" + configuration.getDatabase(),
-							configuration.getUserName(), configuration.getPassword());
-				} catch (SQLException e) {
-					if (e.getErrorCode() == ErrorCode.DATABASE_ALREADY_OPEN_1 && i++ < 5)
-					{
-						LOG.warning("Connection already open. " + i + " try. Retrying in 1 second.");
-						try {
-							this.wait(1000);
-						} catch (InterruptedException e1) {
-							break;
-						}
-					}
-					else
-					{
-						throw new DataAccessException("SQL Exception opening new connection", e);
-					}
+	private static boolean locksDatabaseFile(H2Configuration config) {
+		// in-memory databases would be dropped with their last connection
+		return !config.getAutoServer() && !config.getDatabase().startsWith("mem:");
+	}
+
+	private void scheduleIdleClose(long delayMillis) {
+		if (idleCloser != null && !idleCloser.isShutdown() && idleCloseScheduled.compareAndSet(false, true)) {
+			idleCloser.schedule(new Runnable() {
+				@Override
+				public void run() {
+					idleCloseScheduled.set(false);
+					closeTimedOutConnections();
 				}
+			}, delayMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void closeTimedOutConnections() {
+		IdleConnection idle;
+		// the least recently used connection is last
+		while ((idle = idleConnections.peekLast()) != null) {
+			long idleMillis = System.currentTimeMillis() - idle.idleSince;
+			if (idleMillis < idleTimeoutMillis) {
+				scheduleIdleClose(idleTimeoutMillis - idleMillis);
+				return;
+			}
+			// unless it was leased in the meantime
+			if (idleConnections.removeLastOccurrence(idle)) {
+				closeQuietly(idle.connection);
 			}
+		}
+	}
+
+	/**
+	 * Closes all idle connections. Leased connections are closed when they
+	 * are released and found invalid afterwards.
+	 */
+	public void close() {
+		if (idleCloser != null) {
+			idleCloser.shutdownNow();
+		}
+		IdleConnection idle;
+		while ((idle = idleConnections.pollFirst()) != null) {
+			closeQuietly(idle.connection);
+		}
+	}
+
+	/**
+	 * @return how often connections are currently acquired and not yet
+	 *         released, by all threads
+	 */
+	public int getOpenConnectionCount() {
+		return openConnectionCount.get();
+	}
+
+	/**
+	 * @return the number of connections handed out to threads not holding one
+	 */
+	public long getLeaseCount() {
+		return leaseCount.get();
+	}
+
+	/**
+	 * @return the total time threads waited for a connection
+	 */
+	public long getLeaseWaitTime(TimeUnit unit) {
+		return unit.convert(leaseWaitNanos.get(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return the longest time a thread waited for a connection
+	 */
+	public long getMaxLeaseWaitTime(TimeUnit unit) {
+		return unit.convert(maxLeaseWaitNanos.get(), TimeUnit.NANOSECONDS);
+	}
 
-			openConnectionCount = 0;
+	private Lease newLease() {
+		long waitStart = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(leaseTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new DataAccessException("No connection available after " + leaseTimeoutMillis + " ms");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DataAccessException("Interrupted waiting for a connection");
 		}
+		recordWait(System.nanoTime() - waitStart);
 
-		openConnectionCount++;
+		try {
+			return new Lease(idleOrNewConnection());
+		} catch (RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
 
-		return connection;
+	private void recordWait(long nanos) {
+		leaseCount.incrementAndGet();
+		leaseWaitNanos.addAndGet(nanos);
+		long max;
+		do {
+			max = maxLeaseWaitNanos.get();
+		} while (nanos > max && !maxLeaseWaitNanos.compareAndSet(max, nanos));
+	}
 
+	private Connection idleOrNewConnection() {
+		IdleConnection idle;
+		while ((idle = idleConnections.pollFirst()) != null) {
+			if (isValid(idle)) {
+				return idle.connection;
+			}
+			closeQuietly(idle.connection);
+		}
+		return openConnection();
 	}
-	
-	public synchronized void release(Connection connection) throws DataAccessException
-	{
+
+	private boolean isValid(IdleConnection idle) {
 		try {
-			if (this.connection != connection)
-				return;
-			
-			--openConnectionCount;
-			if (openConnectionCount <= 0 && connection != null)
-			{
-				
-				connection.close();
-				
-				connection = null;
-				openConnectionCount = 0;
+			if (idle.connection.isClosed()) {
+				return false;
 			}
+			return System.currentTimeMillis() - idle.idleSince < VALIDATION_INTERVAL_MILLIS
+					|| idle.connection.isValid(5);
 		} catch (SQLException e) {
-			throw new DataAccessException("SQL Exception closing connection", e);
+			LOG.log(Level.WARNING, "Exception determining connection state", e);
+			return false;
 		}
 	}
 
-	public int getOpenConnectionCount() {
-		return openConnectionCount;
+	private Connection openConnection() {
+		int i = 0;
+		while (true) {
+			try {
+				return DriverManager.getConnection(urlOf(configuration.getDatabase(), configuration.getAutoServer()),
+						configuration.getUserName(), configuration.getPassword());
+			} catch (SQLException e) {
+				// only happens without auto server, or while another process
+				// is taking over serving the database
+				if (e.getErrorCode() == ErrorCode.DATABASE_ALREADY_OPEN_1 && i++ < OPEN_RETRIES) {
+					LOG.warning("Connection already open. " + i + " try. Retrying in 1 second.");
+					try {
+						Thread.sleep(1000);
+					} catch (InterruptedException e1) {
+						Thread.currentThread().interrupt();
+						throw new DataAccessException("Interrupted opening new connection", e);
+					}
+				} else {
+					throw new DataAccessException("SQL Exception opening new connection", e);
+				}
+			}
+		}
+	}
+
+	static String urlOf(String database, boolean autoServer) {
+		// in-memory databases only exist within their process
+		if (!autoServer || database.startsWith("mem:")) {
+			return "jdbc:h2:" + database;
+		}
+		return "jdbc:h2:" + database + ";AUTO_SERVER=TRUE;AUTO_RECONNECT=TRUE";
 	}
 
+	private static void closeQuietly(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			LOG.log(Level.WARNING, "Unable to close invalid connection", e);
+		}
+	}
+
+	private static class Lease {
+		final Connection connection;
+		final AtomicInteger count = new AtomicInteger();
+		volatile boolean returned;
+
+		Lease(Connection connection) {
+			this.connection = connection;
+		}
+	}
+
+	private static class IdleConnection {
+		final Connection connection;
+		final long idleSince = System.currentTimeMillis();
+
+		IdleConnection(Connection connection) {
+			this.connection = connection;
+		}
+	}
 }
@@ -1,39 +1,62 @@
 package org.stt.persistence.db.h2;
 
+import java.math.BigDecimal;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.joda.time.LocalDate;
+import org.jooq.BatchBindStep;
 import org.jooq.Condition;
 import org.jooq.ConnectionProvider;
 import org.jooq.Converter;
-import org.jooq.DDLQuery;
 import org.jooq.DSLContext;
 import org.jooq.DataType;
 import org.jooq.Delete;
 import org.jooq.Field;
 import org.jooq.InsertValuesStep4;
 import org.jooq.Record;
+import org.jooq.Record1;
+import org.jooq.Record2;
+import org.jooq.Record3;
 import org.jooq.Record4;
 import org.jooq.RecordMapper;
+import org.jooq.Result;
 import org.jooq.ResultQuery;
+import org.jooq.QueryPart;
 import org.jooq.SQLDialect;
+import org.jooq.SelectJoinStep;
 import org.jooq.SelectLimitStep;
 import org.jooq.Table;
+import org.jooq.exception.DataAccessException;
 import org.jooq.impl.DSL;
 import org.jooq.impl.SQLDataType;
 import org.stt.model.TimeTrackingItem;
+import org.stt.persistence.ItemReader;
 import org.stt.persistence.db.DBStorage;
 import org.stt.query.DNFClause;
-import org.stt.query.DNFClauseMatcher;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
 
 public class H2DBStorage implements DBStorage {
@@ -54,29 +77,33 @@ public class H2DBStorage implements DBStorage {
 		}
 	}
 
-	public static final class DateTimeConverter implements Converter<Timestamp, DateTime> {
+	/**
+	 * Stores times as milliseconds since the epoch, so they are compared as
+	 * numbers and don't depend on the time zone of the JVM.
+	 */
+	public static final class EpochMillisConverter implements Converter<Long, DateTime> {
 		/**
 		 * 
 		 */
 		private static final long serialVersionUID = 1L;
 
 		@Override
-		public DateTime from(Timestamp databaseObject) {
-			return databaseObject == null ? null : new DateTime(roundToSecond(databaseObject.getTime()));
+		public DateTime from(Long databaseObject) {
+			return databaseObject == null ? null : new DateTime(roundToSecond(databaseObject));
 		}
 
 		@Override
-		public Timestamp to(DateTime userObject) {
-			return userObject == null ? null : new Timestamp(roundToSecond(userObject.getMillis()));
+		public Long to(DateTime userObject) {
+			return userObject == null ? null : roundToSecond(userObject.getMillis());
 		}
 
-		private long roundToSecond(long millis) {
+		private static long roundToSecond(long millis) {
 			return (millis / 1000) * 1000;
 		}
 
 		@Override
-		public Class<Timestamp> fromType() {
-			return Timestamp.class;
+		public Class<Long> fromType() {
+			return Long.class;
 		}
 
 		@Override
@@ -94,7 +121,7 @@ public class H2DBStorage implements DBStorage {
 	private static final String COLUMN_NAME_COMMENT = "COMMENT";
 	private static final String COLUMN_NAME_LOGGED = "LOGGED";
 
-	public static final DataType<DateTime> DATE_TIME = SQLDataType.TIMESTAMP.asConvertedDataType(new DateTimeConverter());
+	public static final DataType<DateTime> DATE_TIME = SQLDataType.BIGINT.asConvertedDataType(new EpochMillisConverter());
 	
 	public static final Table<Record> ITEMS_TABLE = DSL.table(ITEMS_TABLE_NAME);
 	public static final Field<DateTime> COLUMN_START = DSL.field(COLUMN_NAME_START, DATE_TIME);
@@ -102,31 +129,146 @@ public class H2DBStorage implements DBStorage {
 	public static final Field<String> COLUMN_COMMENT = DSL.field(COLUMN_NAME_COMMENT, SQLDataType.VARCHAR);
 	public static final Field<Boolean> COLUMN_LOGGED = DSL.field(COLUMN_NAME_LOGGED, SQLDataType.BOOLEAN);
 	
+	private static final EpochMillisConverter CONVERTER = new EpochMillisConverter();
+	
+	// for calculations with the stored milliseconds
+	private static final Field<Long> COLUMN_START_MILLIS = DSL.field(COLUMN_NAME_START, SQLDataType.BIGINT);
+	private static final Field<Long> COLUMN_END_MILLIS = DSL.field(COLUMN_NAME_END, SQLDataType.BIGINT);
+	private static final Field<Long> START_DAY = DSL.function("START_OF_DAY", SQLDataType.BIGINT,
+			COLUMN_START_MILLIS);
+	private static final Field<String> COMMENT_OR_EMPTY = DSL.coalesce(COLUMN_COMMENT, DSL.inline(""));
+	
+	// durations of the items with an end, by the day they start at
+	private static final Table<Record> DAILY_TOTALS_TABLE = DSL.table("DailyTotals");
+	private static final Field<Long> COLUMN_DAY = DSL.field("DAY", SQLDataType.BIGINT);
+	private static final Field<String> COLUMN_TOTAL_COMMENT = DSL.field("COMMENT", SQLDataType.VARCHAR);
+	private static final Field<Long> COLUMN_DURATION = DSL.field("DURATION", SQLDataType.BIGINT);
+	private static final Field<Integer> COLUMN_ITEM_COUNT = DSL.field("ITEM_COUNT", SQLDataType.INTEGER);
+	
+	private static final Table<Record> METADATA_TABLE = DSL.table("Metadata");
+	private static final Field<String> COLUMN_METADATA_NAME = DSL.field("NAME", SQLDataType.VARCHAR);
+	private static final Field<String> COLUMN_METADATA_CONTENT = DSL.field("CONTENT", SQLDataType.VARCHAR);
+	// the zone the days of the daily totals are in
+	private static final String DAILY_TOTALS_ZONE = "DAILY_TOTALS_ZONE";
+	
+	/*
+	 * The frequent queries are rendered once. Those with optional bounds
+	 * have a variant for each combination of present bounds, see variant().
+	 */
+	private static final String[] SQL_ITEMS_IN_RANGE = new String[4];
+	private static final String[] SQL_FIRST_N_ITEMS = new String[8];
+	private static final String SQL_ALL_ITEMS = render(selectItems().orderBy(COLUMN_START.asc()));
+	private static final String SQL_LATEST_ITEM = render(selectItems()
+			.orderBy(COLUMN_START.desc()).limit(DSL.inline(1)));
+	private static final String SQL_PREVIOUS_ITEM = render(selectItems()
+			.where(COLUMN_START.lessThan(DSL.param("start", DATE_TIME)))
+			.orderBy(COLUMN_START.desc()).limit(DSL.inline(1)));
+	private static final String SQL_NEXT_ITEM = render(selectItems()
+			.where(COLUMN_START.greaterThan(DSL.param("start", DATE_TIME)))
+			.orderBy(COLUMN_START.asc()).limit(DSL.inline(1)));
+	
+	static {
+		for (int variant = 0; variant < SQL_FIRST_N_ITEMS.length; variant++)
+		{
+			boolean hasStart = (variant & 1) != 0;
+			boolean hasEnd = (variant & 2) != 0;
+			boolean hasLimit = (variant & 4) != 0;
+			
+			if (!hasLimit)
+			{
+				Condition c = DSL.trueCondition();
+				if (hasStart)
+				{
+					c = c.and(COLUMN_END.ge(DSL.param("start", DATE_TIME)).or(COLUMN_END.isNull()));
+				}
+				if (hasEnd)
+				{
+					c = c.and(COLUMN_START.le(DSL.param("end", DATE_TIME)));
+				}
+				SQL_ITEMS_IN_RANGE[variant] = render(selectItems().where(c).orderBy(COLUMN_START.asc()));
+			}
+			
+			Condition c = DSL.trueCondition();
+			if (hasStart)
+			{
+				c = c.and(COLUMN_START.greaterOrEqual(DSL.param("start", DATE_TIME)));
+			}
+			if (hasEnd)
+			{
+				c = c.and(COLUMN_END.lessOrEqual(DSL.param("end", DATE_TIME)));
+			}
+			SelectLimitStep<Record4<DateTime, DateTime, String, Boolean>> sql = selectItems().where(c)
+					.orderBy(COLUMN_START.asc());
+			SQL_FIRST_N_ITEMS[variant] = render(hasLimit ? sql.limit(DSL.param("limit", Integer.class)) : sql);
+		}
+	}
+	
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	public static final int DEFAULT_FETCH_SIZE = 500;
+
 	private ConnectionProvider connectionProvider;
+	private final H2StatementCache statementCache = new H2StatementCache();
+	private final int batchSize;
+	private final int fetchSize;
 	private boolean dbInitialized = false;
 
-	private Connection txConnection;
+	private final ThreadLocal<Transaction> transactions = new ThreadLocal<>();
+	private final Lock transactionLock = new ReentrantLock();
 
 	@Inject public H2DBStorage(ConnectionProvider connectionProvider) throws SQLException
 	{
-		this.connectionProvider = connectionProvider;	
+		this(connectionProvider, DEFAULT_BATCH_SIZE);
+	}
+
+	public H2DBStorage(ConnectionProvider connectionProvider, int batchSize) throws SQLException
+	{
+		this(connectionProvider, batchSize, DEFAULT_FETCH_SIZE);
+	}
+
+	/**
+	 * @param batchSize
+	 *            number of statements sent to the database at once by bulk
+	 *            operations
+	 * @param fetchSize
+	 *            number of rows fetched from the database at once by
+	 *            streaming reads
+	 */
+	public H2DBStorage(ConnectionProvider connectionProvider, int batchSize, int fetchSize) throws SQLException
+	{
+		Preconditions.checkArgument(batchSize > 0, "batch size must be positive");
+		Preconditions.checkArgument(fetchSize > 0, "fetch size must be positive");
+		this.connectionProvider = connectionProvider;
+		this.batchSize = batchSize;
+		this.fetchSize = fetchSize;
 		init();
 	}
 	
 
+	private static SelectJoinStep<Record4<DateTime, DateTime, String, Boolean>> selectItems() {
+		return DSL.select(COLUMN_START, 
+				COLUMN_END, 
+				COLUMN_COMMENT,
+				COLUMN_LOGGED)
+				.from(ITEMS_TABLE);
+	}
+	
+	private static String render(QueryPart query) {
+		return DSL.using(SQLDialect.H2).render(query);
+	}
+
+	private static int variant(boolean hasStart, boolean hasEnd, boolean hasLimit) {
+		return (hasStart ? 1 : 0) | (hasEnd ? 2 : 0) | (hasLimit ? 4 : 0);
+	}
+
 	private DSLContext getDSLContext() {
 		return DSL.using(connectionProvider, SQLDialect.H2);
 	}
 	
 	public void init() {
 		if (!dbInitialized) {
-			try (DSLContext context = getDSLContext())
-			{
-				DDLQuery createTableStmt = context.createTableIfNotExists(ITEMS_TABLE).columns(COLUMN_START, COLUMN_END, COLUMN_COMMENT, COLUMN_LOGGED);
-				
-				createTableStmt.execute();
-				dbInitialized = true;
-			}
+			new H2SchemaMigrator(connectionProvider).migrate();
+			rebuildDailyTotalsIfZoneChanged();
+			dbInitialized = true;
 		}
 	}
 	
@@ -143,17 +285,17 @@ public class H2DBStorage implements DBStorage {
 		// |---|---|---|---
 		//   |------------- (start, end)
 
-		Condition c = DSL.trueCondition();
+		List<Object> bindValues = new ArrayList<>();
 		if (start.isPresent())
 		{
-			c = c.and(COLUMN_END.ge(start.get()).or(COLUMN_END.isNull()));
+			bindValues.add(CONVERTER.to(start.get()));
 		}
 		if (end.isPresent())
 		{
-			c = c.and(COLUMN_START.le(end.get()));
+			bindValues.add(CONVERTER.to(end.get()));
 		}
 		
-		return getItemsByCondition(c);
+		return fetchItems(SQL_ITEMS_IN_RANGE[variant(start.isPresent(), end.isPresent(), false)], bindValues.toArray());
 	}
 
 	private List<TimeTrackingItem> getItemsByCondition(Condition c) {
@@ -185,21 +327,65 @@ public class H2DBStorage implements DBStorage {
 	@Override
 	public List<TimeTrackingItem> getAllItems()
 	{
-		ResultQuery<Record4<DateTime, DateTime, String, Boolean>> sql = DSL
-				.select(COLUMN_START, 
-						COLUMN_END, 
-						COLUMN_COMMENT,
-						COLUMN_LOGGED)
-				.from(ITEMS_TABLE)
-				.orderBy(COLUMN_START.asc());
-		
-		
-		LOG.log(Level.FINEST, "Executing SQL: "+sql.getSQL());
+		return fetchItems(SQL_ALL_ITEMS);
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.stt.persistence.db.DBStorage#readAllItems()
+	 */
+	@Override
+	public ItemReader readAllItems()
+	{
+		LOG.log(Level.FINEST, "Executing SQL: {0}", SQL_ALL_ITEMS);
 		
-		try (DSLContext context = getDSLContext())
-		{				
-			List<TimeTrackingItem> items = context.fetch(sql).map(new TimeTrackingItemMapper());
-			return items;
+		// the connection is held until the reader is closed. The statement
+		// isn't cached, another read on the connection would close the results
+		final Connection connection = connectionProvider.acquire();
+		try {
+			final PreparedStatement statement = connection.prepareStatement(SQL_ALL_ITEMS);
+			statement.setFetchSize(fetchSize);
+			final ResultSet resultSet = statement.executeQuery();
+			return new ItemReader() {
+				private boolean closed;
+
+				@Override
+				public Optional<TimeTrackingItem> read() {
+					if (closed)
+					{
+						return Optional.absent();
+					}
+					try {
+						if (resultSet.next())
+						{
+							return Optional.of(itemOf(resultSet));
+						}
+					} catch (SQLException e) {
+						close();
+						throw new DataAccessException("SQL Exception reading items", e);
+					}
+					close();
+					return Optional.absent();
+				}
+
+				@Override
+				public void close() {
+					if (closed)
+					{
+						return;
+					}
+					closed = true;
+					try {
+						statement.close();
+					} catch (SQLException e) {
+						LOG.log(Level.WARNING, "Unable to close statement", e);
+					} finally {
+						connectionProvider.release(connection);
+					}
+				}
+			};
+		} catch (SQLException e) {
+			connectionProvider.release(connection);
+			throw new DataAccessException("SQL Exception executing " + SQL_ALL_ITEMS, e);
 		}
 	}
 	
@@ -208,15 +394,130 @@ public class H2DBStorage implements DBStorage {
 	 */
 	@Override
 	public void insertItemInDB(TimeTrackingItem item) throws SQLException {
+		startTransaction();
 		try (DSLContext context = getDSLContext())
 		{
 			InsertValuesStep4<Record,DateTime,DateTime,String,Boolean> insertStmt = context.insertInto(ITEMS_TABLE, COLUMN_START, COLUMN_END, COLUMN_COMMENT, COLUMN_LOGGED).values(roundToSecond(item.getStart()), roundToSecond(item.getEnd().orNull()), item.getComment().orNull(), false);
 			
 			insertStmt.execute();
+			
+			if (item.getComment().isPresent())
+			{
+				H2CommentIndex.add(context, Collections.singleton(item.getComment().get()));
+			}
+		} catch (RuntimeException e) {
+			rollback();
+			throw e;
+		} finally {
+			endTransaction();
 		}
 	}
 	
 
+	/* (non-Javadoc)
+	 * @see org.stt.persistence.db.DBStorage#resolveOverlapsWith(org.stt.model.TimeTrackingItem)
+	 */
+	@Override
+	public void resolveOverlapsWith(TimeTrackingItem item) throws SQLException {
+		DateTime start = roundToSecond(item.getStart());
+		Optional<DateTime> end = item.getEnd().isPresent() ? Optional.of(roundToSecond(item.getEnd().get()))
+				: Optional.<DateTime>absent();
+		
+		startTransaction();
+		try (DSLContext context = getDSLContext())
+		{
+			if (end.isPresent())
+			{
+				// |----------| other
+				//   |-----|    item
+				// the part after the item, the part before is trimmed below
+				context.insertInto(ITEMS_TABLE, COLUMN_START, COLUMN_END, COLUMN_COMMENT, COLUMN_LOGGED)
+						.select(DSL.select(DSL.val(end.get(), DATE_TIME), COLUMN_END, COLUMN_COMMENT, COLUMN_LOGGED)
+								.from(ITEMS_TABLE)
+								.where(COLUMN_START.lessThan(start))
+								.and(COLUMN_END.greaterThan(end.get()).or(COLUMN_END.isNull())))
+						.execute();
+			}
+			
+			// |----|
+			//   |-----| item
+			context.update(ITEMS_TABLE)
+					.set(COLUMN_END, start)
+					.where(COLUMN_START.lessThan(start))
+					.and(COLUMN_END.greaterThan(start).or(COLUMN_END.isNull()))
+					.execute();
+			
+			//   |--|
+			// |------| item
+			context.deleteFrom(ITEMS_TABLE)
+					.where(COLUMN_START.greaterOrEqual(start))
+					.and(end.isPresent() ? COLUMN_END.lessOrEqual(end.get()) : DSL.trueCondition())
+					.execute();
+			
+			if (end.isPresent())
+			{
+				//   |-----|
+				// |-----| item
+				context.update(ITEMS_TABLE)
+						.set(COLUMN_START, end.get())
+						.where(COLUMN_START.greaterOrEqual(start))
+						.and(COLUMN_START.lessThan(end.get()))
+						.execute();
+			}
+		} catch (RuntimeException e) {
+			rollback();
+			throw e;
+		} finally {
+			endTransaction();
+		}
+	}
+
+
+	/* (non-Javadoc)
+	 * @see org.stt.persistence.db.DBStorage#insertItemsInDB(org.stt.persistence.ItemReader)
+	 */
+	@Override
+	public int insertItemsInDB(ItemReader sortedItems) throws SQLException {
+		int count = 0;
+		Set<String> comments = new HashSet<>();
+		startTransaction();
+		try (DSLContext context = getDSLContext())
+		{
+			BatchBindStep batch = null;
+			Optional<TimeTrackingItem> item;
+			while ((item = sortedItems.read()).isPresent())
+			{
+				if (batch == null)
+				{
+					batch = context.batch(context.insertInto(ITEMS_TABLE, COLUMN_START, COLUMN_END, COLUMN_COMMENT, COLUMN_LOGGED)
+							.values((DateTime) null, null, null, null));
+				}
+				batch.bind(roundToSecond(item.get().getStart()), roundToSecond(item.get().getEnd().orNull()), item.get().getComment().orNull(), false);
+				if (item.get().getComment().isPresent())
+				{
+					comments.add(item.get().getComment().get());
+				}
+				if (++count % batchSize == 0)
+				{
+					batch.execute();
+					batch = null;
+				}
+			}
+			if (batch != null)
+			{
+				batch.execute();
+			}
+			H2CommentIndex.add(context, comments);
+		} catch (RuntimeException e) {
+			rollback();
+			throw e;
+		} finally {
+			endTransaction();
+		}
+		return count;
+	}
+
+
 	private DateTime roundToSecond(DateTime dateTime) {
 		if (dateTime == null)
 			return null;
@@ -253,129 +554,414 @@ public class H2DBStorage implements DBStorage {
 
 	@Override
 	public Optional<TimeTrackingItem> getLatestTimeTrackingitem() {
-		ResultQuery<Record4<DateTime, DateTime, String, Boolean>> sql = DSL
-				.select(COLUMN_START, 
-						COLUMN_END, 
-						COLUMN_COMMENT,
-						COLUMN_LOGGED)
+		return fetchFirstItem(SQL_LATEST_ITEM);
+	}
+
+
+	@Override
+	public Optional<TimeTrackingItem> getPreviousTimeTrackingItem(TimeTrackingItem item) {
+		return fetchFirstItem(SQL_PREVIOUS_ITEM, CONVERTER.to(item.getStart()));
+	}
+
+	@Override
+	public Optional<TimeTrackingItem> getNextTimeTrackingTime(TimeTrackingItem item) {
+		return fetchFirstItem(SQL_NEXT_ITEM, CONVERTER.to(item.getStart()));
+	}
+
+	@Override
+	public Collection<DateTime> getAllTrackedDays() {
+		ResultQuery<Record1<Long>> sql = DSL
+				.selectDistinct(START_DAY)
 				.from(ITEMS_TABLE)
-				.orderBy(COLUMN_START.desc()).limit(1);
-		
+				.orderBy(START_DAY);
 		
 		LOG.log(Level.FINEST, "Executing SQL: "+sql.getSQL());
 		
 		try (DSLContext context = getDSLContext())
-		{			
-			List<TimeTrackingItem> items = context.fetch(sql).map(new TimeTrackingItemMapper());
-			return items.size() > 0 ? Optional.of(items.get(0)) : Optional.absent();
+		{
+			Collection<DateTime> result = new ArrayList<>();
+			for (Long day : context.fetch(sql).getValues(START_DAY))
+			{
+				result.add(new DateTime(day.longValue()));
+			}
+			return result;
 		}
 	}
 
+	@Override
+	public Map<String, Duration> sumDurationsByComment(DNFClause dnfClause, DateTime ongoingUntil) {
+		Map<String, Duration> result = new HashMap<>();
+		for (Map<String, Duration> durations : sumDurationsByDayAndComment(dnfClause, ongoingUntil).values())
+		{
+			for (Map.Entry<String, Duration> commentDuration : durations.entrySet())
+			{
+				add(result, commentDuration.getKey(), commentDuration.getValue());
+			}
+		}
+		return result;
+	}
 
+	/**
+	 * Whole days within the start bounds of the clause are read from the
+	 * daily totals, only the items of the days at the bounds and the ongoing
+	 * ones are summed up.
+	 */
 	@Override
-	public Optional<TimeTrackingItem> getPreviousTimeTrackingItem(TimeTrackingItem item) {
-		
-		ResultQuery<Record4<DateTime, DateTime, String, Boolean>> sql = DSL
-				.select(COLUMN_START, 
-						COLUMN_END, 
-						COLUMN_COMMENT,
-						COLUMN_LOGGED)
-				.from(ITEMS_TABLE)
-				.where(COLUMN_START.lessThan(item.getStart()))
-				.orderBy(COLUMN_START.desc()).limit(1);
-		
-		LOG.log(Level.FINEST, "Executing SQL: "+sql.getSQL());
+	public SortedMap<DateTime, Map<String, Duration>> sumDurationsByDayAndComment(DNFClause dnfClause,
+			DateTime ongoingUntil) {
+		SortedMap<DateTime, Map<String, Duration>> result = new TreeMap<>();
+		Condition itemCondition = conditionOf(dnfClause);
 		
 		try (DSLContext context = getDSLContext())
-		{			
-			List<TimeTrackingItem> items = context.fetch(sql).map(new TimeTrackingItemMapper());
-			return items.size() > 0 ? Optional.of(items.get(0)) : Optional.absent();
+		{
+			if (!dnfClause.getEndNotAfter().isPresent() && !dnfClause.getEndBefore().isPresent()
+					&& !dnfClause.getCommentContains().isPresent())
+			{
+				Condition dayCondition = DSL.trueCondition();
+				Condition totalledItems = COLUMN_END.isNotNull();
+				if (dnfClause.getStartNotBefore().isPresent())
+				{
+					DateTime firstDay = ceilToDay(dnfClause.getStartNotBefore().get());
+					dayCondition = dayCondition.and(COLUMN_DAY.ge(firstDay.getMillis()));
+					totalledItems = totalledItems.and(COLUMN_START.greaterOrEqual(firstDay));
+				}
+				if (dnfClause.getStartBefore().isPresent())
+				{
+					DateTime afterLastDay = floorToDay(dnfClause.getStartBefore().get());
+					dayCondition = dayCondition.and(COLUMN_DAY.lt(afterLastDay.getMillis()));
+					totalledItems = totalledItems.and(COLUMN_START.lessThan(afterLastDay));
+				}
+				
+				ResultQuery<Record3<Long, String, Long>> sql = DSL
+						.select(COLUMN_DAY, COLUMN_TOTAL_COMMENT, COLUMN_DURATION)
+						.from(DAILY_TOTALS_TABLE)
+						.where(dayCondition);
+				LOG.log(Level.FINEST, "Executing SQL: "+sql.getSQL());
+				for (Record3<Long, String, Long> record : context.fetch(sql))
+				{
+					add(result, record.value1(), record.value2(), record.value3());
+				}
+				itemCondition = itemCondition.andNot(totalledItems);
+			}
+			
+			ResultQuery<Record3<Long, String, BigDecimal>> sql = DSL
+					.select(START_DAY, COMMENT_OR_EMPTY, sumOfDurations(ongoingUntil))
+					.from(ITEMS_TABLE)
+					.where(itemCondition)
+					.groupBy(START_DAY, COMMENT_OR_EMPTY);
+			LOG.log(Level.FINEST, "Executing SQL: "+sql.getSQL());
+			for (Record3<Long, String, BigDecimal> record : context.fetch(sql))
+			{
+				add(result, record.value1(), record.value2(), record.value3().longValue());
+			}
 		}
+		return result;
+	}
+
+	private static void add(SortedMap<DateTime, Map<String, Duration>> totals, long day, String comment,
+			long durationMillis) {
+		DateTime dayStart = new DateTime(day);
+		Map<String, Duration> durations = totals.get(dayStart);
+		if (durations == null)
+		{
+			durations = new HashMap<>();
+			totals.put(dayStart, durations);
+		}
+		add(durations, comment, new Duration(durationMillis));
+	}
+
+	private static void add(Map<String, Duration> durations, String comment, Duration duration) {
+		Duration sum = durations.get(comment);
+		durations.put(comment, sum == null ? duration : sum.plus(duration));
 	}
 
+	/*
+	 * Days like the START_OF_DAY function: in the zone of the JVM
+	 */
+	private static DateTime floorToDay(DateTime dateTime) {
+		return new LocalDate(dateTime.getMillis()).toDateTimeAtStartOfDay();
+	}
+
+	private static DateTime ceilToDay(DateTime dateTime) {
+		DateTime day = floorToDay(dateTime);
+		return day.getMillis() == dateTime.getMillis() ? day
+				: new LocalDate(dateTime.getMillis()).plusDays(1).toDateTimeAtStartOfDay();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.stt.persistence.db.DBStorage#updateDailyTotals(org.joda.time.DateTime, com.google.common.base.Optional)
+	 */
 	@Override
-	public Optional<TimeTrackingItem> getNextTimeTrackingTime(TimeTrackingItem item) {
-		ResultQuery<Record4<DateTime, DateTime, String, Boolean>> sql = DSL
-				.select(COLUMN_START, 
-						COLUMN_END, 
-						COLUMN_COMMENT,
-						COLUMN_LOGGED)
-				.from(ITEMS_TABLE)
-				.where(COLUMN_START.greaterThan(item.getStart()))
-				.orderBy(COLUMN_START.asc()).limit(1);
-		
-		LOG.log(Level.FINEST, "Executing SQL: "+sql.getSQL());
-		
+	public void updateDailyTotals(DateTime from, Optional<DateTime> to) throws SQLException {
+		startTransaction();
 		try (DSLContext context = getDSLContext())
-		{				
-	
-			List<TimeTrackingItem> items = context.fetch(sql).map(new TimeTrackingItemMapper());
-			return items.size() > 0 ? Optional.of(items.get(0)) : Optional.absent();
+		{
+			// the item running at from may have started days before
+			Long previousStart = context.select(DSL.max(COLUMN_START_MILLIS))
+					.from(ITEMS_TABLE)
+					.where(COLUMN_START.lessThan(from))
+					.fetchOne().value1();
+			DateTime firstDay = floorToDay(previousStart == null ? from : new DateTime(previousStart.longValue()));
+			Condition dayCondition = COLUMN_DAY.ge(firstDay.getMillis());
+			Condition itemCondition = COLUMN_START.greaterOrEqual(firstDay);
+			if (to.isPresent())
+			{
+				DateTime afterLastDay = new LocalDate(to.get().getMillis()).plusDays(1).toDateTimeAtStartOfDay();
+				dayCondition = dayCondition.and(COLUMN_DAY.lt(afterLastDay.getMillis()));
+				itemCondition = itemCondition.and(COLUMN_START.lessThan(afterLastDay));
+			}
+			
+			replaceDailyTotals(context, dayCondition, itemCondition);
+		} catch (RuntimeException e) {
+			rollback();
+			throw e;
+		} finally {
+			endTransaction();
 		}
 	}
 
+	/* (non-Javadoc)
+	 * @see org.stt.persistence.db.DBStorage#rebuildDailyTotals()
+	 */
 	@Override
-	public Collection<DateTime> getAllTrackedDays() {
-		Collection<DateTime> result = new ArrayList<>();
-
-		DateTime lastDay = null;
-		for (TimeTrackingItem item : getAllItems()) {
-			DateTime currentDay = item.getStart()
-					.withTimeAtStartOfDay();
-			if (lastDay == null || !lastDay.equals(currentDay)) {
-				result.add(currentDay);
-				lastDay = currentDay;
+	public void rebuildDailyTotals() throws SQLException {
+		startTransaction();
+		try (DSLContext context = getDSLContext())
+		{
+			replaceAllDailyTotals(context);
+		} catch (RuntimeException e) {
+			rollback();
+			throw e;
+		} finally {
+			endTransaction();
+		}
+	}
+
+	/**
+	 * The days of the daily totals are those of the zone they were calculated
+	 * in. Queries take days in the zone of the JVM, so the totals are
+	 * calculated again when it has changed since.
+	 */
+	private void rebuildDailyTotalsIfZoneChanged() {
+		startTransaction();
+		try (DSLContext context = getDSLContext())
+		{
+			Record1<String> totalsZone = context.select(COLUMN_METADATA_CONTENT)
+					.from(METADATA_TABLE)
+					.where(COLUMN_METADATA_NAME.eq(DAILY_TOTALS_ZONE))
+					.fetchOne();
+			String zone = DateTimeZone.getDefault().getID();
+			if (totalsZone == null || !zone.equals(totalsZone.value1()))
+			{
+				LOG.info("Calculating daily totals for time zone " + zone);
+				replaceAllDailyTotals(context);
 			}
+		} catch (RuntimeException e) {
+			rollback();
+			throw e;
+		} finally {
+			endTransaction();
 		}
-		return result;
+	}
+
+	private void replaceAllDailyTotals(DSLContext context) {
+		replaceDailyTotals(context, DSL.trueCondition(), DSL.trueCondition());
+		context.deleteFrom(METADATA_TABLE)
+				.where(COLUMN_METADATA_NAME.eq(DAILY_TOTALS_ZONE))
+				.execute();
+		context.insertInto(METADATA_TABLE, COLUMN_METADATA_NAME, COLUMN_METADATA_CONTENT)
+				.values(DAILY_TOTALS_ZONE, DateTimeZone.getDefault().getID())
+				.execute();
+	}
+
+	private void replaceDailyTotals(DSLContext context, Condition dayCondition, Condition itemCondition) {
+		context.deleteFrom(DAILY_TOTALS_TABLE)
+				.where(dayCondition)
+				.execute();
+		context.insertInto(DAILY_TOTALS_TABLE, COLUMN_DAY, COLUMN_TOTAL_COMMENT, COLUMN_DURATION, COLUMN_ITEM_COUNT)
+				.select(DSL.select(START_DAY, COMMENT_OR_EMPTY,
+						DSL.sum(COLUMN_END_MILLIS.minus(COLUMN_START_MILLIS)).cast(SQLDataType.BIGINT), DSL.count())
+						.from(ITEMS_TABLE)
+						.where(itemCondition)
+						.and(COLUMN_END.isNotNull())
+						.groupBy(START_DAY, COMMENT_OR_EMPTY))
+				.execute();
+	}
+
+	/**
+	 * Durations are calculated from the stored milliseconds, so only the sums
+	 * are sent.
+	 */
+	private static Field<BigDecimal> sumOfDurations(DateTime ongoingUntil) {
+		return DSL.sum(DSL.coalesce(COLUMN_END_MILLIS, DSL.val(ongoingUntil.getMillis()))
+				.minus(COLUMN_START_MILLIS));
 	}
 
 	@Override
 	public Collection<TimeTrackingItem> queryFirstNItems(Optional<DateTime> start, Optional<DateTime> end,
 			Optional<Integer> maxItems) {
-		Condition c = DSL.trueCondition();
+		List<Object> bindValues = new ArrayList<>();
 		if (start.isPresent())
 		{
-			c = c.and(COLUMN_START.greaterOrEqual(start.get()));
+			bindValues.add(CONVERTER.to(start.get()));
 		}
 		if (end.isPresent())
 		{
-			c = c.and(COLUMN_END.lessOrEqual(end.get()));
-		}		
-		
-		ResultQuery<Record4<DateTime, DateTime, String, Boolean>> sql = DSL
-				.select(COLUMN_START, 
-						COLUMN_END, 
-						COLUMN_COMMENT,
-						COLUMN_LOGGED)
-				.from(ITEMS_TABLE)
-				.where(c)
-				.orderBy(COLUMN_START.asc());
-		
+			bindValues.add(CONVERTER.to(end.get()));
+		}
 		if (maxItems.isPresent())
 		{
-			sql = ((SelectLimitStep<Record4<DateTime, DateTime, String, Boolean>>)sql).limit(maxItems.get());
+			bindValues.add(maxItems.get());
 		}
 		
-		LOG.log(Level.FINEST, "Executing SQL: "+sql.getSQL());
+		return fetchItems(SQL_FIRST_N_ITEMS[variant(start.isPresent(), end.isPresent(), maxItems.isPresent())],
+				bindValues.toArray());
+	}
+
+	/**
+	 * Executes the sql with a cached statement of the connection of the
+	 * calling thread.
+	 */
+	private List<TimeTrackingItem> fetchItems(String sql, Object... bindValues) {
+		LOG.log(Level.FINEST, "Executing SQL: {0}", sql);
 		
-		try (DSLContext context = getDSLContext())
-		{			
-			List<TimeTrackingItem> items = context.fetch(sql).map(new TimeTrackingItemMapper());
+		Connection connection = connectionProvider.acquire();
+		try {
+			PreparedStatement statement = statementCache.prepare(connection, sql);
+			for (int i = 0; i < bindValues.length; i++)
+			{
+				statement.setObject(i + 1, bindValues[i]);
+			}
+			List<TimeTrackingItem> items = new ArrayList<>();
+			try (ResultSet resultSet = statement.executeQuery())
+			{
+				while (resultSet.next())
+				{
+					items.add(itemOf(resultSet));
+				}
+			}
 			return items;
+		} catch (SQLException e) {
+			throw new DataAccessException("SQL Exception executing " + sql, e);
+		} finally {
+			connectionProvider.release(connection);
 		}
 	}
 
+	/**
+	 * Maps the current row, with the columns start, end and comment, straight
+	 * from the stored milliseconds.
+	 */
+	private static TimeTrackingItem itemOf(ResultSet resultSet) throws SQLException {
+		DateTime start = new DateTime(resultSet.getLong(1));
+		long endMillis = resultSet.getLong(2);
+		Optional<DateTime> end = resultSet.wasNull() ? Optional.<DateTime>absent()
+				: Optional.of(new DateTime(endMillis));
+		return new TimeTrackingItem(resultSet.getString(3), start, end);
+	}
+
+	private Optional<TimeTrackingItem> fetchFirstItem(String sql, Object... bindValues) {
+		List<TimeTrackingItem> items = fetchItems(sql, bindValues);
+		return items.size() > 0 ? Optional.of(items.get(0)) : Optional.<TimeTrackingItem>absent();
+	}
+
 	@Override
 	public Collection<TimeTrackingItem> queryItems(DNFClause dnfClause) {
-        Collection<TimeTrackingItem> result = new ArrayList<>();
-		DNFClauseMatcher DNFClauseMatcher = new DNFClauseMatcher(dnfClause);
-	    for (TimeTrackingItem item : getAllItems()) {
-			if (DNFClauseMatcher.matches(item)) {
-				result.add(item);
+		return getItemsByCondition(conditionOf(dnfClause));
+	}
+
+	/**
+	 * Translates the clause, so only matching rows are fetched. Stored times
+	 * are whole seconds, so bounds with milliseconds are rounded up where
+	 * the converter would round them down and change the result.
+	 */
+	private Condition conditionOf(DNFClause dnfClause) {
+		Condition c = timeConditionOf(dnfClause);
+		if (dnfClause.getCommentContains().isPresent())
+		{
+			c = c.and(H2CommentIndex.commentContains(COLUMN_COMMENT, dnfClause.getCommentContains().get()));
+		}
+		return c;
+	}
+
+	private Condition timeConditionOf(DNFClause dnfClause) {
+		Condition c = DSL.trueCondition();
+		if (dnfClause.getStartNotBefore().isPresent())
+		{
+			c = c.and(COLUMN_START.greaterOrEqual(ceilToSecond(dnfClause.getStartNotBefore().get())));
+		}
+		if (dnfClause.getStartBefore().isPresent())
+		{
+			c = c.and(COLUMN_START.lessThan(ceilToSecond(dnfClause.getStartBefore().get())));
+		}
+		if (dnfClause.getEndNotAfter().isPresent())
+		{
+			c = c.and(COLUMN_END.lessOrEqual(dnfClause.getEndNotAfter().get()));
+		}
+		if (dnfClause.getEndBefore().isPresent())
+		{
+			c = c.and(COLUMN_END.lessThan(ceilToSecond(dnfClause.getEndBefore().get())));
+		}
+		return c;
+	}
+
+	/**
+	 * Walks the items from the latest one backwards on the descending start
+	 * index, in chunks limited to the fetch size. The comments that can
+	 * match are looked up in the comment index first, so the walk also ends
+	 * once all of them are found.
+	 */
+	@Override
+	public List<String> queryLatestComments(DNFClause dnfClause, int maxComments) {
+		Set<String> comments = new LinkedHashSet<>();
+		try (DSLContext context = getDSLContext())
+		{
+			Set<String> candidates = null;
+			if (dnfClause.getCommentContains().isPresent())
+			{
+				candidates = H2CommentIndex.commentsContaining(context, dnfClause.getCommentContains().get());
+			}
+			Condition itemCondition = timeConditionOf(dnfClause).and(COLUMN_COMMENT.isNotNull());
+
+			// continues after the rows of the previous chunk, items may
+			// start at the same time
+			Long lastStart = null;
+			int lastStartCount = 0;
+			boolean more = true;
+			while (more && comments.size() < maxComments
+					&& (candidates == null || comments.size() < candidates.size()))
+			{
+				Result<Record2<Long, String>> chunk = context.select(COLUMN_START_MILLIS, COLUMN_COMMENT)
+						.from(ITEMS_TABLE)
+						.where(lastStart == null ? itemCondition : itemCondition.and(COLUMN_START_MILLIS.le(lastStart)))
+						.orderBy(COLUMN_START_MILLIS.desc())
+						.limit(fetchSize)
+						.offset(lastStartCount)
+						.fetch();
+				more = chunk.size() == fetchSize;
+				for (Record2<Long, String> row : chunk)
+				{
+					if (row.value1().equals(lastStart))
+					{
+						lastStartCount++;
+					}
+					else
+					{
+						lastStart = row.value1();
+						lastStartCount = 1;
+					}
+					if (comments.size() < maxComments && (candidates == null || candidates.contains(row.value2())))
+					{
+						comments.add(row.value2());
+					}
+				}
 			}
-	    }
-        return result;
+		}
+		return new ArrayList<>(comments);
+	}
+
+	private DateTime ceilToSecond(DateTime dateTime) {
+		return dateTime.getMillisOfSecond() == 0 ? dateTime : dateTime.withMillisOfSecond(0).plusSeconds(1);
 	}
 
 	@Override
@@ -384,44 +970,83 @@ public class H2DBStorage implements DBStorage {
 	}
 
 
+	/**
+	 * Starts a transaction for the calling thread, or joins the one it
+	 * already has. Until it ends, all operations of the thread run in it,
+	 * because the connection provider hands the thread the same connection.
+	 * <p>
+	 * Transactions resolve overlaps by reading items before writing them, so
+	 * only one thread at a time may have one. Reading without a transaction
+	 * isn't blocked by this and only sees committed items.
+	 * </p>
+	 */
 	@Override
 	public void startTransaction() {
-		if (txConnection == null)
+		Transaction transaction = transactions.get();
+		if (transaction != null)
 		{
-			txConnection = connectionProvider.acquire();
-			try {
-				txConnection.setAutoCommit(false);
-			} catch (SQLException e) {
-				throw new RuntimeException(e);
+			transaction.depth++;
+			return;
+		}
+		transactionLock.lock();
+		Connection connection = null;
+		try {
+			connection = connectionProvider.acquire();
+			connection.setAutoCommit(false);
+		} catch (SQLException | RuntimeException e) {
+			if (connection != null)
+			{
+				connectionProvider.release(connection);
 			}
+			transactionLock.unlock();
+			throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
 		}
+		transactions.set(new Transaction(connection));
 	}
 
 
+	/**
+	 * Commits the transaction of the calling thread, unless it is nested in
+	 * another one.
+	 */
 	@Override
 	public void endTransaction()  {
-		if (txConnection != null)
+		Transaction transaction = transactions.get();
+		if (transaction == null || --transaction.depth > 0)
 		{
-			try {
-				txConnection.commit();
-				txConnection.setAutoCommit(true);
-			} catch (SQLException e) {
-				throw new RuntimeException(e);
-			}
-			connectionProvider.release(txConnection);
+			return;
+		}
+		transactions.remove();
+		try {
+			transaction.connection.commit();
+			transaction.connection.setAutoCommit(true);
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		} finally {
+			// returning the connection rolls back anything left uncommitted
+			connectionProvider.release(transaction.connection);
+			transactionLock.unlock();
 		}
-		txConnection = null;
 	}
 
 
 	@Override
 	public void rollback()   {
-		if (txConnection != null)
+		Transaction transaction = transactions.get();
+		if (transaction != null)
 			try {
-				txConnection.rollback();
+				transaction.connection.rollback();
 			} catch (SQLException e) {
 				throw new RuntimeException(e);
 			}
 	}
 
+	private static class Transaction {
+		final Connection connection;
+		int depth = 1;
+
+		Transaction(Connection connection) {
+			this.connection = connection;
+		}
+	}
 }
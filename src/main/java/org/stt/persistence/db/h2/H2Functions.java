@@ -0,0 +1,21 @@
+package org.stt.persistence.db.h2;
+
+import org.joda.time.DateTime;
+
+/**
+ * Java functions the schema makes available to SQL, for calculations H2
+ * can't do itself.
+ */
+public final class H2Functions {
+
+	private H2Functions() {
+	}
+
+	/**
+	 * @return the start of the day of the epoch milliseconds in the zone of
+	 *         the JVM, like {@link DateTime#withTimeAtStartOfDay()}
+	 */
+	public static long startOfDay(long millis) {
+		return new DateTime(millis).withTimeAtStartOfDay().getMillis();
+	}
+}
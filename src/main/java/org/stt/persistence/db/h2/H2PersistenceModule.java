@@ -23,6 +23,7 @@ import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
+import com.google.inject.multibindings.OptionalBinder;
 import com.google.inject.name.Named;
 
 public class H2PersistenceModule extends AbstractModule {
@@ -35,20 +36,23 @@ public class H2PersistenceModule extends AbstractModule {
         bind(TimeTrackingItemQueries.class).to(DBStorage.class);
         bind(ItemPersister.class).to(DBItemPersister.class);
         bind(Configuration.class).to(H2Configuration.class);
+        // lets commands depend on the database without knowing this module
+        OptionalBinder.newOptionalBinder(binder(), DBStorage.class).setBinding().to(H2DBStorage.class);
 	}
 
 	@Provides
+	@Singleton
 	@Inject public ConnectionProvider getConnectionProvider(H2Configuration config) throws SQLException, ClassNotFoundException
 	{
-		return new H2ConnectionProvider(config);
+		return new H2ConnectionProvider(config, config.getMaxConnections());
 
 	}
 	
 	@Provides
 	@Singleton
-	@Inject public DBStorage getDBStorage(ConnectionProvider connectionProvider) throws SQLException
+	@Inject public H2DBStorage getDBStorage(ConnectionProvider connectionProvider, H2Configuration config) throws SQLException
 	{
-		return new H2DBStorage(connectionProvider);
+		return new H2DBStorage(connectionProvider, config.getBatchSize(), config.getFetchSize());
 	}
 
     @Provides @Named("uncached")
@@ -0,0 +1,272 @@
+package org.stt.persistence.db.h2;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.jooq.BatchBindStep;
+import org.jooq.ConnectionProvider;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.SQLDialect;
+import org.jooq.Table;
+import org.jooq.exception.DataAccessException;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+
+/**
+ * Brings the schema of a database up to the latest version. The version of a
+ * database is kept in its own table, databases created before that table
+ * existed are at version 0.
+ * <p>
+ * Migrations are applied in order, each one together with recording its
+ * version. H2 commits DDL statements implicitly, so migrations must be safe
+ * to apply again after being interrupted.
+ * </p>
+ */
+class H2SchemaMigrator {
+
+	private static final Logger LOG = Logger.getLogger(H2SchemaMigrator.class.getName());
+
+	static final Table<Record> VERSION_TABLE = DSL.table("SchemaVersion");
+	static final Field<Integer> COLUMN_VERSION = DSL.field("VERSION", SQLDataType.INTEGER.nullable(false));
+
+	interface Migration {
+		String getDescription();
+
+		void apply(DSLContext context);
+	}
+
+	/**
+	 * Migration i brings the schema to version i + 1. Only ever append.
+	 */
+	private static final List<Migration> MIGRATIONS = Arrays.<Migration> asList(new Migration() {
+		@Override
+		public String getDescription() {
+			return "create items table";
+		}
+
+		@Override
+		public void apply(DSLContext context) {
+			// the columns as originally created, later migrations change them
+			context.execute("CREATE TABLE IF NOT EXISTS TimeTrackingItems(START_TIME TIMESTAMP,"
+					+ " END_TIME TIMESTAMP, COMMENT VARCHAR, LOGGED BOOLEAN)");
+		}
+	}, new Migration() {
+		@Override
+		public String getDescription() {
+			return "add surrogate id";
+		}
+
+		@Override
+		public void apply(DSLContext context) {
+			// existing rows are numbered when the column is added
+			context.execute("ALTER TABLE TimeTrackingItems ADD COLUMN IF NOT EXISTS ID BIGINT AUTO_INCREMENT");
+			context.execute("ALTER TABLE TimeTrackingItems ADD CONSTRAINT IF NOT EXISTS PK_ITEMS PRIMARY KEY (ID)");
+		}
+	}, new Migration() {
+		@Override
+		public String getDescription() {
+			return "index end";
+		}
+
+		@Override
+		public void apply(DSLContext context) {
+			context.execute("CREATE INDEX IF NOT EXISTS IDX_ITEMS_END ON TimeTrackingItems(END_TIME)");
+		}
+	}, new Migration() {
+		@Override
+		public String getDescription() {
+			return "covering index on start";
+		}
+
+		@Override
+		public void apply(DSLContext context) {
+			// serves lookups by start as well as range scans ordered by
+			// start, which can be answered from the index alone
+			context.execute("CREATE INDEX IF NOT EXISTS IDX_ITEMS_START"
+					+ " ON TimeTrackingItems(START_TIME, END_TIME, COMMENT, LOGGED)");
+		}
+	}, new Migration() {
+		@Override
+		public String getDescription() {
+			return "store times as epoch milliseconds";
+		}
+
+		@Override
+		public void apply(DSLContext context) {
+			// the times are copied to new columns, which replace the old ones
+			// once complete. Each step checks what is left to do.
+			if ("TIMESTAMP".equals(columnType(context, "START_TIME"))) {
+				context.execute("ALTER TABLE TimeTrackingItems ADD COLUMN IF NOT EXISTS START_MILLIS BIGINT");
+				context.execute("ALTER TABLE TimeTrackingItems ADD COLUMN IF NOT EXISTS END_MILLIS BIGINT");
+
+				// converted here instead of in SQL, the timestamps are local
+				// times of the zone of the JVM
+				BatchBindStep batch = context
+						.batch("UPDATE TimeTrackingItems SET START_MILLIS = ?, END_MILLIS = ? WHERE ID = ?");
+				for (Record row : context.fetch("SELECT ID, START_TIME, END_TIME FROM TimeTrackingItems"
+						+ " WHERE START_MILLIS IS NULL AND START_TIME IS NOT NULL")) {
+					Timestamp end = row.getValue(2, Timestamp.class);
+					batch.bind(row.getValue(1, Timestamp.class).getTime(), end == null ? null : end.getTime(),
+							row.getValue(0, Long.class));
+				}
+				if (batch.size() > 0) {
+					batch.execute();
+				}
+
+				context.execute("DROP INDEX IF EXISTS IDX_ITEMS_START");
+				context.execute("DROP INDEX IF EXISTS IDX_ITEMS_END");
+				context.execute("ALTER TABLE TimeTrackingItems DROP COLUMN START_TIME, END_TIME");
+			}
+			if (columnType(context, "START_MILLIS") != null) {
+				context.execute("ALTER TABLE TimeTrackingItems ALTER COLUMN START_MILLIS RENAME TO START_TIME");
+			}
+			if (columnType(context, "END_MILLIS") != null) {
+				context.execute("ALTER TABLE TimeTrackingItems ALTER COLUMN END_MILLIS RENAME TO END_TIME");
+			}
+			context.execute("CREATE INDEX IF NOT EXISTS IDX_ITEMS_END ON TimeTrackingItems(END_TIME)");
+			context.execute("CREATE INDEX IF NOT EXISTS IDX_ITEMS_START"
+					+ " ON TimeTrackingItems(START_TIME, END_TIME, COMMENT, LOGGED)");
+		}
+	}, new Migration() {
+		@Override
+		public String getDescription() {
+			return "start of day function";
+		}
+
+		@Override
+		public void apply(DSLContext context) {
+			context.execute("CREATE ALIAS IF NOT EXISTS START_OF_DAY FOR \"" + H2Functions.class.getName()
+					+ ".startOfDay\"");
+		}
+	}, new Migration() {
+		@Override
+		public String getDescription() {
+			return "daily totals";
+		}
+
+		@Override
+		public void apply(DSLContext context) {
+			context.execute("CREATE TABLE IF NOT EXISTS DailyTotals(DAY BIGINT NOT NULL,"
+					+ " COMMENT VARCHAR NOT NULL, DURATION BIGINT NOT NULL, ITEM_COUNT INT NOT NULL,"
+					+ " PRIMARY KEY (DAY, COMMENT))");
+			context.execute("DELETE FROM DailyTotals");
+			context.execute("INSERT INTO DailyTotals"
+					+ " SELECT START_OF_DAY(START_TIME), COALESCE(COMMENT, ''), SUM(END_TIME - START_TIME), COUNT(*)"
+					+ " FROM TimeTrackingItems WHERE END_TIME IS NOT NULL"
+					+ " GROUP BY START_OF_DAY(START_TIME), COALESCE(COMMENT, '')");
+		}
+	}, new Migration() {
+		@Override
+		public String getDescription() {
+			return "comment index";
+		}
+
+		@Override
+		public void apply(DSLContext context) {
+			context.execute("CREATE TABLE IF NOT EXISTS Comments(ID BIGINT AUTO_INCREMENT PRIMARY KEY,"
+					+ " COMMENT VARCHAR NOT NULL UNIQUE)");
+			context.execute("CREATE TABLE IF NOT EXISTS CommentTrigrams(TRIGRAM VARCHAR(3) NOT NULL,"
+					+ " COMMENT_ID BIGINT NOT NULL, PRIMARY KEY (TRIGRAM, COMMENT_ID))");
+			context.execute("CREATE INDEX IF NOT EXISTS IDX_ITEMS_COMMENT ON TimeTrackingItems(COMMENT)");
+			H2CommentIndex.add(context, context
+					.fetch("SELECT DISTINCT COMMENT FROM TimeTrackingItems WHERE COMMENT IS NOT NULL")
+					.getValues(0, String.class));
+		}
+	}, new Migration() {
+		@Override
+		public String getDescription() {
+			return "descending index on start";
+		}
+
+		@Override
+		public void apply(DSLContext context) {
+			// H2 only reads indexes in their own order, walking the items from
+			// the latest one backwards needs its own index
+			context.execute("CREATE INDEX IF NOT EXISTS IDX_ITEMS_LATEST"
+					+ " ON TimeTrackingItems(START_TIME DESC, END_TIME, COMMENT)");
+		}
+	}, new Migration() {
+		@Override
+		public String getDescription() {
+			return "metadata";
+		}
+
+		@Override
+		public void apply(DSLContext context) {
+			// facts about the data, e.g. the zone of the daily totals
+			context.execute("CREATE TABLE IF NOT EXISTS Metadata(NAME VARCHAR PRIMARY KEY,"
+					+ " CONTENT VARCHAR NOT NULL)");
+		}
+	});
+
+	private final ConnectionProvider connectionProvider;
+
+	H2SchemaMigrator(ConnectionProvider connectionProvider) {
+		this.connectionProvider = connectionProvider;
+	}
+
+	static int latestVersion() {
+		return MIGRATIONS.size();
+	}
+
+	/**
+	 * @return the version of the schema after migrating
+	 */
+	int migrate() {
+		Connection connection = connectionProvider.acquire();
+		try {
+			boolean autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+			try {
+				DSLContext context = DSL.using(connection, SQLDialect.H2);
+				context.createTableIfNotExists(VERSION_TABLE).columns(COLUMN_VERSION).execute();
+
+				int version = currentVersion(context);
+				if (version > MIGRATIONS.size()) {
+					throw new IllegalStateException("Database schema version " + version
+							+ " is newer than the latest known version " + MIGRATIONS.size());
+				}
+				for (; version < MIGRATIONS.size(); version++) {
+					Migration migration = MIGRATIONS.get(version);
+					LOG.info("Migrating database schema to version " + (version + 1) + ": "
+							+ migration.getDescription());
+					migration.apply(context);
+					context.deleteFrom(VERSION_TABLE).execute();
+					context.insertInto(VERSION_TABLE, COLUMN_VERSION).values(version + 1).execute();
+					connection.commit();
+				}
+				return version;
+			} catch (RuntimeException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(autoCommit);
+			}
+		} catch (SQLException e) {
+			throw new DataAccessException("SQL Exception migrating schema", e);
+		} finally {
+			connectionProvider.release(connection);
+		}
+	}
+
+	/**
+	 * @return the type name of the column of the items table, null if there
+	 *         is no such column
+	 */
+	static String columnType(DSLContext context, String column) {
+		Record type = context.fetchOne("SELECT TYPE_NAME FROM INFORMATION_SCHEMA.COLUMNS"
+				+ " WHERE TABLE_NAME = 'TIMETRACKINGITEMS' AND COLUMN_NAME = ?", column);
+		return type == null ? null : type.getValue(0, String.class);
+	}
+
+	static int currentVersion(DSLContext context) {
+		Integer version = context.select(DSL.max(COLUMN_VERSION)).from(VERSION_TABLE).fetchOne().value1();
+		return version == null ? 0 : version;
+	}
+}
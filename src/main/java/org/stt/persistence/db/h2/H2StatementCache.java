@@ -0,0 +1,67 @@
+package org.stt.persistence.db.h2;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps prepared statements per connection, so frequent queries are prepared
+ * once per connection instead of on every execution.
+ * <p>
+ * Relies on a connection being used by one thread at a time, which the
+ * connection provider ensures. Statements of closed connections are dropped
+ * when the next connection is seen for the first time.
+ * </p>
+ */
+class H2StatementCache {
+
+	private static final Logger LOG = Logger.getLogger(H2StatementCache.class.getName());
+
+	private final Map<Connection, Map<String, PreparedStatement>> statements = new IdentityHashMap<>();
+
+	/**
+	 * @return the cached statement for the sql on the connection, with its
+	 *         parameters cleared
+	 */
+	PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+		Map<String, PreparedStatement> connectionStatements = statementsOf(connection);
+		PreparedStatement statement = connectionStatements.get(sql);
+		if (statement == null || statement.isClosed()) {
+			statement = connection.prepareStatement(sql);
+			connectionStatements.put(sql, statement);
+		} else {
+			statement.clearParameters();
+		}
+		return statement;
+	}
+
+	private synchronized Map<String, PreparedStatement> statementsOf(Connection connection) throws SQLException {
+		Map<String, PreparedStatement> connectionStatements = statements.get(connection);
+		if (connectionStatements == null) {
+			removeClosedConnections();
+			connectionStatements = new HashMap<>();
+			statements.put(connection, connectionStatements);
+		}
+		return connectionStatements;
+	}
+
+	private void removeClosedConnections() {
+		Iterator<Connection> connections = statements.keySet().iterator();
+		while (connections.hasNext()) {
+			try {
+				if (connections.next().isClosed()) {
+					connections.remove();
+				}
+			} catch (SQLException e) {
+				LOG.log(Level.WARNING, "Exception determining connection state", e);
+				connections.remove();
+			}
+		}
+	}
+}
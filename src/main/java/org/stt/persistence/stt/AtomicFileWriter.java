@@ -0,0 +1,169 @@
+package org.stt.persistence.stt;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributeView;
+
+import org.stt.persistence.OwnFileWrites;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Writes UTF-8 text to a temporary file next to the target and replaces the
+ * target with it on {@link #close()}, after forcing the content to disk. A
+ * crash at any time leaves either the old or the new content behind, never a
+ * truncated file.
+ * <p>
+ * If writing fails, closing discards the temporary file and leaves the target
+ * untouched.
+ * </p>
+ * <p>
+ * A symbolic link as target stays in place, the file it points to gets
+ * replaced. The new file gets the permissions of the file it replaces.
+ * </p>
+ * <p>
+ * The replaced target is recorded as an own write.
+ * </p>
+ */
+class AtomicFileWriter extends Writer {
+	private final File target;
+	private final File tempFile;
+	private final OwnFileWrites ownWrites;
+	private final FileOutputStream fileOut;
+	private final Writer out;
+	private boolean failed;
+	private boolean closed;
+
+	AtomicFileWriter(File target, OwnFileWrites ownWrites) throws IOException {
+		this.target = realFileOf(checkNotNull(target));
+		this.ownWrites = checkNotNull(ownWrites);
+		this.tempFile = File.createTempFile(this.target.getName(), ".tmp", this.target.getParentFile());
+		try {
+			copyPermissions(this.target.toPath(), tempFile.toPath());
+			this.fileOut = new FileOutputStream(tempFile);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(tempFile.toPath());
+			throw e;
+		}
+		this.out = new BufferedWriter(new OutputStreamWriter(fileOut, StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		try {
+			out.write(cbuf, off, len);
+		} catch (IOException | RuntimeException e) {
+			failed = true;
+			throw e;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		try {
+			out.flush();
+		} catch (IOException e) {
+			failed = true;
+			throw e;
+		}
+	}
+
+	/**
+	 * Drops everything written so far, the target is not touched.
+	 */
+	public void discard() {
+		failed = true;
+		try {
+			close();
+		} catch (IOException e) { // NOPMD
+			// nothing was committed, which is all that was asked for
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (!failed) {
+				out.flush();
+				fileOut.getChannel().force(true);
+			}
+		} catch (IOException e) {
+			failed = true;
+			throw e;
+		} finally {
+			out.close();
+			if (failed) {
+				Files.deleteIfExists(tempFile.toPath());
+			}
+		}
+		if (failed) {
+			throw new IOException("Not replacing " + target + ", writing failed");
+		}
+		try {
+			replaceTarget();
+		} catch (IOException e) {
+			Files.deleteIfExists(tempFile.toPath());
+			throw e;
+		}
+		ownWrites.record(target);
+		syncDirectory(target.getParentFile());
+	}
+
+	private void replaceTarget() throws IOException {
+		try {
+			Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static File realFileOf(File file) throws IOException {
+		try {
+			return file.toPath().toRealPath().toFile();
+		} catch (NoSuchFileException e) {
+			// created on close
+			return file.getAbsoluteFile();
+		}
+	}
+
+	/**
+	 * Temporary files are only accessible by their owner
+	 */
+	private static void copyPermissions(Path from, Path to) throws IOException {
+		if (!Files.exists(from)) {
+			return;
+		}
+		PosixFileAttributeView posix = Files.getFileAttributeView(from, PosixFileAttributeView.class);
+		if (posix != null) {
+			Files.setPosixFilePermissions(to, posix.readAttributes().permissions());
+		}
+		AclFileAttributeView acl = Files.getFileAttributeView(from, AclFileAttributeView.class);
+		if (acl != null) {
+			Files.getFileAttributeView(to, AclFileAttributeView.class).setAcl(acl.getAcl());
+		}
+	}
+
+	/**
+	 * Makes the rename itself durable where the platform supports it.
+	 */
+	private static void syncDirectory(File directory) {
+		try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) { // NOPMD
+			// directories can't be opened on all platforms, e.g. Windows
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package org.stt.persistence.stt;
+
+import com.google.common.base.Optional;
+import org.stt.model.TimeTrackingItem;
+import org.stt.persistence.ItemReader;
+
+import java.io.IOException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads the items of the given reader but skips all items that would be
+ * written to the same line as the deleted item, just like
+ * {@link STTItemPersister#delete(TimeTrackingItem)} does.
+ */
+class DeletingItemReader implements ItemReader {
+    private final STTItemConverter converter = new STTItemConverter();
+    private final ItemReader reader;
+    private final String lineOfItemToDelete;
+
+    public DeletingItemReader(ItemReader reader, TimeTrackingItem itemToDelete) {
+        this.reader = checkNotNull(reader);
+        this.lineOfItemToDelete = converter.timeTrackingItemToLine(checkNotNull(itemToDelete));
+    }
+
+    @Override
+    public Optional<TimeTrackingItem> read() {
+        Optional<TimeTrackingItem> item;
+        while ((item = reader.read()).isPresent()) {
+            if (!lineOfItemToDelete.equals(converter.timeTrackingItemToLine(item.get()))) {
+                return item;
+            }
+        }
+        return item;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,161 @@
+package org.stt.persistence.stt;
+
+import com.google.inject.Provider;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Applies mutations of the .stt file content in batches.
+ * <p>
+ * The {@link STTJournal} uses it with empty content and a writer appending
+ * the result to the journal, so concurrent appends share one sync as well.
+ * </p>
+ * <p>
+ * The first caller to arrive while no commit is running commits its batch:
+ * the content is read once, all mutations queued so far are applied in order
+ * and the result is written once. Callers arriving meanwhile queue up for the
+ * next batch. Every caller returns only after its own mutation has been
+ * written, so mutations arriving close together share one write and one sync.
+ * </p>
+ * <p>
+ * Reading and writing a batch holds the {@link STTFileLock}, so other
+ * processes don't change the file in between.
+ * </p>
+ */
+class GroupCommitter {
+	private final Object lock = new Object();
+	private final Provider<Reader> readerProvider;
+	private final Provider<Writer> writerProvider;
+	private final STTFileLock fileLock;
+	private Batch openBatch = new Batch();
+	private boolean committing;
+
+	GroupCommitter(Provider<Reader> readerProvider, Provider<Writer> writerProvider) {
+		this(readerProvider, writerProvider, STTFileLock.inProcess());
+	}
+
+	GroupCommitter(Provider<Reader> readerProvider, Provider<Writer> writerProvider, STTFileLock fileLock) {
+		this.readerProvider = checkNotNull(readerProvider);
+		this.writerProvider = checkNotNull(writerProvider);
+		this.fileLock = checkNotNull(fileLock);
+	}
+
+	void commit(Mutation mutation) throws IOException {
+		Pending pending = new Pending(checkNotNull(mutation));
+		Batch batch;
+		synchronized (lock) {
+			batch = openBatch;
+			batch.pending.add(pending);
+			awaitTurn(batch);
+			if (!batch.done) {
+				// nobody else is committing and this batch is still open: lead it
+				committing = true;
+				openBatch = new Batch();
+			}
+		}
+		if (!batch.done) {
+			try {
+				write(batch);
+			} finally {
+				synchronized (lock) {
+					batch.done = true;
+					committing = false;
+					lock.notifyAll();
+				}
+			}
+		}
+		pending.rethrowFailure();
+	}
+
+	private void awaitTurn(Batch batch) {
+		boolean interrupted = false;
+		while (committing && !batch.done) {
+			try {
+				lock.wait();
+			} catch (InterruptedException e) {
+				// the mutation is queued already, so keep waiting for it
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void write(Batch batch) {
+		try {
+			fileLock.lock();
+			try {
+				write(batch.pending);
+			} finally {
+				fileLock.unlock();
+			}
+		} catch (IOException | RuntimeException e) {
+			for (Pending pending : batch.pending) {
+				if (pending.failure == null) {
+					pending.failure = e;
+				}
+			}
+		}
+	}
+
+	private void write(List<Pending> batch) throws IOException {
+		String content;
+		try (Reader in = readerProvider.get()) {
+			content = IOUtils.toString(in);
+		}
+		List<Pending> applied = new ArrayList<>();
+		for (Pending pending : batch) {
+			try {
+				content = pending.mutation.applyTo(content);
+				applied.add(pending);
+			} catch (IOException | RuntimeException e) {
+				// only this mutation fails, the others still get written
+				pending.failure = e;
+			}
+		}
+		if (applied.isEmpty()) {
+			return;
+		}
+		Writer out = writerProvider.get();
+		out.write(content);
+		out.close();
+	}
+
+	interface Mutation {
+		/**
+		 * @return the new content
+		 */
+		String applyTo(String content) throws IOException;
+	}
+
+	private static class Batch {
+		final List<Pending> pending = new ArrayList<>();
+		boolean done;
+	}
+
+	private static class Pending {
+		final Mutation mutation;
+		Exception failure;
+
+		Pending(Mutation mutation) {
+			this.mutation = mutation;
+		}
+
+		void rethrowFailure() throws IOException {
+			if (failure instanceof IOException) {
+				throw new IOException(failure.getMessage(), failure);
+			}
+			if (failure != null) {
+				throw (RuntimeException) failure;
+			}
+		}
+	}
+}
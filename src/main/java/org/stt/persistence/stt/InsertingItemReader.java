@@ -0,0 +1,104 @@
+package org.stt.persistence.stt;
+
+import com.google.common.base.Optional;
+import org.stt.model.TimeTrackingItem;
+import org.stt.persistence.ItemReader;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads the items of the given reader as if the given item had been inserted:
+ * items overlapping the new item are trimmed, split or skipped. Items are
+ * produced lazily, so chaining several of these only costs one pass over the
+ * underlying reader.
+ */
+class InsertingItemReader implements ItemReader {
+    private final ItemReader reader;
+    private final TimeTrackingItem itemToInsert;
+    private final Deque<TimeTrackingItem> pending = new ArrayDeque<>();
+    private boolean inserted;
+
+    public InsertingItemReader(ItemReader reader, TimeTrackingItem itemToInsert) {
+        this.reader = checkNotNull(reader);
+        this.itemToInsert = checkNotNull(itemToInsert);
+    }
+
+    @Override
+    public Optional<TimeTrackingItem> read() {
+        if (!pending.isEmpty()) {
+            return Optional.of(pending.poll());
+        }
+        if (inserted) {
+            return reader.read();
+        }
+        Optional<TimeTrackingItem> lastReadItem = reader.read();
+        if (lastReadItem.isPresent()
+                && endOfReadItemIsBeforeOrEqualToStartOfItemToInsert(lastReadItem.get())) {
+            return lastReadItem;
+        }
+        inserted = true;
+        adjustEndOfLastItemRead(lastReadItem);
+        pending.add(itemToInsert);
+        lastReadItem = skipAllItemsCompletlyCoveredByItemToInsert(lastReadItem);
+        adjustStartOfLastItemRead(lastReadItem);
+        return Optional.of(pending.poll());
+    }
+
+    private void adjustEndOfLastItemRead(Optional<TimeTrackingItem> lastReadItem) {
+        if (lastReadItem.isPresent()
+                && startOfReadItemIsBeforeStartOfItemToInsert(lastReadItem.get())) {
+            pending.add(lastReadItem.get().withEnd(itemToInsert.getStart()));
+        }
+    }
+
+    private Optional<TimeTrackingItem> skipAllItemsCompletlyCoveredByItemToInsert(
+            Optional<TimeTrackingItem> lastReadItem) {
+        while (lastReadItem.isPresent()
+                && !endOfReadItemIsAfterEndOfItemToInsert(lastReadItem.get())) {
+            lastReadItem = reader.read();
+        }
+        return lastReadItem;
+    }
+
+    private void adjustStartOfLastItemRead(Optional<TimeTrackingItem> lastReadItem) {
+        if (!lastReadItem.isPresent()) {
+            return;
+        }
+        TimeTrackingItem item = lastReadItem.get();
+        if (startOfReadItemIsBeforeEndOfItemToInsert(item)) {
+            pending.add(item.withStart(itemToInsert.getEnd().get()));
+        } else {
+            pending.add(item);
+        }
+    }
+
+    private boolean startOfReadItemIsBeforeEndOfItemToInsert(TimeTrackingItem item) {
+        return !itemToInsert.getEnd().isPresent() || item.getStart().isBefore(itemToInsert.getEnd().get());
+    }
+
+    private boolean startOfReadItemIsBeforeStartOfItemToInsert(
+            TimeTrackingItem lastReadItem) {
+        return lastReadItem.getStart().isBefore(itemToInsert.getStart());
+    }
+
+    private boolean endOfReadItemIsAfterEndOfItemToInsert(
+            TimeTrackingItem lastReadItem) {
+        return itemToInsert.getEnd().isPresent() && (!lastReadItem.getEnd().isPresent() || lastReadItem.getEnd().get().isAfter(itemToInsert.getEnd().get()));
+    }
+
+    private boolean endOfReadItemIsBeforeOrEqualToStartOfItemToInsert(
+            TimeTrackingItem lastReadItem) {
+        return lastReadItem.getEnd().isPresent()
+                && !lastReadItem.getEnd().get()
+                .isAfter(itemToInsert.getStart());
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,20 @@
+package org.stt.persistence.stt;
+
+import com.google.inject.Inject;
+import org.stt.Configuration;
+
+import java.io.IOException;
+
+/**
+ * Folds entries left over from journal mode into the .stt file once on
+ * startup, if the journal is disabled. Rewriting the .stt file would drop
+ * them otherwise.
+ */
+class LeftoverJournalCompactor {
+	@Inject
+	LeftoverJournalCompactor(Configuration configuration, STTJournal journal) throws IOException {
+		if (!configuration.getSttJournalEnabled()) {
+			journal.compact();
+		}
+	}
+}
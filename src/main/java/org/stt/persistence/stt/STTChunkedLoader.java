@@ -0,0 +1,167 @@
+package org.stt.persistence.stt;
+
+import org.stt.model.TimeTrackingItem;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Loads a whole .stt file by parsing newline aligned chunks of it in parallel.
+ * <p>
+ * The result is the same as reading the file with {@link STTItemReader}.
+ * Chunks are read with positional reads instead of being mapped. The file is
+ * never changed in place: it is replaced by renaming a new one over it, see
+ * {@link AtomicFileWriter}, and appends go to the {@link STTJournal}. Renaming
+ * over a mapped file fails on Windows though, and a mapping can't be released
+ * before it is garbage collected.
+ * </p>
+ */
+class STTChunkedLoader {
+	static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+	private static final int BOUNDARY_PROBE_SIZE = 4096;
+
+	private final int chunkSize;
+	private final ForkJoinPool pool;
+
+	STTChunkedLoader() {
+		this(DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool());
+	}
+
+	STTChunkedLoader(int chunkSize, ForkJoinPool pool) {
+		checkArgument(chunkSize > 0);
+		this.chunkSize = chunkSize;
+		this.pool = pool;
+	}
+
+	List<TimeTrackingItem> load(File sttFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(sttFile.toPath(), StandardOpenOption.READ)) {
+			long[] boundaries = chunkBoundaries(channel);
+			try {
+				return pool.invoke(new ParseChunks(channel, boundaries, 0, boundaries.length - 1));
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	/**
+	 * @return offsets of the chunks; every chunk but the first starts right
+	 *         after a line feed, the last element is the end of the file
+	 */
+	private long[] chunkBoundaries(FileChannel channel) throws IOException {
+		long size = channel.size();
+		List<Long> boundaries = new ArrayList<>();
+		boundaries.add(0L);
+		long position = chunkSize;
+		ByteBuffer probe = ByteBuffer.allocate(BOUNDARY_PROBE_SIZE);
+		while (position < size) {
+			long lineEnd = findLineFeed(channel, position, probe);
+			if (lineEnd < 0) {
+				break;
+			}
+			boundaries.add(lineEnd + 1);
+			position = lineEnd + 1 + chunkSize;
+		}
+		if (boundaries.get(boundaries.size() - 1) < size) {
+			boundaries.add(size);
+		}
+		long[] result = new long[boundaries.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = boundaries.get(i);
+		}
+		return result;
+	}
+
+	private static long findLineFeed(FileChannel channel, long from, ByteBuffer probe) throws IOException {
+		long position = from;
+		while (true) {
+			probe.clear();
+			int read = channel.read(probe, position);
+			if (read < 0) {
+				return -1;
+			}
+			for (int i = 0; i < read; i++) {
+				if (probe.get(i) == '\n') {
+					return position + i;
+				}
+			}
+			position += read;
+		}
+	}
+
+	private static List<TimeTrackingItem> parseChunk(FileChannel channel, long from, long to) throws IOException {
+		byte[] bytes = new byte[(int) (to - from)];
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, from + buffer.position()) < 0) {
+				// the file was truncated while loading
+				break;
+			}
+		}
+
+		STTItemConverter converter = new STTItemConverter();
+		List<TimeTrackingItem> items = new ArrayList<>();
+		int lineStart = 0;
+		for (int i = 0; i <= buffer.position(); i++) {
+			// like BufferedReader, both \r and \n end a line; blank lines are skipped anyway
+			if (i == buffer.position() || bytes[i] == '\n' || bytes[i] == '\r') {
+				if (i > lineStart) {
+					String line = new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8);
+					if (!line.trim().isEmpty()) {
+						items.add(converter.lineToTimeTrackingItem(line));
+					}
+				}
+				lineStart = i + 1;
+			}
+		}
+		return items;
+	}
+
+	private static class ParseChunks extends RecursiveTask<List<TimeTrackingItem>> {
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+		private final long[] boundaries;
+		private final int fromChunk;
+		private final int toChunk;
+
+		ParseChunks(FileChannel channel, long[] boundaries, int fromChunk, int toChunk) {
+			this.channel = channel;
+			this.boundaries = boundaries;
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+		}
+
+		@Override
+		protected List<TimeTrackingItem> compute() {
+			if (toChunk - fromChunk <= 1) {
+				if (toChunk == fromChunk) {
+					return new ArrayList<>();
+				}
+				try {
+					return parseChunk(channel, boundaries[fromChunk], boundaries[toChunk]);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			int middle = (fromChunk + toChunk) >>> 1;
+			ParseChunks head = new ParseChunks(channel, boundaries, fromChunk, middle);
+			head.fork();
+			List<TimeTrackingItem> tail = new ParseChunks(channel, boundaries, middle, toChunk).compute();
+			List<TimeTrackingItem> result = head.join();
+			result.addAll(tail);
+			return result;
+		}
+	}
+}
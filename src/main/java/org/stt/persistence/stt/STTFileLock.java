@@ -0,0 +1,99 @@
+package org.stt.persistence.stt;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Serializes modifications of the .stt file and its journal between
+ * processes, e.g. the CLI appending while the GUI compacts.
+ * <p>
+ * The lock is held on a file beside the .stt file. A JVM may only hold one
+ * lock on a file, so the threads of a process take turns on an in-process lock
+ * first, shared by all instances for the same file. The lock is reentrant.
+ * </p>
+ */
+@Singleton
+public class STTFileLock {
+	private static final String LOCK_SUFFIX = ".lock";
+	private static final ConcurrentMap<String, ReentrantLock> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+	// null if there is no file to lock, e.g. for content kept in memory
+	private final File lockFile;
+	private final ReentrantLock processLock;
+	// guarded by processLock, open while the lock is held
+	private FileChannel channel;
+
+	@Inject
+	public STTFileLock(@STTFile File sttFile) {
+		this(checkNotNull(sttFile).getAbsolutePath() + LOCK_SUFFIX);
+	}
+
+	private STTFileLock(String lockPath) {
+		if (lockPath == null) {
+			lockFile = null;
+			processLock = new ReentrantLock();
+		} else {
+			lockFile = new File(lockPath);
+			PROCESS_LOCKS.putIfAbsent(lockPath, new ReentrantLock());
+			processLock = PROCESS_LOCKS.get(lockPath);
+		}
+	}
+
+	/**
+	 * @return a lock only serializing the threads using it
+	 */
+	static STTFileLock inProcess() {
+		return new STTFileLock((String) null);
+	}
+
+	/**
+	 * Waits until neither another thread nor another process holds the lock.
+	 */
+	public void lock() throws IOException {
+		processLock.lock();
+		if (lockFile == null || processLock.getHoldCount() > 1) {
+			return;
+		}
+		try {
+			channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			channel.lock();
+		} catch (IOException | RuntimeException e) {
+			closeChannel();
+			processLock.unlock();
+			throw e;
+		}
+	}
+
+	public void unlock() {
+		try {
+			if (processLock.getHoldCount() == 1) {
+				// releases the file lock
+				closeChannel();
+			}
+		} finally {
+			processLock.unlock();
+		}
+	}
+
+	private void closeChannel() {
+		if (channel == null) {
+			return;
+		}
+		try {
+			channel.close();
+		} catch (IOException e) { // NOPMD
+			// closing the channel releases the lock in any case
+		}
+		channel = null;
+	}
+}
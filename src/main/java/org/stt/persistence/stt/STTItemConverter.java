@@ -1,52 +1,45 @@
 package org.stt.persistence.stt;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.chrono.ISOChronology;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.stt.model.TimeTrackingItem;
 
-import java.io.IOException;
-import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
-
+/**
+ * Converts between {@link TimeTrackingItem}s and lines of the .stt file.
+ * <p>
+ * Lines are parsed in a single pass over the line: dates in the canonical
+ * yyyy-MM-dd_HH:mm:ss form are decoded from their fixed offsets, anything else
+ * is handed to the joda formatter so the accepted input stays the same.
+ * </p>
+ */
 class STTItemConverter {
+	private static final String DATE_SHAPE = "0000-00-00_00:00:00";
+	private static final ISOChronology UTC_CHRONOLOGY = ISOChronology.getInstanceUTC();
+
 	private final DateTimeFormatter dateFormat = DateTimeFormat
 			.forPattern("yyyy-MM-dd_HH:mm:ss");
 
 	public TimeTrackingItem lineToTimeTrackingItem(String singleLine) {
-
-		List<String> splitLine = new LinkedList<>(Arrays.asList(singleLine
-				.split(" ")));
-
-		DateTime start = dateFormat.parseDateTime(splitLine.remove(0));
-
-		DateTime end = null;
-		if (splitLine.size() > 0) {
-			try {
-				end = dateFormat.parseDateTime(splitLine.get(0));
-				splitLine.remove(0);
-			} catch (IllegalArgumentException i) { // NOPMD
-				// NOOP, if the string cannot be parsed, it is no date
-				// this is a bit ugly but currently no idea how to do it
-				// "correctly"
-			}
+		int startTokenEnd = endOfToken(singleLine, 0);
+		DateTime start = parseDate(singleLine, 0, startTokenEnd);
+		if (start == null) {
+			// not canonical or not a valid instant: let joda decide or complain
+			start = dateFormat.parseDateTime(singleLine.substring(0, startTokenEnd));
 		}
-		String comment = null;
-		if (splitLine.size() > 0) {
-			StringBuilder commentBuilder = new StringBuilder(
-					singleLine.length());
-			for (String current : splitLine) {
-				current = current.replaceAll("\\\\r", "\r");
-				current = current.replaceAll("\\\\n", "\n");
-				commentBuilder.append(current);
 
-				commentBuilder.append(" ");
+		int commentStart = startTokenEnd + 1;
+		DateTime end = null;
+		if (commentStart < singleLine.length()) {
+			int endTokenEnd = endOfToken(singleLine, commentStart);
+			end = parseOptionalDate(singleLine, commentStart, endTokenEnd);
+			if (end != null) {
+				commentStart = endTokenEnd + 1;
 			}
-			commentBuilder.deleteCharAt(commentBuilder.length() - 1);
-
-			comment = commentBuilder.toString();
 		}
+		String comment = decodeComment(singleLine, commentStart);
 
 		if (end != null) {
 			return new TimeTrackingItem(comment, start, end);
@@ -55,7 +48,7 @@ class STTItemConverter {
 		}
 	}
 
-	public String timeTrackingItemToLine(TimeTrackingItem item) throws IOException {
+	public String timeTrackingItemToLine(TimeTrackingItem item) {
 		StringBuilder builder = new StringBuilder();
 		builder.append(item.getStart().toString(dateFormat));
 		builder.append(' ');
@@ -65,12 +58,148 @@ class STTItemConverter {
 		}
 
 		if (item.getComment().isPresent()) {
-			String oneLineComment = item.getComment().get();
-			oneLineComment = oneLineComment.replaceAll("\r", "\\\\r");
-			oneLineComment = oneLineComment.replaceAll("\n", "\\\\n");
-			builder.append(oneLineComment);
+			String comment = item.getComment().get();
+			for (int i = 0; i < comment.length(); i++) {
+				char c = comment.charAt(i);
+				if (c == '\r') {
+					builder.append("\\r");
+				} else if (c == '\n') {
+					builder.append("\\n");
+				} else {
+					builder.append(c);
+				}
+			}
 		}
 
 		return builder.toString();
 	}
+
+	private static int endOfToken(String line, int from) {
+		int end = line.indexOf(' ', from);
+		return end < 0 ? line.length() : end;
+	}
+
+	/**
+	 * @return the date of the token or null if the token is no date
+	 */
+	private DateTime parseOptionalDate(String line, int from, int to) {
+		DateTime date = parseDate(line, from, to);
+		if (date != null || !mightBeNonCanonicalDate(line, from, to)) {
+			return date;
+		}
+		try {
+			return dateFormat.parseDateTime(line.substring(from, to));
+		} catch (IllegalArgumentException e) { // NOPMD
+			// only reached for odd tokens like "2014-1-1_1:00:00" or invalid
+			// dates; they are part of the comment
+			return null;
+		}
+	}
+
+	/**
+	 * The pattern contains the literals '_' and ':', so tokens without them
+	 * can never be parsed as date.
+	 */
+	private static boolean mightBeNonCanonicalDate(String line, int from, int to) {
+		int underscore = line.indexOf('_', from);
+		return underscore >= 0 && underscore < to && line.indexOf(':', underscore) >= 0
+				&& line.indexOf(':', underscore) < to;
+	}
+
+	/**
+	 * Decodes a date in canonical form from its fixed offsets.
+	 *
+	 * @return the date or null if the token is not in canonical form or does
+	 *         not denote a valid instant in the default time zone
+	 */
+	private static DateTime parseDate(String line, int from, int to) {
+		if (to - from != DATE_SHAPE.length()) {
+			return null;
+		}
+		for (int i = 0; i < DATE_SHAPE.length(); i++) {
+			char c = line.charAt(from + i);
+			char expected = DATE_SHAPE.charAt(i);
+			if (expected == '0' ? c < '0' || c > '9' : c != expected) {
+				return null;
+			}
+		}
+		int year = digits(line, from, 4);
+		int month = digits(line, from + 5, 2);
+		int day = digits(line, from + 8, 2);
+		int hour = digits(line, from + 11, 2);
+		int minute = digits(line, from + 14, 2);
+		int second = digits(line, from + 17, 2);
+		if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+				|| hour > 23 || minute > 59 || second > 59) {
+			return null;
+		}
+
+		long localMillis = UTC_CHRONOLOGY.getDateTimeMillis(year, month, day, hour, minute, second, 0);
+		DateTimeZone zone = DateTimeZone.getDefault();
+		int offset = zone.getOffsetFromLocal(localMillis);
+		long millis = localMillis - offset;
+		if (zone.getOffset(millis) != offset) {
+			// local time falls into a daylight saving gap
+			return null;
+		}
+		return new DateTime(millis, ISOChronology.getInstance(zone));
+	}
+
+	private static int digits(String line, int from, int count) {
+		int result = 0;
+		for (int i = from; i < from + count; i++) {
+			result = result * 10 + line.charAt(i) - '0';
+		}
+		return result;
+	}
+
+	private static int daysInMonth(int year, int month) {
+		switch (month) {
+		case 2:
+			boolean leapYear = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+			return leapYear ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	/**
+	 * Decodes the escaped line endings of the comment in one pass. Trailing
+	 * blanks are dropped.
+	 *
+	 * @return the comment or null if there is none
+	 */
+	private static String decodeComment(String line, int from) {
+		int to = line.length();
+		while (to > from && line.charAt(to - 1) == ' ') {
+			to--;
+		}
+		if (to <= from) {
+			return null;
+		}
+		int firstBackslash = line.indexOf('\\', from);
+		if (firstBackslash < 0 || firstBackslash >= to) {
+			return line.substring(from, to);
+		}
+		StringBuilder comment = new StringBuilder(to - from);
+		comment.append(line, from, firstBackslash);
+		for (int i = firstBackslash; i < to; i++) {
+			char c = line.charAt(i);
+			if (c == '\\' && i + 1 < to && line.charAt(i + 1) == 'r') {
+				comment.append('\r');
+				i++;
+			} else if (c == '\\' && i + 1 < to && line.charAt(i + 1) == 'n') {
+				comment.append('\n');
+				i++;
+			} else {
+				comment.append(c);
+			}
+		}
+		return comment.toString();
+	}
 }
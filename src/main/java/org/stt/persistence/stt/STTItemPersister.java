@@ -19,40 +19,63 @@ import java.io.*;
 public class STTItemPersister implements ItemPersister {
 
 	private final STTItemConverter converter = new STTItemConverter();
-	private Provider<Reader> readerProvider;
-	private Provider<Writer> writerProvider;
+	private final GroupCommitter groupCommitter;
 
-	@Inject
 	public STTItemPersister(@STTFile Provider<Reader> readerProvider, @STTFile Provider<Writer> writerProvider) {
+		this(readerProvider, writerProvider, STTFileLock.inProcess());
+	}
 
-		this.readerProvider = Preconditions.checkNotNull(readerProvider);
-		this.writerProvider = Preconditions.checkNotNull(writerProvider);
+	@Inject
+	public STTItemPersister(@STTFile Provider<Reader> readerProvider, @STTFile Provider<Writer> writerProvider,
+			STTFileLock fileLock) {
+		this.groupCommitter = new GroupCommitter(Preconditions.checkNotNull(readerProvider),
+				Preconditions.checkNotNull(writerProvider), fileLock);
 	}
 
 	@Override
-	public void insert(TimeTrackingItem itemToInsert) throws IOException {
+	public void insert(final TimeTrackingItem itemToInsert) throws IOException {
 		Preconditions.checkNotNull(itemToInsert);
-		StringWriter stringWriter = new StringWriter();
-		Reader providedReader;
-		providedReader = readerProvider.get();
-		try (STTItemReader in = new STTItemReader(providedReader);
-				STTItemWriter out = new STTItemWriter(stringWriter)) {
-			new InsertHelper(in, out, itemToInsert).performInsert();
-		}
-		rewriteFileWith(stringWriter.toString());
+		groupCommitter.commit(new GroupCommitter.Mutation() {
+			@Override
+			public String applyTo(String content) throws IOException {
+				return insert(content, itemToInsert);
+			}
+		});
 	}
 
 	@Override
-	public void replace(TimeTrackingItem item, TimeTrackingItem with)
+	public void replace(final TimeTrackingItem item, final TimeTrackingItem with)
 			throws IOException {
-		delete(item);
-		insert(with);
+		// one mutation, so the file never contains only half of the replacement
+		groupCommitter.commit(new GroupCommitter.Mutation() {
+			@Override
+			public String applyTo(String content) throws IOException {
+				return insert(delete(content, item), with);
+			}
+		});
 	}
 
 	@Override
-	public void delete(TimeTrackingItem item) throws IOException {
+	public void delete(final TimeTrackingItem item) throws IOException {
+		groupCommitter.commit(new GroupCommitter.Mutation() {
+			@Override
+			public String applyTo(String content) throws IOException {
+				return delete(content, item);
+			}
+		});
+	}
 
-		try (BufferedReader reader = new BufferedReader(readerProvider.get())) {
+	private String insert(String content, TimeTrackingItem itemToInsert) throws IOException {
+		StringWriter stringWriter = new StringWriter();
+		try (STTItemReader in = new STTItemReader(new StringReader(content));
+				STTItemWriter out = new STTItemWriter(stringWriter)) {
+			new InsertHelper(in, out, itemToInsert).performInsert();
+		}
+		return stringWriter.toString();
+	}
+
+	private String delete(String content, TimeTrackingItem item) throws IOException {
+		try (BufferedReader reader = new BufferedReader(new StringReader(content))) {
 			StringWriter stringWriter = new StringWriter();
 			PrintWriter printWriter = new PrintWriter(stringWriter);
 			String lineOfItemToDelete = converter.timeTrackingItemToLine(item);
@@ -65,16 +88,10 @@ public class STTItemPersister implements ItemPersister {
 			}
 
 			printWriter.flush();
-			rewriteFileWith(stringWriter.toString());
+			return stringWriter.toString();
 		}
 	}
 
-	private void rewriteFileWith(String content) throws IOException {
-		Writer truncatingWriter = writerProvider.get();
-		truncatingWriter.write(content);
-		truncatingWriter.close();
-	}
-
 	@Override
 	public void close() {
 	}
@@ -0,0 +1,52 @@
+package org.stt.persistence.stt;
+
+import com.google.inject.Inject;
+import org.joda.time.DateTime;
+import org.stt.persistence.ItemReader;
+import org.stt.persistence.ReversibleItemReaderProvider;
+import org.stt.persistence.SeekableItemReaderProvider;
+
+import java.io.IOException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Provides readers directly on the .stt file and its journal. Readers starting
+ * at a given time seek using the {@link STTOffsetIndex}, reverse readers read
+ * the .stt file backwards.
+ */
+public class STTItemReaderProvider implements SeekableItemReaderProvider, ReversibleItemReaderProvider {
+    private final STTJournal journal;
+
+    @Inject
+    public STTItemReaderProvider(STTJournal journal) {
+        this.journal = checkNotNull(journal);
+    }
+
+    @Override
+    public ItemReader provideReader() {
+        try {
+            return journal.openReader();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public ItemReader provideReaderFrom(DateTime start) {
+        try {
+            return journal.openReaderFrom(checkNotNull(start));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public ItemReader provideReverseReader() {
+        try {
+            return journal.openReverseReader();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -27,5 +27,9 @@ public class STTItemWriter implements ItemWriter {
 	@Override
 	public void close() throws IOException {
 		out.close();
+		// PrintWriter swallows exceptions, e.g. when the file can't be replaced
+		if (out.checkError()) {
+			throw new IOException("Unable to write items");
+		}
 	}
 }
@@ -0,0 +1,387 @@
+package org.stt.persistence.stt;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.LineIterator;
+import org.joda.time.DateTime;
+import org.stt.model.TimeTrackingItem;
+import org.stt.persistence.IOUtil;
+import org.stt.persistence.ItemReader;
+import org.stt.persistence.ListItemReader;
+import org.stt.persistence.OwnFileWrites;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Append-only change log kept beside the .stt file.
+ * <p>
+ * Instead of rewriting the whole .stt file for every mutation, inserts and
+ * deletes are appended to the journal as one line each. Readers get the .stt
+ * file with all journal entries replayed on top of it, {@link #compact()}
+ * folds the entries back into the sorted .stt file.
+ * </p>
+ * <p>
+ * Appending and compacting hold the {@link STTFileLock}, so other processes
+ * sharing the files never lose entries. Appends are synced to disk before
+ * they return, concurrent ones share one sync.
+ * </p>
+ */
+@Singleton
+public class STTJournal {
+	private static final Logger LOG = Logger.getLogger(STTJournal.class.getName());
+	private static final String JOURNAL_SUFFIX = ".journal";
+	private static final char INSERT = '+';
+	private static final char DELETE = '-';
+	// below that, splitting into chunks costs more than it saves
+	private static final long PARALLEL_LOAD_THRESHOLD = 2L * STTChunkedLoader.DEFAULT_CHUNK_SIZE;
+
+	private final STTItemConverter converter = new STTItemConverter();
+	private final STTChunkedLoader chunkedLoader = new STTChunkedLoader();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	// taken before lock
+	private final STTFileLock fileLock;
+	private final GroupCommitter appendCommitter;
+	private final File sttFile;
+	private final File journalFile;
+	private final Provider<Reader> sttReaderProvider;
+	private final STTOffsetIndex offsetIndex;
+	private final OwnFileWrites ownWrites;
+	private int entryCount = -1;
+
+	@Inject
+	public STTJournal(@STTFile File sttFile, @STTFile Provider<Reader> sttReaderProvider,
+			STTOffsetIndex offsetIndex, STTFileLock fileLock, OwnFileWrites ownWrites) {
+		this.sttFile = checkNotNull(sttFile);
+		this.journalFile = journalFileOf(sttFile);
+		this.fileLock = checkNotNull(fileLock);
+		this.appendCommitter = new GroupCommitter(new Provider<Reader>() {
+			@Override
+			public Reader get() {
+				return new StringReader("");
+			}
+		}, new Provider<Writer>() {
+			@Override
+			public Writer get() {
+				return new JournalAppender();
+			}
+		}, fileLock);
+		this.sttReaderProvider = checkNotNull(sttReaderProvider);
+		this.offsetIndex = checkNotNull(offsetIndex);
+		this.ownWrites = checkNotNull(ownWrites);
+	}
+
+	/**
+	 * @return the journal kept beside the given .stt file
+	 */
+	public static File journalFileOf(File sttFile) {
+		return new File(sttFile.getPath() + JOURNAL_SUFFIX);
+	}
+
+	public void appendInsert(TimeTrackingItem item) throws IOException {
+		append(entryOf(INSERT, item));
+	}
+
+	public void appendDelete(TimeTrackingItem item) throws IOException {
+		append(entryOf(DELETE, item));
+	}
+
+	/**
+	 * Appends the deletion of item and the insertion of with in one write, so
+	 * readers never see only half of the replacement.
+	 */
+	public void appendReplace(TimeTrackingItem item, TimeTrackingItem with) throws IOException {
+		append(entryOf(DELETE, item), entryOf(INSERT, with));
+	}
+
+	/**
+	 * @return the number of entries that have not been compacted yet
+	 */
+	public int size() throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (entryCount < 0) {
+				entryCount = readEntries().size();
+			}
+			return entryCount;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Provides a new reader over the .stt file with all journal entries
+	 * applied. Large files are loaded in parallel chunks up front, smaller
+	 * ones are streamed.
+	 */
+	public ItemReader openReader() throws IOException {
+		List<String> entries;
+		ItemReader sttItemReader;
+		lock.readLock().lock();
+		try {
+			entries = readEntries();
+			if (sttFile.length() >= PARALLEL_LOAD_THRESHOLD) {
+				sttItemReader = new ListItemReader(chunkedLoader.load(sttFile));
+			} else {
+				sttItemReader = new STTItemReader(sttReaderProvider.get());
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return replay(sttItemReader, entries);
+	}
+
+	/**
+	 * Provides a new reader with all journal entries applied, which skips the
+	 * part of the .stt file that is irrelevant for items starting at or after
+	 * the given time.
+	 *
+	 * @see org.stt.persistence.SeekableItemReaderProvider#provideReaderFrom(DateTime)
+	 */
+	public ItemReader openReaderFrom(DateTime start) throws IOException {
+		List<String> entries;
+		Reader sttReader;
+		lock.readLock().lock();
+		try {
+			entries = readEntries();
+			long offset = offsetIndex.seekOffsetFor(earliestStart(entries, start));
+			FileInputStream in = new FileInputStream(sttFile);
+			try {
+				in.getChannel().position(offset);
+			} catch (IOException e) {
+				in.close();
+				throw e;
+			}
+			sttReader = new InputStreamReader(in, "UTF-8");
+		} finally {
+			lock.readLock().unlock();
+		}
+		return replay(new STTItemReader(sttReader), entries);
+	}
+
+	/**
+	 * Provides a new reader returning the items from the latest to the
+	 * earliest, with all journal entries applied. Only the part of the .stt
+	 * file the entries can change is read up front, earlier lines are read
+	 * backwards as they are needed.
+	 */
+	public ItemReader openReverseReader() throws IOException {
+		List<String> entries;
+		STTReverseItemReader sttItemReader;
+		lock.readLock().lock();
+		try {
+			entries = readEntries();
+			sttItemReader = new STTReverseItemReader(sttFile);
+		} finally {
+			lock.readLock().unlock();
+		}
+		if (entries.isEmpty()) {
+			return sttItemReader;
+		}
+
+		// like openReaderFrom, replays the entries on the items starting
+		// with the last one before the earliest entry
+		DateTime seekTime = earliestStart(entries, new DateTime(Long.MAX_VALUE));
+		List<TimeTrackingItem> tail = new ArrayList<>();
+		Optional<TimeTrackingItem> item;
+		while ((item = sttItemReader.read()).isPresent()) {
+			tail.add(item.get());
+			if (item.get().getStart().isBefore(seekTime)) {
+				break;
+			}
+		}
+		Collections.reverse(tail);
+		List<TimeTrackingItem> replayedTail = new ArrayList<>(
+				IOUtil.readAll(replay(new ListItemReader(tail), entries)));
+		return new ReverseReader(Lists.reverse(replayedTail), sttItemReader);
+	}
+
+	/**
+	 * Folds all journal entries into the .stt file. Appending waits until
+	 * compacting is done, in this and in other processes.
+	 */
+	public void compact() throws IOException {
+		fileLock.lock();
+		try {
+			List<String> entries;
+			Reader sttReader;
+			lock.readLock().lock();
+			try {
+				entries = readEntries();
+				if (entries.isEmpty()) {
+					return;
+				}
+				sttReader = sttReaderProvider.get();
+			} finally {
+				lock.readLock().unlock();
+			}
+
+			LOG.fine("Compacting " + entries.size() + " journal entries into " + sttFile);
+			AtomicFileWriter compacted = new AtomicFileWriter(sttFile, ownWrites);
+			try (ItemReader in = replay(new STTItemReader(sttReader), entries)) {
+				STTItemWriter out = new STTItemWriter(compacted);
+				Optional<TimeTrackingItem> item;
+				while ((item = in.read()).isPresent()) {
+					out.write(item.get());
+				}
+			} catch (IOException | RuntimeException e) {
+				compacted.discard();
+				throw e;
+			}
+
+			lock.writeLock().lock();
+			try {
+				// replaces the .stt file
+				compacted.close();
+				writeEntries(Collections.<String> emptyList());
+				entryCount = 0;
+			} finally {
+				lock.writeLock().unlock();
+			}
+		} finally {
+			fileLock.unlock();
+		}
+	}
+
+	/**
+	 * Journal entries may split, trim or remove items before them, so items
+	 * have to be read from the earliest entry on
+	 */
+	private DateTime earliestStart(List<String> entries, DateTime start) {
+		DateTime earliest = start;
+		for (String entry : entries) {
+			DateTime entryStart = converter.lineToTimeTrackingItem(entry.substring(1)).getStart();
+			if (entryStart.isBefore(earliest)) {
+				earliest = entryStart;
+			}
+		}
+		return earliest;
+	}
+
+	private ItemReader replay(ItemReader reader, List<String> entries) {
+		ItemReader result = reader;
+		for (String entry : entries) {
+			TimeTrackingItem item = converter.lineToTimeTrackingItem(entry.substring(1));
+			if (entry.charAt(0) == INSERT) {
+				result = new InsertingItemReader(result, item);
+			} else {
+				result = new DeletingItemReader(result, item);
+			}
+		}
+		return result;
+	}
+
+	private String entryOf(char operation, TimeTrackingItem item) {
+		return operation + converter.timeTrackingItemToLine(checkNotNull(item));
+	}
+
+	private void append(String... entries) throws IOException {
+		final StringBuilder lines = new StringBuilder();
+		for (String entry : entries) {
+			lines.append(entry).append(System.lineSeparator());
+		}
+		appendCommitter.commit(new GroupCommitter.Mutation() {
+			@Override
+			public String applyTo(String content) {
+				return content + lines;
+			}
+		});
+	}
+
+	private List<String> readEntries() throws IOException {
+		List<String> entries = new ArrayList<>();
+		if (!journalFile.exists()) {
+			return entries;
+		}
+		try (Reader in = new InputStreamReader(new FileInputStream(journalFile), "UTF-8")) {
+			LineIterator lineIterator = IOUtils.lineIterator(in);
+			while (lineIterator.hasNext()) {
+				String entry = lineIterator.nextLine();
+				// ignore empty lines or ones just containing whitespace
+				if (!entry.trim().isEmpty()) {
+					entries.add(entry);
+				}
+			}
+		}
+		return entries;
+	}
+
+	private void writeEntries(List<String> entries) throws IOException {
+		AtomicFileWriter journalWriter = new AtomicFileWriter(journalFile, ownWrites);
+		PrintWriter out = new PrintWriter(journalWriter);
+		for (String entry : entries) {
+			out.println(entry);
+		}
+		if (out.checkError()) {
+			journalWriter.discard();
+			throw new IOException("Unable to write journal " + journalFile);
+		}
+		journalWriter.close();
+	}
+
+	/**
+	 * Appends the entries of a batch to the journal when closed
+	 */
+	private class JournalAppender extends StringWriter {
+		@Override
+		public void close() throws IOException {
+			String appended = toString();
+			// Writer has a lock of its own
+			STTJournal.this.lock.writeLock().lock();
+			try {
+				try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+					out.write(appended.getBytes(StandardCharsets.UTF_8));
+					out.getChannel().force(true);
+				}
+				ownWrites.record(journalFile);
+				if (entryCount >= 0) {
+					// entries never contain line breaks
+					entryCount += appended.split(System.lineSeparator()).length;
+				}
+			} catch (IOException e) {
+				throw new IOException("Unable to append to journal " + journalFile, e);
+			} finally {
+				STTJournal.this.lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Returns the replayed tail first, then the untouched earlier items
+	 */
+	private static class ReverseReader implements ItemReader {
+		private final Iterator<TimeTrackingItem> tail;
+		private final ItemReader earlierItems;
+
+		ReverseReader(List<TimeTrackingItem> tail, ItemReader earlierItems) {
+			this.tail = tail.iterator();
+			this.earlierItems = earlierItems;
+		}
+
+		@Override
+		public Optional<TimeTrackingItem> read() {
+			if (tail.hasNext()) {
+				return Optional.of(tail.next());
+			}
+			return earlierItems.read();
+		}
+
+		@Override
+		public void close() throws IOException {
+			earlierItems.close();
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package org.stt.persistence.stt;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.stt.Configuration;
+import org.stt.model.TimeTrackingItem;
+import org.stt.persistence.ItemPersister;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persists mutations by appending them to the {@link STTJournal}, so a single
+ * command costs one small append instead of a rewrite of the whole .stt file.
+ * Once the journal holds more entries than configured, it gets compacted in
+ * the background.
+ */
+@Singleton
+public class STTJournalItemPersister implements ItemPersister {
+	private static final Logger LOG = Logger.getLogger(STTJournalItemPersister.class.getName());
+
+	private final STTJournal journal;
+	private final int compactionThreshold;
+	private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+	// daemon thread: an interrupted compaction leaves the journal untouched
+	private final ExecutorService compactionExecutor = Executors.newSingleThreadExecutor(
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("stt-journal-compaction").build());
+
+	@Inject
+	public STTJournalItemPersister(STTJournal journal, Configuration configuration) {
+		this.journal = Preconditions.checkNotNull(journal);
+		this.compactionThreshold = configuration.getSttJournalCompactionThreshold();
+	}
+
+	@Override
+	public void insert(TimeTrackingItem item) throws IOException {
+		Preconditions.checkNotNull(item);
+		journal.appendInsert(item);
+		compactIfNeeded();
+	}
+
+	@Override
+	public void replace(TimeTrackingItem item, TimeTrackingItem with) throws IOException {
+		Preconditions.checkNotNull(item);
+		Preconditions.checkNotNull(with);
+		journal.appendReplace(item, with);
+		compactIfNeeded();
+	}
+
+	@Override
+	public void delete(TimeTrackingItem item) throws IOException {
+		Preconditions.checkNotNull(item);
+		journal.appendDelete(item);
+		compactIfNeeded();
+	}
+
+	private void compactIfNeeded() throws IOException {
+		if (journal.size() < compactionThreshold || !compactionScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		compactionExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					journal.compact();
+				} catch (IOException e) {
+					LOG.log(Level.SEVERE, "Unable to compact journal", e);
+				} finally {
+					compactionScheduled.set(false);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void close() {
+	}
+}
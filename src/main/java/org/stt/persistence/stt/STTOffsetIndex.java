@@ -0,0 +1,305 @@
+package org.stt.persistence.stt;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Sparse index of the .stt file, kept in a sidecar file next to it.
+ * <p>
+ * For every day with items it holds the byte offset of the first line of that
+ * day and of the line before it. As the .stt file is sorted by start time,
+ * readers can seek to the day a query starts at instead of reading from the
+ * first line.
+ * </p>
+ * <p>
+ * The index is brought up to date lazily. If the .stt file only changed after
+ * the first line of the last indexed day, e.g. because an item was appended,
+ * only that tail gets scanned again.
+ * </p>
+ * <p>
+ * Rewrites keeping the length and modification time of the file, e.g. within
+ * the granularity of its timestamps, pass that check. So the lines at the
+ * offsets a lookup returns are checked as well, the index is rebuilt if they
+ * don't start with the expected days.
+ * </p>
+ */
+@Singleton
+public class STTOffsetIndex {
+	private static final Logger LOG = Logger.getLogger(STTOffsetIndex.class.getName());
+	private static final String INDEX_SUFFIX = ".index";
+	private static final String VERSION = "1";
+	private static final String DAY_SHAPE = "0000-00-00";
+	private static final int CHECKSUM_WINDOW = 4096;
+
+	private final DateTimeFormatter dayFormat = DateTimeFormat.forPattern("yyyy-MM-dd");
+	private final File sttFile;
+	private final File indexFile;
+	private final List<Entry> entries = new ArrayList<>();
+	private boolean loaded;
+	private long indexedLength = -1;
+	private long indexedLastModified;
+	private long checksum;
+
+	@Inject
+	public STTOffsetIndex(@STTFile File sttFile) {
+		this.sttFile = checkNotNull(sttFile);
+		this.indexFile = new File(sttFile.getPath() + INDEX_SUFFIX);
+	}
+
+	/**
+	 * @return the offset of a line in the .stt file, so that reading from
+	 *         there returns the last item starting before the given time and
+	 *         all following items
+	 */
+	public synchronized long seekOffsetFor(DateTime time) throws IOException {
+		update();
+		String day = dayFormat.print(time);
+		Entry entry = lookup(day);
+		if (entry != null && !matchesFile(entry)) {
+			LOG.fine("Index of " + sttFile + " is outdated");
+			rebuild();
+			entry = lookup(day);
+		}
+		return entry == null ? 0 : entry.seekOffset;
+	}
+
+	/**
+	 * @return the entry of the last day not after the given one, null if
+	 *         there is none
+	 */
+	private Entry lookup(String day) {
+		int low = 0;
+		int high = entries.size() - 1;
+		Entry result = null;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			Entry entry = entries.get(mid);
+			if (entry.day.compareTo(day) <= 0) {
+				result = entry;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return result;
+	}
+
+	private boolean matchesFile(Entry entry) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(sttFile, "r")) {
+			if (!entry.day.equals(dayOfLineAt(file, entry.offset))) {
+				return false;
+			}
+			// seeking to the start of the file is never wrong
+			if (entry.seekOffset == 0) {
+				return true;
+			}
+			String previousDay = dayOfLineAt(file, entry.seekOffset);
+			return previousDay != null && previousDay.compareTo(entry.day) < 0;
+		}
+	}
+
+	/**
+	 * @return the day a line starts with, null if there is no line starting
+	 *         at the offset or it doesn't start with a canonical date
+	 */
+	private static String dayOfLineAt(RandomAccessFile file, long offset) throws IOException {
+		byte[] prefix = new byte[DAY_SHAPE.length() + 1];
+		int length = 0;
+		file.seek(Math.max(0, offset - 1));
+		int read;
+		while (length < prefix.length && (read = file.read(prefix, length, prefix.length - length)) > 0) {
+			length += read;
+		}
+		int start = 0;
+		if (offset > 0) {
+			if (length == 0 || prefix[0] != '\n') {
+				return null;
+			}
+			start = 1;
+		}
+		if (length - start < DAY_SHAPE.length()) {
+			return null;
+		}
+		String day = new String(prefix, start, DAY_SHAPE.length(), "US-ASCII");
+		return isDay(day) ? day : null;
+	}
+
+	private void update() throws IOException {
+		if (!loaded) {
+			load();
+			loaded = true;
+		}
+		long length = sttFile.length();
+		long lastModified = sttFile.lastModified();
+		if (length == indexedLength && lastModified == indexedLastModified) {
+			return;
+		}
+
+		Entry lastEntry = entries.isEmpty() ? null : entries.get(entries.size() - 1);
+		if (lastEntry != null && lastEntry.offset < length && checksumBefore(lastEntry.offset) == checksum) {
+			entries.remove(entries.size() - 1);
+			String previousDay = entries.isEmpty() ? null : entries.get(entries.size() - 1).day;
+			scan(lastEntry.offset, lastEntry.seekOffset, previousDay, lastModified);
+			save();
+		} else {
+			rebuild();
+		}
+	}
+
+	private void rebuild() throws IOException {
+		LOG.fine("Rebuilding index of " + sttFile);
+		long lastModified = sttFile.lastModified();
+		entries.clear();
+		scan(0, 0, null, lastModified);
+		save();
+	}
+
+	private void scan(long from, long lastIndexableLineOffset, String previousDay,
+			long lastModified) throws IOException {
+		long offset = from;
+		try (InputStream in = new BufferedInputStream(new FileInputStream(sttFile))) {
+			skipFully(in, from);
+			StringBuilder dayPrefix = new StringBuilder(DAY_SHAPE.length());
+			long lineStart = offset;
+			int b;
+			do {
+				b = in.read();
+				if (b == '\n' || b == -1) {
+					if (isDay(dayPrefix)) {
+						String day = dayPrefix.toString();
+						if (!day.equals(previousDay)) {
+							entries.add(new Entry(day, lineStart, lastIndexableLineOffset));
+							previousDay = day;
+						}
+						lastIndexableLineOffset = lineStart;
+					}
+					dayPrefix.setLength(0);
+					lineStart = offset + 1;
+				} else if (dayPrefix.length() < DAY_SHAPE.length()) {
+					dayPrefix.append((char) b);
+				}
+				offset++;
+			} while (b != -1);
+		}
+		indexedLength = offset - 1;
+		indexedLastModified = lastModified;
+		checksum = entries.isEmpty() ? 0 : checksumBefore(entries.get(entries.size() - 1).offset);
+	}
+
+	/**
+	 * Lines not starting with a canonical date (blank lines, hand written
+	 * dates) get no entries. They are still found, as seeking starts at the
+	 * last line with a canonical date before them.
+	 */
+	private static boolean isDay(CharSequence prefix) {
+		if (prefix.length() != DAY_SHAPE.length()) {
+			return false;
+		}
+		for (int i = 0; i < DAY_SHAPE.length(); i++) {
+			char c = prefix.charAt(i);
+			char expected = DAY_SHAPE.charAt(i);
+			if (expected == '0' ? c < '0' || c > '9' : c != expected) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private long checksumBefore(long offset) throws IOException {
+		int length = (int) Math.min(offset, CHECKSUM_WINDOW);
+		byte[] window = new byte[length];
+		try (RandomAccessFile file = new RandomAccessFile(sttFile, "r")) {
+			file.seek(offset - length);
+			file.readFully(window);
+		} catch (EOFException e) {
+			return -1;
+		}
+		CRC32 crc = new CRC32();
+		crc.update(window);
+		return crc.getValue();
+	}
+
+	private static void skipFully(InputStream in, long count) throws IOException {
+		long remaining = count;
+		while (remaining > 0) {
+			long skipped = in.skip(remaining);
+			if (skipped <= 0) {
+				throw new EOFException();
+			}
+			remaining -= skipped;
+		}
+	}
+
+	private void load() {
+		if (!indexFile.exists()) {
+			return;
+		}
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"))) {
+			String[] header = in.readLine().split(" ");
+			if (!VERSION.equals(header[0])) {
+				return;
+			}
+			List<Entry> loadedEntries = new ArrayList<>();
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] fields = line.split(" ");
+				loadedEntries.add(new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+			}
+			entries.addAll(loadedEntries);
+			indexedLength = Long.parseLong(header[1]);
+			indexedLastModified = Long.parseLong(header[2]);
+			checksum = Long.parseLong(header[3]);
+		} catch (IOException | RuntimeException e) {
+			// the index is rebuilt from the .stt file
+			LOG.log(Level.WARNING, "Ignoring unreadable index " + indexFile, e);
+		}
+	}
+
+	private void save() {
+		File tempFile = new File(indexFile.getPath() + ".tmp");
+		try {
+			try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"))) {
+				out.println(VERSION + " " + indexedLength + " " + indexedLastModified + " " + checksum);
+				for (Entry entry : entries) {
+					out.println(entry.day + " " + entry.offset + " " + entry.seekOffset);
+				}
+			}
+			try {
+				Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			// the in memory index is still valid, it's just not persisted
+			LOG.log(Level.WARNING, "Unable to write index " + indexFile, e);
+		}
+	}
+
+	private static class Entry {
+		final String day;
+		final long offset;
+		final long seekOffset;
+
+		Entry(String day, long offset, long seekOffset) {
+			this.day = day;
+			this.offset = offset;
+			this.seekOffset = seekOffset;
+		}
+	}
+}
@@ -4,11 +4,13 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Provider;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
+import com.google.inject.multibindings.OptionalBinder;
 import com.google.inject.name.Named;
 
 import org.stt.Configuration;
 import org.stt.persistence.*;
-import org.stt.query.DefaultTimeTrackingItemQueries;
+import org.stt.persistence.db.DBStorage;
+import org.stt.query.IndexedTimeTrackingItemQueries;
 import org.stt.query.TimeTrackingItemQueries;
 
 import java.io.*;
@@ -19,21 +21,33 @@ import java.io.*;
 public class STTPersistenceModule extends AbstractModule {
     @Override
     protected void configure() {
-        bind(ItemReader.class).to(STTItemReader.class);
         bind(ItemWriter.class).to(STTItemWriter.class);
         bind(ItemReaderProvider.class).to(PreCachingItemReaderProvider.class);
-        bind(TimeTrackingItemQueries.class).to(DefaultTimeTrackingItemQueries.class);
-        bind(ItemPersister.class).to(STTItemPersister.class);
+        bind(TimeTrackingItemQueries.class).to(IndexedTimeTrackingItemQueries.class);
+        bind(LeftoverJournalCompactor.class).asEagerSingleton();
+        // there is no database to maintain
+        OptionalBinder.newOptionalBinder(binder(), DBStorage.class);
+    }
+
+    @Provides
+    ItemReader provideItemReader(STTJournal journal) throws IOException {
+        return journal.openReader();
+    }
+
+    @Provides
+    ItemPersister provideItemPersister(Configuration configuration,
+                                       Provider<STTJournalItemPersister> journalItemPersister,
+                                       Provider<STTItemPersister> rewritingItemPersister) {
+        if (configuration.getSttJournalEnabled()) {
+            return journalItemPersister.get();
+        }
+        // entries left over from journal mode were compacted on startup
+        return rewritingItemPersister.get();
     }
 
     @Provides @Named("uncached")
-    ItemReaderProvider directReaderProvider(final Provider<ItemReader> readerProvider) {
-        return new ItemReaderProvider() {
-            @Override
-            public ItemReader provideReader() {
-                return readerProvider.get();
-            }
-        };
+    ItemReaderProvider directReaderProvider(STTItemReaderProvider readerProvider) {
+        return readerProvider;
     }
 
     @Provides @STTFile
@@ -42,9 +56,12 @@ public class STTPersistenceModule extends AbstractModule {
                 new FileInputStream(sttFile), "UTF-8");
     }
 
+    /**
+     * The file is only replaced once the writer is closed, so a crash while writing never truncates it.
+     */
     @Provides @STTFile
-    Writer provideWriter(@STTFile File sttFile) throws FileNotFoundException, UnsupportedEncodingException {
-        return new OutputStreamWriter(new FileOutputStream(sttFile, false), "UTF-8");
+    Writer provideWriter(@STTFile File sttFile, OwnFileWrites ownWrites) throws IOException {
+        return new AtomicFileWriter(sttFile, ownWrites);
     }
 
 
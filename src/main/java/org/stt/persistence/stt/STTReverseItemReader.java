@@ -0,0 +1,103 @@
+package org.stt.persistence.stt;
+
+import com.google.common.base.Optional;
+import org.stt.model.TimeTrackingItem;
+import org.stt.persistence.ItemReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the items of a .stt file from its last line to its first one. As the
+ * file is sorted by start, the latest items are read first, without reading
+ * the rest of the file.
+ */
+public class STTReverseItemReader implements ItemReader {
+	private static final int DEFAULT_BLOCK_SIZE = 8192;
+
+	private final STTItemConverter converter = new STTItemConverter();
+	private final RandomAccessFile file;
+	private final int blockSize;
+	// the file up to position has not been read yet
+	private long position;
+	// read bytes not returned yet, they start at position
+	private byte[] pending = new byte[0];
+	private int pendingLength;
+
+	public STTReverseItemReader(File sttFile) throws IOException {
+		this(sttFile, DEFAULT_BLOCK_SIZE);
+	}
+
+	STTReverseItemReader(File sttFile, int blockSize) throws IOException {
+		file = new RandomAccessFile(sttFile, "r");
+		this.blockSize = blockSize;
+		position = file.length();
+	}
+
+	@Override
+	public Optional<TimeTrackingItem> read() {
+		try {
+			String line;
+			while ((line = previousLine()) != null) {
+				// ignore empty lines or ones just containing whitespace
+				if (!line.trim().isEmpty()) {
+					return Optional.of(converter.lineToTimeTrackingItem(line));
+				}
+			}
+			return Optional.absent();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @return null if the first line has been returned already
+	 */
+	private String previousLine() throws IOException {
+		while (true) {
+			for (int i = pendingLength - 1; i >= 0; i--) {
+				if (pending[i] == '\n') {
+					String line = lineOf(i + 1, pendingLength);
+					pendingLength = i;
+					return line;
+				}
+			}
+			if (position == 0) {
+				if (pendingLength == 0) {
+					return null;
+				}
+				String line = lineOf(0, pendingLength);
+				pendingLength = 0;
+				return line;
+			}
+			readPreviousBlock();
+		}
+	}
+
+	private void readPreviousBlock() throws IOException {
+		int length = (int) Math.min(blockSize, position);
+		position -= length;
+		// the partial line left over continues the block
+		byte[] block = new byte[length + pendingLength];
+		file.seek(position);
+		file.readFully(block, 0, length);
+		System.arraycopy(pending, 0, block, length, pendingLength);
+		pending = block;
+		pendingLength = block.length;
+	}
+
+	private String lineOf(int from, int to) {
+		int end = to;
+		if (end > from && pending[end - 1] == '\r') {
+			end--;
+		}
+		return new String(pending, from, end - from, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+}
@@ -55,4 +55,24 @@ public class DNFClause {
         commentContains = Optional.of(substring);
         return this;
     }
+
+    public Optional<DateTime> getStartNotBefore() {
+        return startNotBefore;
+    }
+
+    public Optional<DateTime> getStartBefore() {
+        return startBefore;
+    }
+
+    public Optional<DateTime> getEndNotAfter() {
+        return endNotAfter;
+    }
+
+    public Optional<DateTime> getEndBefore() {
+        return endBefore;
+    }
+
+    public Optional<String> getCommentContains() {
+        return commentContains;
+    }
 }
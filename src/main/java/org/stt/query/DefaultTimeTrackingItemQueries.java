@@ -6,14 +6,20 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
 
 import org.joda.time.DateTime;
+import org.joda.time.Duration;
 import org.stt.model.TimeTrackingItem;
 import org.stt.persistence.IOUtil;
 import org.stt.persistence.ItemReader;
 import org.stt.persistence.ItemReaderProvider;
+import org.stt.persistence.ReversibleItemReaderProvider;
+import org.stt.persistence.SeekableItemReaderProvider;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
@@ -42,6 +48,13 @@ public class DefaultTimeTrackingItemQueries implements TimeTrackingItemQueries {
 	
 	@Override
 	public Optional<TimeTrackingItem> getLatestTimeTrackingitem() {
+		if (provider instanceof ReversibleItemReaderProvider) {
+			try (ItemReader reader = ((ReversibleItemReaderProvider) provider).provideReverseReader()) {
+				return reader.read();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
 		try (ItemReader reader = provider.provideReader()) {
 			Optional<TimeTrackingItem> item;
 			TimeTrackingItem currentItem = null;
@@ -56,7 +69,7 @@ public class DefaultTimeTrackingItemQueries implements TimeTrackingItemQueries {
 	
 	@Override
 	public Optional<TimeTrackingItem> getPreviousTimeTrackingItem(TimeTrackingItem item) {
-		try (ItemReader reader = provider.provideReader()) {
+		try (ItemReader reader = provideReaderFrom(Optional.of(item.getStart()))) {
 			Optional<TimeTrackingItem> currentItem;
 			TimeTrackingItem previousItem = null;
 			while ((currentItem = reader.read()).isPresent()) {
@@ -80,7 +93,7 @@ public class DefaultTimeTrackingItemQueries implements TimeTrackingItemQueries {
 	
 	@Override
 	public Optional<TimeTrackingItem> getNextTimeTrackingTime(TimeTrackingItem item) {
-		try (ItemReader reader = provider.provideReader()) {
+		try (ItemReader reader = provideReaderFrom(Optional.of(item.getStart()))) {
 			Optional<TimeTrackingItem> currentItem;
 			while ((currentItem = reader.read()).isPresent()) {
 				if (item.equals(currentItem.get()))
@@ -117,7 +130,7 @@ public class DefaultTimeTrackingItemQueries implements TimeTrackingItemQueries {
 	@Override
 	public Collection<TimeTrackingItem> queryFirstNItems(Optional<DateTime> start, Optional<DateTime> end, Optional<Integer> maxItems) {
 		List<TimeTrackingItem> result = new ArrayList<>();
-		try (ItemReader reader = provider.provideReader()) {
+		try (ItemReader reader = provideReaderFrom(start)) {
 			Optional<TimeTrackingItem> read;
 			while ((!maxItems.isPresent() || result.size() < maxItems.get()) && (read = reader.read()).isPresent()) {
 				TimeTrackingItem item = read.get();
@@ -137,7 +150,7 @@ public class DefaultTimeTrackingItemQueries implements TimeTrackingItemQueries {
     @Override
     public Collection<TimeTrackingItem> queryItems(DNFClause dnfClause) {
         Collection<TimeTrackingItem> result = new ArrayList<>();
-        try (ItemReader reader = provider.provideReader()) {
+        try (ItemReader reader = provideReaderFrom(dnfClause.startNotBefore)) {
 			DNFClauseMatcher DNFClauseMatcher = new DNFClauseMatcher(dnfClause);
 			Optional<TimeTrackingItem> read;
             while ((read = reader.read()).isPresent()) {
@@ -161,7 +174,51 @@ public class DefaultTimeTrackingItemQueries implements TimeTrackingItemQueries {
         }
     }
 
+	@Override
+	public Map<String, Duration> sumDurationsByComment(DNFClause dnfClause, DateTime ongoingUntil) {
+		return DurationSums.byComment(queryItems(dnfClause), ongoingUntil);
+	}
 
+	@Override
+	public SortedMap<DateTime, Map<String, Duration>> sumDurationsByDayAndComment(DNFClause dnfClause,
+			DateTime ongoingUntil) {
+		return DurationSums.byDayAndComment(queryItems(dnfClause), ongoingUntil);
+	}
 
+	/**
+	 * Reads the items backwards if the provider supports it, otherwise all
+	 * matching items are read first.
+	 */
+	@Override
+	public List<String> queryLatestComments(DNFClause dnfClause, int maxComments) {
+		LatestComments comments = new LatestComments(dnfClause, maxComments);
+		if (provider instanceof ReversibleItemReaderProvider) {
+			try (ItemReader reader = ((ReversibleItemReaderProvider) provider).provideReverseReader()) {
+				Optional<TimeTrackingItem> item = reader.read();
+				while (item.isPresent() && comments.offer(item.get())) {
+					item = reader.read();
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		} else {
+			for (TimeTrackingItem item : Lists.reverse(new ArrayList<>(queryItems(dnfClause)))) {
+				if (!comments.offer(item)) {
+					break;
+				}
+			}
+		}
+		return comments.toList();
+	}
 
+	/**
+	 * Skips items starting before the given time if the provider supports it.
+	 * Readers may still return some items before that time.
+	 */
+	private ItemReader provideReaderFrom(Optional<DateTime> start) {
+		if (start.isPresent() && provider instanceof SeekableItemReaderProvider) {
+			return ((SeekableItemReaderProvider) provider).provideReaderFrom(start.get());
+		}
+		return provider.provideReader();
+	}
 }
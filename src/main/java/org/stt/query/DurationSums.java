@@ -0,0 +1,50 @@
+package org.stt.query;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.stt.model.TimeTrackingItem;
+
+/**
+ * Sums durations of items in memory, for queries without a database doing
+ * it for them.
+ */
+final class DurationSums {
+
+	private DurationSums() {
+	}
+
+	static Map<String, Duration> byComment(Iterable<TimeTrackingItem> items, DateTime ongoingUntil) {
+		Map<String, Duration> result = new HashMap<>();
+		for (TimeTrackingItem item : items) {
+			add(result, item, ongoingUntil);
+		}
+		return result;
+	}
+
+	static SortedMap<DateTime, Map<String, Duration>> byDayAndComment(Iterable<TimeTrackingItem> items,
+			DateTime ongoingUntil) {
+		SortedMap<DateTime, Map<String, Duration>> result = new TreeMap<>();
+		for (TimeTrackingItem item : items) {
+			DateTime day = item.getStart().withTimeAtStartOfDay();
+			Map<String, Duration> durations = result.get(day);
+			if (durations == null) {
+				durations = new HashMap<>();
+				result.put(day, durations);
+			}
+			add(durations, item, ongoingUntil);
+		}
+		return result;
+	}
+
+	private static void add(Map<String, Duration> durations, TimeTrackingItem item, DateTime ongoingUntil) {
+		String comment = item.getComment().or("");
+		Duration duration = new Duration(item.getStart(), item.getEnd().or(ongoingUntil));
+		Duration sum = durations.get(comment);
+		durations.put(comment, sum == null ? duration : sum.plus(duration));
+	}
+}
@@ -0,0 +1,287 @@
+package org.stt.query;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.stt.persistence.PreCachingItemReaderProvider.firstIndexNotBefore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.stt.model.FileChanged;
+import org.stt.model.ItemDeleted;
+import org.stt.model.ItemInserted;
+import org.stt.model.ItemReplaced;
+import org.stt.model.TimeTrackingItem;
+import org.stt.persistence.ItemReader;
+import org.stt.persistence.PreCachingItemReaderProvider;
+
+import com.google.common.base.Optional;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Answers queries from the items cached by the
+ * {@link PreCachingItemReaderProvider} instead of scanning them: the cached
+ * items are sorted by start, so point lookups take O(log n), range queries
+ * O(log n + k).
+ * <p>
+ * Items never overlap, so items overlapping a range are found by start as
+ * well. The days having items are kept per version of the cached items.
+ * </p>
+ * <p>
+ * Until the items are cached, the latest item is read from the end of the
+ * items if the underlying provider supports it, and kept from the events of
+ * the persister.
+ * </p>
+ */
+@Singleton
+public class IndexedTimeTrackingItemQueries implements TimeTrackingItemQueries {
+
+	private final PreCachingItemReaderProvider cache;
+	// null if unknown, only used while the items are not cached; guarded by
+	// this
+	private Optional<TimeTrackingItem> latest;
+	// null until asked for
+	private volatile TrackedDays trackedDays;
+
+	/**
+	 * @param cache
+	 *            where to query items from
+	 */
+	@Inject
+	public IndexedTimeTrackingItemQueries(PreCachingItemReaderProvider cache, EventBus eventBus) {
+		this.cache = checkNotNull(cache);
+		// the cache has to follow the same events, registering it twice has
+		// no effect
+		eventBus.register(cache);
+		eventBus.register(this);
+	}
+
+	@Subscribe
+	public synchronized void itemInserted(ItemInserted event) {
+		latest = latestAfterInserting(event.newItem);
+	}
+
+	@Subscribe
+	public synchronized void itemReplaced(ItemReplaced event) {
+		latest = latestAfterReplacing(event.beforeUpdate, event.afterUpdate);
+	}
+
+	@Subscribe
+	public synchronized void itemDeleted(ItemDeleted event) {
+		latest = null;
+	}
+
+	@Subscribe
+	public synchronized void sourceChanged(FileChanged event) {
+		latest = null;
+	}
+
+	@Override
+	public Optional<TimeTrackingItem> getCurrentTimeTrackingitem() {
+		Optional<TimeTrackingItem> latestTimeTrackingitem = getLatestTimeTrackingitem();
+
+		return latestTimeTrackingitem.isPresent() && !latestTimeTrackingitem.get().getEnd().isPresent() ?
+				latestTimeTrackingitem : Optional.<TimeTrackingItem>absent();
+	}
+
+	@Override
+	public Optional<TimeTrackingItem> getLatestTimeTrackingitem() {
+		if (cache.isLoaded()) {
+			List<TimeTrackingItem> items = cache.getItems();
+			return itemAt(items, items.size() - 1);
+		}
+		synchronized (this) {
+			if (latest == null) {
+				// reads from the end, unless the cache has to load everything
+				try (ItemReader reader = cache.provideReverseReader()) {
+					latest = reader.read();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			return latest;
+		}
+	}
+
+	/**
+	 * Starting an item ends the latest one, as long as it isn't started
+	 * before it. Other inserts may split or remove items, the latest item is
+	 * read again then.
+	 *
+	 * @return null if unknown
+	 */
+	private Optional<TimeTrackingItem> latestAfterInserting(TimeTrackingItem item) {
+		if (latest == null || item.getEnd().isPresent()) {
+			return null;
+		}
+		if (latest.isPresent() && item.getStart().isBefore(latest.get().getStart())) {
+			return null;
+		}
+		return Optional.of(item);
+	}
+
+	/**
+	 * Ending the latest item or changing its comment keeps it the latest.
+	 *
+	 * @return null if unknown
+	 */
+	private Optional<TimeTrackingItem> latestAfterReplacing(TimeTrackingItem item, TimeTrackingItem with) {
+		if (latest == null || !latest.equals(Optional.of(item)) || with.getStart().isBefore(item.getStart())) {
+			return null;
+		}
+		return Optional.of(with);
+	}
+
+	@Override
+	public Optional<TimeTrackingItem> getPreviousTimeTrackingItem(TimeTrackingItem item) {
+		List<TimeTrackingItem> items = cache.getItems();
+		int index = indexOf(items, item);
+		return index < 0 ? Optional.<TimeTrackingItem>absent() : itemAt(items, index - 1);
+	}
+
+	@Override
+	public Optional<TimeTrackingItem> getNextTimeTrackingTime(TimeTrackingItem item) {
+		List<TimeTrackingItem> items = cache.getItems();
+		int index = indexOf(items, item);
+		return index < 0 ? Optional.<TimeTrackingItem>absent() : itemAt(items, index + 1);
+	}
+
+	/**
+	 * @return the index of the first item equal to the given one, -1 if there
+	 *         is none
+	 */
+	private static int indexOf(List<TimeTrackingItem> items, TimeTrackingItem item) {
+		for (int i = firstIndexNotBefore(items, item.getStart()); i < items.size()
+				&& items.get(i).getStart().equals(item.getStart()); i++) {
+			if (items.get(i).equals(item)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static Optional<TimeTrackingItem> itemAt(List<TimeTrackingItem> items, int index) {
+		return index >= 0 && index < items.size() ? Optional.of(items.get(index))
+				: Optional.<TimeTrackingItem>absent();
+	}
+
+	@Override
+	public Collection<DateTime> getAllTrackedDays() {
+		List<TimeTrackingItem> items = cache.getItems();
+		TrackedDays days = trackedDays;
+		if (days == null || days.items != items) {
+			days = new TrackedDays(items);
+			trackedDays = days;
+		}
+		return new ArrayList<>(days.days);
+	}
+
+	@Override
+	public Collection<TimeTrackingItem> queryFirstNItems(Optional<DateTime> start, Optional<DateTime> end,
+			Optional<Integer> maxItems) {
+		List<TimeTrackingItem> result = new ArrayList<>();
+		List<TimeTrackingItem> items = cache.getItems();
+		for (int i = startIndex(items, start); i < items.size()
+				&& (!maxItems.isPresent() || result.size() < maxItems.get()); i++) {
+			TimeTrackingItem item = items.get(i);
+			if (end.isPresent() && item.getStart().isAfter(end.get())) {
+				// this and all following items end after the query
+				break;
+			}
+			if (!end.isPresent() || (item.getEnd().isPresent() && !item.getEnd().get().isAfter(end.get()))) {
+				result.add(item);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public Collection<TimeTrackingItem> queryItems(DNFClause dnfClause) {
+		Collection<TimeTrackingItem> result = new ArrayList<>();
+		DNFClauseMatcher matcher = new DNFClauseMatcher(dnfClause);
+		List<TimeTrackingItem> items = cache.getItems();
+		for (int i = startIndex(items, dnfClause.startNotBefore); i < items.size(); i++) {
+			TimeTrackingItem item = items.get(i);
+			if (startsAfterAllMatches(item, dnfClause)) {
+				break;
+			}
+			if (matcher.matches(item)) {
+				result.add(item);
+			}
+		}
+		return result;
+	}
+
+	private static int startIndex(List<TimeTrackingItem> items, Optional<DateTime> start) {
+		return start.isPresent() ? firstIndexNotBefore(items, start.get()) : 0;
+	}
+
+	/**
+	 * Items end at or after their start, so an item starting too late for
+	 * any of the upper bounds is followed only by such items.
+	 */
+	private static boolean startsAfterAllMatches(TimeTrackingItem item, DNFClause dnfClause) {
+		DateTime start = item.getStart();
+		return (dnfClause.startBefore.isPresent() && !start.isBefore(dnfClause.startBefore.get()))
+				|| (dnfClause.endNotAfter.isPresent() && start.isAfter(dnfClause.endNotAfter.get()))
+				|| (dnfClause.endBefore.isPresent() && !start.isBefore(dnfClause.endBefore.get()));
+	}
+
+	@Override
+	public Collection<TimeTrackingItem> queryAllItems() {
+		return cache.getItems();
+	}
+
+	@Override
+	public Map<String, Duration> sumDurationsByComment(DNFClause dnfClause, DateTime ongoingUntil) {
+		return DurationSums.byComment(queryItems(dnfClause), ongoingUntil);
+	}
+
+	@Override
+	public SortedMap<DateTime, Map<String, Duration>> sumDurationsByDayAndComment(DNFClause dnfClause,
+			DateTime ongoingUntil) {
+		return DurationSums.byDayAndComment(queryItems(dnfClause), ongoingUntil);
+	}
+
+	@Override
+	public List<String> queryLatestComments(DNFClause dnfClause, int maxComments) {
+		LatestComments comments = new LatestComments(dnfClause, maxComments);
+		// the latest items don't need all items to be cached
+		try (ItemReader reader = cache.provideReverseReader()) {
+			Optional<TimeTrackingItem> item = reader.read();
+			while (item.isPresent() && comments.offer(item.get())) {
+				item = reader.read();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return comments.toList();
+	}
+
+	/**
+	 * The start of all days with items starting at them, for one version of
+	 * the cached items.
+	 */
+	private static class TrackedDays {
+		final List<TimeTrackingItem> items;
+		final List<DateTime> days = new ArrayList<>();
+
+		TrackedDays(List<TimeTrackingItem> items) {
+			this.items = items;
+			for (TimeTrackingItem item : items) {
+				DateTime day = item.getStart().withTimeAtStartOfDay();
+				if (days.isEmpty() || !days.get(days.size() - 1).equals(day)) {
+					days.add(day);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package org.stt.query;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.stt.model.TimeTrackingItem;
+
+/**
+ * Collects the distinct comments of items from the latest to the earliest,
+ * for queries without a database doing it for them.
+ */
+final class LatestComments {
+
+	private final DNFClause dnfClause;
+	private final DNFClauseMatcher matcher;
+	private final int maxComments;
+	private final Set<String> comments = new LinkedHashSet<>();
+
+	LatestComments(DNFClause dnfClause, int maxComments) {
+		this.dnfClause = dnfClause;
+		this.matcher = new DNFClauseMatcher(dnfClause);
+		this.maxComments = maxComments;
+	}
+
+	/**
+	 * @param item
+	 *            starting at or before all items offered so far
+	 * @return false if no earlier item can be collected anymore
+	 */
+	boolean offer(TimeTrackingItem item) {
+		if (comments.size() >= maxComments) {
+			return false;
+		}
+		if (dnfClause.getStartNotBefore().isPresent()
+				&& item.getStart().isBefore(dnfClause.getStartNotBefore().get())) {
+			return false;
+		}
+		if (item.getComment().isPresent() && matcher.matches(item)) {
+			comments.add(item.getComment().get());
+		}
+		return comments.size() < maxComments;
+	}
+
+	List<String> toList() {
+		return new ArrayList<>(comments);
+	}
+}
@@ -2,9 +2,13 @@ package org.stt.query;
 
 import com.google.common.base.Optional;
 import org.joda.time.DateTime;
+import org.joda.time.Duration;
 import org.stt.model.TimeTrackingItem;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
 
 public interface TimeTrackingItemQueries {
 	/**
@@ -35,5 +39,27 @@ public interface TimeTrackingItemQueries {
 
     Collection<TimeTrackingItem> queryAllItems();
 
+	/**
+	 * Sums the durations of the items matching the clause by comment. Items
+	 * without an end count until ongoingUntil, items without a comment are
+	 * summed under the empty comment.
+	 */
+	Map<String, Duration> sumDurationsByComment(DNFClause dnfClause, DateTime ongoingUntil);
+
+	/**
+	 * Like {@link #sumDurationsByComment(DNFClause, DateTime)}, separately for
+	 * each day items start at.
+	 */
+	SortedMap<DateTime, Map<String, Duration>> sumDurationsByDayAndComment(DNFClause dnfClause,
+			DateTime ongoingUntil);
+
+	/**
+	 * Returns the distinct comments of the items matching the clause, from
+	 * the latest item to the earliest one. Stops after maxComments comments,
+	 * so only the latest items need to be looked at. Items without a comment
+	 * are skipped.
+	 */
+	List<String> queryLatestComments(DNFClause dnfClause, int maxComments);
+
 	
 }
@@ -4,9 +4,9 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.joda.time.*;
 import org.stt.text.ItemCategorizer;
-import org.stt.model.TimeTrackingItem;
 import org.stt.reporting.WorkingtimeItemProvider;
 
+import java.util.Map;
 import java.util.logging.Logger;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -80,10 +80,10 @@ public class WorkTimeQueries {
         DNFClause dnfClause = new DNFClause();
         dnfClause.withStartNotBefore(interval.getStart());
         dnfClause.withStartBefore(interval.getEnd());
-        for (TimeTrackingItem item: timeTrackingItemQueries.queryItems(dnfClause)) {
-            if (itemCategorizer.getCategory(item.getComment().or("")) == ItemCategorizer.ItemCategory.WORKTIME) {
-                DateTime end = item.getEnd().or(interval.getEnd());
-                workedTime = workedTime.plus(new Duration(item.getStart(), end));
+        for (Map.Entry<String, Duration> commentDuration : timeTrackingItemQueries
+                .sumDurationsByComment(dnfClause, interval.getEnd()).entrySet()) {
+            if (itemCategorizer.getCategory(commentDuration.getKey()) == ItemCategorizer.ItemCategory.WORKTIME) {
+                workedTime = workedTime.plus(commentDuration.getValue());
             }
         }
         return workedTime;
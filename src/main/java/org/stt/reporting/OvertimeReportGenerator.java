@@ -1,17 +1,16 @@
 package org.stt.reporting;
 
-import com.google.common.base.Optional;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.stt.text.ItemCategorizer;
 import org.stt.text.ItemCategorizer.ItemCategory;
-import org.stt.model.TimeTrackingItem;
-import org.stt.persistence.ItemReader;
 import org.stt.persistence.ItemReaderProvider;
+import org.stt.query.DNFClause;
+import org.stt.query.DefaultTimeTrackingItemQueries;
+import org.stt.query.TimeTrackingItemQueries;
 import org.stt.reporting.WorkingtimeItemProvider.WorkingtimeItem;
 import org.stt.time.DateTimeHelper;
 
-import java.io.IOException;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -21,13 +20,25 @@ import java.util.TreeMap;
 public class OvertimeReportGenerator {
 
 	private final ItemCategorizer categorizer;
-	private final ItemReaderProvider readerProvider;
+	private final TimeTrackingItemQueries queries;
 	private WorkingtimeItemProvider workingtimeItemProvider;
 
 	public OvertimeReportGenerator(ItemReaderProvider readerProvider,
 			ItemCategorizer categorizer,
 			WorkingtimeItemProvider workingtimeItemProvider) {
-		this.readerProvider = readerProvider;
+		this(new DefaultTimeTrackingItemQueries(readerProvider), categorizer,
+				workingtimeItemProvider);
+	}
+
+	/**
+	 * @param queries
+	 *            sums the durations of the items, a database does so without
+	 *            reading them
+	 */
+	public OvertimeReportGenerator(TimeTrackingItemQueries queries,
+			ItemCategorizer categorizer,
+			WorkingtimeItemProvider workingtimeItemProvider) {
+		this.queries = queries;
 		this.categorizer = categorizer;
 		this.workingtimeItemProvider = workingtimeItemProvider;
 	}
@@ -59,40 +70,29 @@ public class OvertimeReportGenerator {
 	 *         all elements
 	 */
 	public Map<DateTime, Duration> getOvertime() {
-
-		Optional<TimeTrackingItem> optionalItem = null;
-
-		try (ItemReader reader = readerProvider.provideReader()) {
-			Map<DateTime, Duration> dateToOvertime = new TreeMap<>();
-			while ((optionalItem = reader.read()).isPresent()) {
-				TimeTrackingItem item = optionalItem.get();
-
-				ItemCategory category = categorizer.getCategory(item.getComment()
-						.orNull());
+		Map<DateTime, Duration> dateToOvertime = new TreeMap<>();
+		for (Map.Entry<DateTime, Map<String, Duration>> day : queries
+				.sumDurationsByDayAndComment(new DNFClause(), DateTime.now())
+				.entrySet()) {
+			Duration worktime = null;
+			for (Map.Entry<String, Duration> commentDuration : day.getValue()
+					.entrySet()) {
+				ItemCategory category = categorizer.getCategory(commentDuration
+						.getKey());
 				if (category.equals(ItemCategory.WORKTIME)) {
-					DateTime currentDay = item.getStart().withTimeAtStartOfDay();
-					Duration currentDuration = dateToOvertime.get(currentDay);
-					Duration itemDuration = new Duration(item.getStart(), item
-							.getEnd().or(DateTime.now()));
-					if (currentDuration != null) {
-						dateToOvertime.put(currentDay,
-								currentDuration.plus(itemDuration));
-					} else {
-						dateToOvertime.put(currentDay, itemDuration);
-					}
+					worktime = worktime == null ? commentDuration.getValue()
+							: worktime.plus(commentDuration.getValue());
 				}
 			}
-
-			for (Map.Entry<DateTime, Duration> e : dateToOvertime.entrySet()) {
-				dateToOvertime.put(e.getKey(),
-						getOvertime(e.getKey(), e.getValue()));
+			// days with breaks only have no overtime
+			if (worktime != null) {
+				dateToOvertime.put(day.getKey(),
+						getOvertime(day.getKey(), worktime));
 			}
-
-			dateToOvertime.putAll(getAbsencesMap());
-			return dateToOvertime;
-		} catch (IOException e) {
-			throw new RuntimeException(e);
 		}
+
+		dateToOvertime.putAll(getAbsencesMap());
+		return dateToOvertime;
 	}
 
 	/**
@@ -0,0 +1,216 @@
+package org.stt.cli;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.base.Optional;
+
+public class CommandServerTest {
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private Main main;
+	private File daemonFile;
+	private CommandServer sut;
+	private final List<List<String>> executedCommands = new ArrayList<>();
+
+	@Before
+	public void setup() throws IOException {
+		main = mock(Main.class);
+		doAnswer(new Answer<Integer>() {
+			@Override
+			public Integer answer(InvocationOnMock invocation) throws Throwable {
+				@SuppressWarnings("unchecked")
+				List<String> args = (List<String>) invocation.getArguments()[0];
+				executedCommands.add(new ArrayList<>(args));
+				((PrintStream) invocation.getArguments()[1]).println("executed " + args);
+				return args.contains("fail") ? Main.STATUS_FAILED : Main.STATUS_OK;
+			}
+		}).when(main).executeCommand(anyListOf(String.class), any(PrintStream.class));
+
+		daemonFile = new File(tempFolder.getRoot(), ".stt_daemon");
+		sut = new CommandServer(main, daemonFile, "UTF-8");
+		Thread serverThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				sut.serve();
+			}
+		});
+		serverThread.setDaemon(true);
+		serverThread.start();
+	}
+
+	@After
+	public void tearDown() {
+		sut.close();
+	}
+
+	@Test
+	public void shouldExecuteForwardedCommands() throws IOException {
+		// GIVEN
+		CommandClient client = new CommandClient(daemonFile);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		// WHEN
+		Optional<Integer> status = client.forward(Arrays.asList("on", "täst"), output);
+
+		// THEN
+		assertThat(status, is(Optional.of(Main.STATUS_OK)));
+		assertThat(output.toString("UTF-8"), is("executed [on, täst]" + System.lineSeparator()));
+		assertThat(executedCommands, is(Arrays.asList(Arrays.asList("on", "täst"))));
+	}
+
+	@Test
+	public void shouldRejectClientsWithoutToken() throws IOException {
+		// GIVEN
+		Properties daemon = readDaemonFile();
+		daemon.setProperty(CommandServer.PROPERTY_TOKEN, "guessed");
+		try (OutputStream out = new FileOutputStream(daemonFile)) {
+			daemon.store(out, null);
+		}
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		// WHEN
+		try {
+			new CommandClient(daemonFile).forward(Arrays.asList("fin"), output);
+			fail("Should throw exception");
+		} catch (IOException e) {
+			// Nothing to do
+		}
+
+		// THEN
+		assertThat(output.size(), is(0));
+		verify(main, never()).executeCommand(anyListOf(String.class), any(PrintStream.class));
+	}
+
+	@Test
+	public void shouldNotForwardWhenDaemonStopped() throws IOException {
+		// GIVEN
+		Properties daemon = readDaemonFile();
+		sut.close();
+		try (OutputStream out = new FileOutputStream(daemonFile)) {
+			daemon.store(out, null);
+		}
+		CommandClient client = new CommandClient(daemonFile);
+
+		// WHEN
+		Optional<Integer> status = client.forward(Arrays.asList("fin"), new ByteArrayOutputStream());
+
+		// THEN
+		assertThat(status, is(Optional.<Integer>absent()));
+		assertThat(client.isDaemonRunning(), is(false));
+	}
+
+	@Test
+	public void shouldForwardExitStatus() throws IOException {
+		// GIVEN
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		// WHEN
+		Optional<Integer> status = new CommandClient(daemonFile).forward(Arrays.asList("on", "fail"), output);
+
+		// THEN
+		assertThat(status, is(Optional.of(Main.STATUS_FAILED)));
+		assertThat(output.toString("UTF-8"), is("executed [on, fail]" + System.lineSeparator()));
+	}
+
+	@Test
+	public void outputShouldBeStreamedWhileCommandRuns() throws IOException {
+		// GIVEN
+		final CountDownLatch outputReceived = new CountDownLatch(1);
+		final AtomicBoolean streamed = new AtomicBoolean();
+		doAnswer(new Answer<Integer>() {
+			@Override
+			public Integer answer(InvocationOnMock invocation) throws Throwable {
+				PrintStream printTo = (PrintStream) invocation.getArguments()[1];
+				printTo.println("first");
+				streamed.set(outputReceived.await(5, TimeUnit.SECONDS));
+				printTo.println("second");
+				return Main.STATUS_OK;
+			}
+		}).when(main).executeCommand(anyListOf(String.class), any(PrintStream.class));
+		ByteArrayOutputStream output = new ByteArrayOutputStream() {
+			@Override
+			public synchronized void write(byte[] b, int off, int len) {
+				super.write(b, off, len);
+				outputReceived.countDown();
+			}
+		};
+
+		// WHEN
+		Optional<Integer> status = new CommandClient(daemonFile).forward(Arrays.asList("report"), output);
+
+		// THEN
+		assertThat(status, is(Optional.of(Main.STATUS_OK)));
+		assertThat(streamed.get(), is(true));
+		assertThat(output.toString("UTF-8"), is("first" + System.lineSeparator() + "second" + System.lineSeparator()));
+	}
+
+	@Test
+	public void shouldRejectCommandsNeedingInputOfClient() throws IOException {
+		// GIVEN
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		// WHEN
+		Optional<Integer> status = new CommandClient(daemonFile).forward(Arrays.asList("convert"), output);
+
+		// THEN
+		assertThat(status, is(Optional.of(Main.STATUS_FAILED)));
+		verify(main, never()).executeCommand(anyListOf(String.class), any(PrintStream.class));
+	}
+
+	@Test
+	public void daemonFileShouldOnlyBeReadableByOwner() throws IOException {
+		assumeTrue(daemonFile.toPath().getFileSystem().supportedFileAttributeViews().contains("posix"));
+
+		// GIVEN
+
+		// WHEN
+		String permissions = PosixFilePermissions.toString(Files.getPosixFilePermissions(daemonFile.toPath()));
+
+		// THEN
+		assertThat(permissions, is("rw-------"));
+	}
+
+	private Properties readDaemonFile() throws IOException {
+		Properties daemon = new Properties();
+		try (InputStream in = new FileInputStream(daemonFile)) {
+			daemon.load(in);
+		}
+		return daemon;
+	}
+}
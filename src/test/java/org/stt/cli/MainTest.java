@@ -14,6 +14,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.io.Reader;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.nio.charset.Charset;
@@ -36,6 +37,7 @@ import org.stt.Configuration;
 import org.stt.persistence.ItemPersister;
 import org.stt.persistence.ItemReaderProvider;
 import org.stt.persistence.ItemWriter;
+import org.stt.persistence.db.DBStorage;
 import org.stt.persistence.stt.STTItemPersister;
 import org.stt.persistence.stt.STTItemReader;
 import org.stt.persistence.stt.STTItemWriter;
@@ -45,6 +47,7 @@ import org.stt.reporting.WorkingtimeItemProvider;
 import org.stt.text.ItemCategorizer;
 import org.stt.text.WorktimeCategorizer;
 
+import com.google.common.base.Optional;
 import com.google.inject.Provider;
 import com.google.inject.ProvisionException;
 
@@ -127,7 +130,8 @@ public class MainTest {
 		
 		reportPrinter = new ReportPrinter(itemReaderProvider, configuration, workingtimeItemProvider, categorizer);
 		
-		sut = new Main(providerItemPersister, itemReaderProvider, itemWriterProvider, timeTrackingItemQueries, reportPrinter);
+		sut = new Main(providerItemPersister, itemReaderProvider, itemWriterProvider, timeTrackingItemQueries, reportPrinter,
+				Optional.<DBStorage>absent());
 	}
 
 	@Test
@@ -205,6 +209,26 @@ public class MainTest {
 		System.out.println(baos);
 	}
 	
+	@Test
+	public void searchShouldPrintLatestUniqueCommentsUpToLimit() throws IOException
+	{
+		// GIVEN
+		FileUtils.write(currentSttFile, "2014-01-01_10:00:00 2014-01-01_11:00:00 work a\n"
+				+ "2014-01-01_11:00:00 2014-01-01_12:00:00 work b\n"
+				+ "2014-01-01_12:00:00 2014-01-01_13:00:00 work a\n"
+				+ "2014-01-01_13:00:00 2014-01-01_14:00:00 work c\n", "UTF-8");
+		List<String> args = new ArrayList<>(Arrays.asList("search", "--limit", "2", "work"));
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrintStream ps = new PrintStream(baos, true, "UTF-8");
+
+		// WHEN
+		sut.executeCommand(args, ps);
+
+		// THEN
+		assertThat(IOUtils.readLines(new StringReader(baos.toString("UTF-8"))),
+				is(Arrays.asList("work c", "work a")));
+	}
+
 	@Test
 	public void testSearch() throws UnsupportedEncodingException
 	{
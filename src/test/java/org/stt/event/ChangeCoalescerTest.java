@@ -0,0 +1,99 @@
+package org.stt.event;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.stt.model.FileChanged;
+import org.stt.model.ItemInserted;
+import org.stt.model.TimeTrackingItem;
+
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeCoalescerTest {
+    private final EventBus eventBus = new EventBus();
+    private final List<DataChanged> notifications = new CopyOnWriteArrayList<>();
+    private final CountDownLatch notified = new CountDownLatch(1);
+    private ChangeCoalescer sut;
+
+    @Before
+    public void setUp() throws Exception {
+        eventBus.register(new Object() {
+            @Subscribe
+            public void dataChanged(DataChanged event) {
+                notifications.add(event);
+                notified.countDown();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        sut.stop();
+    }
+
+    @Test
+    public void burstShouldBePostedOnce() throws Exception {
+        // GIVEN
+        givenWindowOf(TimeUnit.HOURS.toMillis(1));
+
+        // WHEN
+        eventBus.post(new ItemInserted(new TimeTrackingItem("item", DateTime.now())));
+        eventBus.post(new FileChanged(Paths.get("test.stt")));
+        sut.flush();
+
+        // THEN
+        assertThat(notifications.size(), is(1));
+        assertThat(notifications.get(0).getVersion(), is(1L));
+        assertThat(notifications.get(0).getCoalescedEvents(), is(2));
+        assertThat(sut.getReceivedEventCount(), is(2L));
+        assertThat(sut.getNotificationCount(), is(1L));
+        assertThat(sut.getSavedRecomputationCount(), is(1L));
+    }
+
+    @Test
+    public void laterBurstsShouldGetNewVersions() throws Exception {
+        // GIVEN
+        givenWindowOf(TimeUnit.HOURS.toMillis(1));
+        eventBus.post(new FileChanged(Paths.get("test.stt")));
+        sut.flush();
+
+        // WHEN
+        eventBus.post(new FileChanged(Paths.get("test.stt")));
+        sut.flush();
+        sut.flush();
+
+        // THEN
+        assertThat(notifications.size(), is(2));
+        assertThat(notifications.get(1).getVersion(), is(2L));
+        assertThat(sut.getSavedRecomputationCount(), is(0L));
+    }
+
+    @Test
+    public void changesShouldBePostedAfterWindow() throws Exception {
+        // GIVEN
+        givenWindowOf(10);
+
+        // WHEN
+        eventBus.post(new FileChanged(Paths.get("test.stt")));
+
+        // THEN
+        assertTrue(notified.await(5, TimeUnit.SECONDS));
+        assertThat(notifications.get(0).getCoalescedEvents(), is(1));
+    }
+
+    private void givenWindowOf(long windowMillis) throws Exception {
+        sut = new ChangeCoalescer(eventBus, windowMillis);
+        sut.start();
+    }
+}
@@ -0,0 +1,100 @@
+package org.stt.event;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.stt.model.FileChanged;
+import org.stt.persistence.OwnFileWrites;
+import org.stt.persistence.stt.STTJournal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class FileChangeListenerServiceTest {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final EventBus eventBus = new EventBus();
+    private final List<FileChanged> fileChanges = new ArrayList<>();
+    private final OwnFileWrites ownWrites = new OwnFileWrites();
+    private File file;
+    private FileChangeListenerService sut;
+
+    @Before
+    public void setUp() throws Exception {
+        file = tempFolder.newFile("test.stt");
+        sut = new FileChangeListenerService(file, eventBus, ownWrites);
+        eventBus.register(new Object() {
+            @Subscribe
+            public void fileChanged(FileChanged event) {
+                fileChanges.add(event);
+            }
+        });
+    }
+
+    @Test
+    public void ownChangesShouldBeSkipped() throws Exception {
+        // GIVEN
+        FileUtils.writeStringToFile(file, "own", "UTF-8");
+        ownWrites.record(file);
+
+        // WHEN
+        sut.notifyFileChanged(file.toPath());
+
+        // THEN
+        assertThat(fileChanges.size(), is(0));
+    }
+
+    @Test
+    public void ownChangeShouldOnlyBeSkippedOnce() throws Exception {
+        // GIVEN
+        FileUtils.writeStringToFile(file, "own", "UTF-8");
+        ownWrites.record(file);
+        sut.notifyFileChanged(file.toPath());
+
+        // WHEN
+        sut.notifyFileChanged(file.toPath());
+
+        // THEN
+        assertThat(fileChanges.size(), is(1));
+    }
+
+    @Test
+    public void changesOfFilesNotWrittenShouldBePosted() throws Exception {
+        // GIVEN
+        File journal = STTJournal.journalFileOf(file);
+        FileUtils.writeStringToFile(journal, "someone else", "UTF-8");
+        FileUtils.writeStringToFile(file, "own", "UTF-8");
+        ownWrites.record(file);
+
+        // WHEN
+        sut.notifyFileChanged(journal.toPath());
+
+        // THEN
+        assertThat(fileChanges.size(), is(1));
+        assertThat(fileChanges.get(0).file, is(journal.toPath()));
+    }
+
+    @Test
+    public void changesAfterOwnChangesShouldBePosted() throws Exception {
+        // GIVEN
+        FileUtils.writeStringToFile(file, "own", "UTF-8");
+        ownWrites.record(file);
+
+        // WHEN
+        FileUtils.writeStringToFile(file, "someone else", "UTF-8");
+        sut.notifyFileChanged(file.toPath());
+
+        // THEN
+        assertThat(fileChanges.size(), is(1));
+        assertThat(fileChanges.get(0).file, is(file.toPath()));
+    }
+}
@@ -0,0 +1,125 @@
+package org.stt.persistence;
+
+import com.google.inject.Provider;
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.stt.model.TimeTrackingItem;
+import org.stt.persistence.stt.STTItemPersister;
+import org.stt.persistence.stt.STTItemReader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ItemTimelineTest {
+    private static final DateTime BASE = new DateTime(2015, 1, 1, 8, 0, 0);
+
+    private String content = "";
+    private final ItemPersister reference = new STTItemPersister(new Provider<Reader>() {
+        @Override
+        public Reader get() {
+            return new StringReader(content);
+        }
+    }, new Provider<Writer>() {
+        @Override
+        public Writer get() {
+            return new StringWriter() {
+                @Override
+                public void close() {
+                    content = toString();
+                }
+            };
+        }
+    });
+
+    @Test
+    public void insertShouldResolveOverlapsLikeSttPersister() throws IOException {
+        Random random = new Random(1234);
+        for (int round = 0; round < 50; round++) {
+            content = "";
+            ItemTimeline sut = new ItemTimeline(Collections.<TimeTrackingItem>emptyList());
+            for (int i = 0; i < 40; i++) {
+                TimeTrackingItem item = randomItem(random);
+
+                reference.insert(item);
+                sut.insert(item);
+
+                assertThat(item.toString(), sut.toList(), is(referenceItems()));
+            }
+        }
+    }
+
+    @Test
+    public void deleteShouldRemoveItem() throws IOException {
+        // GIVEN
+        TimeTrackingItem first = new TimeTrackingItem("first", BASE, BASE.plusHours(1));
+        TimeTrackingItem second = new TimeTrackingItem("second", BASE.plusHours(1));
+        ItemTimeline sut = new ItemTimeline(list(first, second));
+
+        // WHEN
+        sut.delete(first);
+
+        // THEN
+        assertThat(sut.toList(), is(list(second)));
+    }
+
+    @Test
+    public void replaceWithoutOverlapShouldBeApplied() {
+        // GIVEN
+        TimeTrackingItem first = new TimeTrackingItem("first", BASE, BASE.plusHours(1));
+        TimeTrackingItem second = new TimeTrackingItem("second", BASE.plusHours(1));
+        TimeTrackingItem renamed = new TimeTrackingItem("renamed", BASE, BASE.plusHours(1));
+        ItemTimeline sut = new ItemTimeline(list(first, second));
+
+        // WHEN
+        boolean replaced = sut.replace(first, renamed);
+
+        // THEN
+        assertThat(replaced, is(true));
+        assertThat(sut.toList(), is(list(renamed, second)));
+    }
+
+    @Test
+    public void replaceWithOverlapShouldBeRejected() {
+        // GIVEN
+        TimeTrackingItem first = new TimeTrackingItem("first", BASE, BASE.plusHours(1));
+        TimeTrackingItem second = new TimeTrackingItem("second", BASE.plusHours(1));
+        TimeTrackingItem longer = new TimeTrackingItem("first", BASE, BASE.plusHours(2));
+        ItemTimeline sut = new ItemTimeline(list(first, second));
+
+        // WHEN
+        boolean replaced = sut.replace(first, longer);
+
+        // THEN
+        assertThat(replaced, is(false));
+        assertThat(sut.toList(), is(list(first, second)));
+    }
+
+    private TimeTrackingItem randomItem(Random random) {
+        DateTime start = BASE.plusMinutes(random.nextInt(48) * 15);
+        String comment = "item " + random.nextInt(1000);
+        if (random.nextInt(5) == 0) {
+            return new TimeTrackingItem(comment, start);
+        }
+        return new TimeTrackingItem(comment, start, start.plusMinutes((1 + random.nextInt(12)) * 15));
+    }
+
+    private List<TimeTrackingItem> referenceItems() throws IOException {
+        return new ArrayList<>(IOUtil.readAll(new STTItemReader(new StringReader(content))));
+    }
+
+    private static List<TimeTrackingItem> list(TimeTrackingItem... items) {
+        List<TimeTrackingItem> result = new ArrayList<>();
+        Collections.addAll(result, items);
+        return result;
+    }
+}
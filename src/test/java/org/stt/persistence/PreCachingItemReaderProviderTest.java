@@ -1,13 +1,28 @@
 package org.stt.persistence;
 
 import com.google.common.base.Optional;
+import com.google.inject.Provider;
 import org.apache.commons.io.IOUtils;
 import org.joda.time.DateTime;
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.stt.ItemReaderTestHelper;
+import org.stt.model.FileChanged;
+import org.stt.model.ItemInserted;
 import org.stt.model.TimeTrackingItem;
+import org.stt.persistence.stt.STTItemPersister;
+import org.stt.persistence.stt.STTItemReader;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.hamcrest.Matchers.is;
 
@@ -46,4 +61,190 @@ public class PreCachingItemReaderProviderTest {
         IOUtils.closeQuietly(cacher);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void insertedItemsShouldBeAppliedWithoutRereading() {
+        // GIVEN
+        DateTime start = new DateTime(2015, 1, 1, 10, 0, 0);
+        TimeTrackingItem first = new TimeTrackingItem("first", start);
+        ItemReaderProvider source = Mockito.mock(ItemReaderProvider.class);
+        ItemReader readerMock = Mockito.mock(ItemReader.class);
+        ItemReaderTestHelper.givenReaderReturns(readerMock, first);
+        Mockito.when(source.provideReader()).thenReturn(readerMock);
+        PreCachingItemReaderProvider sut = new PreCachingItemReaderProvider(source);
+        IOUtils.closeQuietly(sut.provideReader());
+
+        // WHEN
+        TimeTrackingItem second = new TimeTrackingItem("second", start.plusHours(1));
+        sut.itemInserted(new ItemInserted(second));
+
+        // THEN
+        ItemReader cacher = sut.provideReader();
+        Assert.assertThat(cacher.read().get(), is(first.withEnd(start.plusHours(1))));
+        Assert.assertThat(cacher.read().get(), is(second));
+        Assert.assertThat(cacher.read(), is(Optional.<TimeTrackingItem> absent()));
+        Mockito.verify(source, Mockito.times(1)).provideReader();
+    }
+
+    @Test
+    public void readersShouldKeepTheirViewWhileItemsAreInserted() {
+        // GIVEN
+        DateTime start = new DateTime(2015, 1, 1, 10, 0, 0);
+        TimeTrackingItem first = new TimeTrackingItem("first", start, start.plusHours(1));
+        ItemReaderProvider source = Mockito.mock(ItemReaderProvider.class);
+        ItemReader readerMock = Mockito.mock(ItemReader.class);
+        ItemReaderTestHelper.givenReaderReturns(readerMock, first);
+        Mockito.when(source.provideReader()).thenReturn(readerMock);
+        PreCachingItemReaderProvider sut = new PreCachingItemReaderProvider(source);
+        ItemReader before = sut.provideReader();
+
+        // WHEN
+        TimeTrackingItem second = new TimeTrackingItem("second", start.plusHours(2), start.plusHours(3));
+        TimeTrackingItem third = new TimeTrackingItem("third", start.plusHours(4), start.plusHours(5));
+        sut.itemInserted(new ItemInserted(second));
+        sut.itemInserted(new ItemInserted(third));
+
+        // THEN
+        Assert.assertThat(before.read().get(), is(first));
+        Assert.assertThat(before.read(), is(Optional.<TimeTrackingItem> absent()));
+        ItemReader after = sut.provideReader();
+        Assert.assertThat(after.read().get(), is(first));
+        Assert.assertThat(after.read().get(), is(second));
+        Assert.assertThat(after.read().get(), is(third));
+        Assert.assertThat(sut.getVersion(), is(3L));
+    }
+
+    @Test
+    public void fileChangesShouldTriggerReread() {
+        // GIVEN
+        TimeTrackingItem first = new TimeTrackingItem("first", DateTime.now());
+        ItemReaderProvider source = Mockito.mock(ItemReaderProvider.class);
+        ItemReader firstReader = Mockito.mock(ItemReader.class);
+        ItemReaderTestHelper.givenReaderReturns(firstReader, first);
+        ItemReader secondReader = Mockito.mock(ItemReader.class);
+        ItemReaderTestHelper.givenReaderReturns(secondReader);
+        Mockito.when(source.provideReader()).thenReturn(firstReader, secondReader);
+        PreCachingItemReaderProvider sut = new PreCachingItemReaderProvider(source);
+        IOUtils.closeQuietly(sut.provideReader());
+
+        // WHEN
+        sut.sourceChanged(new FileChanged(Paths.get("test.stt")));
+
+        // THEN
+        Assert.assertThat(sut.provideReader().read(), is(Optional.<TimeTrackingItem> absent()));
+    }
+
+    @Test
+    public void burstOfFileChangesShouldBeReadOnce() {
+        // GIVEN
+        ItemReaderProvider source = Mockito.mock(ItemReaderProvider.class);
+        ItemReader firstReader = Mockito.mock(ItemReader.class);
+        ItemReaderTestHelper.givenReaderReturns(firstReader);
+        ItemReader secondReader = Mockito.mock(ItemReader.class);
+        ItemReaderTestHelper.givenReaderReturns(secondReader);
+        Mockito.when(source.provideReader()).thenReturn(firstReader, secondReader);
+        PreCachingItemReaderProvider sut = new PreCachingItemReaderProvider(source);
+        IOUtils.closeQuietly(sut.provideReader());
+
+        // WHEN
+        for (int i = 0; i < 3; i++) {
+            sut.sourceChanged(new FileChanged(Paths.get("test.stt")));
+        }
+        IOUtils.closeQuietly(sut.provideReader());
+        IOUtils.closeQuietly(sut.provideReader());
+
+        // THEN
+        Mockito.verify(source, Mockito.times(2)).provideReader();
+        Assert.assertThat(sut.getVersion(), is(2L));
+    }
+
+    @Test
+    public void parallelReadersShouldAlwaysSeeConsistentSnapshots() throws Exception {
+        // GIVEN
+        final StringBuilder store = new StringBuilder();
+        final ItemPersister persister = new STTItemPersister(new Provider<Reader>() {
+            @Override
+            public Reader get() {
+                return new StringReader(store.toString());
+            }
+        }, new Provider<Writer>() {
+            @Override
+            public Writer get() {
+                return new StringWriter() {
+                    @Override
+                    public void close() {
+                        store.setLength(0);
+                        store.append(toString());
+                    }
+                };
+            }
+        });
+        final PreCachingItemReaderProvider sut = new PreCachingItemReaderProvider(new ItemReaderProvider() {
+            @Override
+            public ItemReader provideReader() {
+                return new STTItemReader(new StringReader(store.toString()));
+            }
+        });
+        IOUtils.closeQuietly(sut.provideReader());
+        final int itemCount = 300;
+        final DateTime start = new DateTime(2015, 1, 1, 0, 0, 0);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        long lastVersion = 0;
+                        int lastSize = 0;
+                        while (writing.get()) {
+                            long version = sut.getVersion();
+                            Assert.assertTrue(version >= lastVersion);
+                            lastVersion = version;
+                            List<TimeTrackingItem> items = new ArrayList<>(IOUtil.readAll(sut.provideReader()));
+                            assertConsecutive(items, start);
+                            // items are only ever appended
+                            Assert.assertTrue(items.size() >= lastSize);
+                            lastSize = items.size();
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        // WHEN
+        for (int i = 0; i < itemCount; i++) {
+            TimeTrackingItem item = new TimeTrackingItem("item " + i, start.plusHours(i));
+            persister.insert(item);
+            sut.itemInserted(new ItemInserted(item));
+            if (i % 25 == 0) {
+                sut.sourceChanged(new FileChanged(Paths.get("test.stt")));
+            }
+        }
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        // THEN
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        List<TimeTrackingItem> items = new ArrayList<>(IOUtil.readAll(sut.provideReader()));
+        Assert.assertThat(items.size(), is(itemCount));
+        assertConsecutive(items, start);
+    }
+
+    private static void assertConsecutive(List<TimeTrackingItem> items, DateTime start) {
+        for (int i = 0; i < items.size(); i++) {
+            TimeTrackingItem item = items.get(i);
+            Assert.assertThat(item.getStart(), is(start.plusHours(i)));
+            Assert.assertThat(item.getEnd().isPresent(), is(i < items.size() - 1));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.stt.persistence.db;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.joda.time.DateTime;
+import org.stt.model.TimeTrackingItem;
+import org.stt.persistence.db.h2.H2Configuration;
+import org.stt.persistence.db.h2.H2ConnectionProvider;
+import org.stt.persistence.db.h2.H2DBStorage;
+
+/**
+ * Prints the statements sent to the database and the time taken to insert
+ * an item covering an increasing number of items.
+ */
+public class DBItemPersisterBenchmark {
+	private static final DateTime BASE = new DateTime(2015, 1, 1, 0, 0, 0);
+
+	public static void main(String[] args) throws Exception {
+		System.out.println("covered items\tstatements\tmillis");
+		for (int covered = 1; covered <= 10000; covered *= 10) {
+			run(covered);
+		}
+	}
+
+	private static void run(int covered) throws ClassNotFoundException, SQLException, IOException {
+		H2ConnectionProvider connectionProvider = new H2ConnectionProvider(new H2Configuration() {
+			@Override
+			public String getDatabase() {
+				return "mem:benchmark";
+			}
+
+			@Override
+			public String getUserName() {
+				return "benchmark";
+			}
+
+			@Override
+			public String getPassword() {
+				return "";
+			}
+		});
+		Connection connection = connectionProvider.acquire();
+		try {
+			DBStorage storage = new H2DBStorage(connectionProvider);
+			DBItemPersister persister = new DBItemPersister(storage);
+			// splits the first, trims the last and deletes all in between
+			for (int i = 0; i < covered + 2; i++) {
+				storage.insertItemInDB(new TimeTrackingItem("item " + i, BASE.plusMinutes(i), BASE.plusMinutes(i + 1)));
+			}
+			TimeTrackingItem item = new TimeTrackingItem("covering", BASE.plusSeconds(30),
+					BASE.plusMinutes(covered + 1).plusSeconds(30));
+
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("SET QUERY_STATISTICS TRUE");
+			}
+			long start = System.nanoTime();
+			persister.insert(item);
+			long millis = (System.nanoTime() - start) / 1000000;
+
+			try (Statement statement = connection.createStatement();
+					ResultSet statistics = statement.executeQuery(
+							"SELECT SUM(EXECUTION_COUNT) FROM INFORMATION_SCHEMA.QUERY_STATISTICS"
+									+ " WHERE SQL_STATEMENT NOT LIKE 'SET %' AND SQL_STATEMENT NOT LIKE '%QUERY_STATISTICS%'")) {
+				statistics.next();
+				System.out.println(covered + "\t" + statistics.getLong(1) + "\t" + millis);
+			}
+		} finally {
+			connectionProvider.release(connection);
+			connectionProvider.close();
+		}
+	}
+}
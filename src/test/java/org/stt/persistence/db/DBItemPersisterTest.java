@@ -1,11 +1,11 @@
 package org.stt.persistence.db;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeThat;
 import static org.mockito.BDDMockito.given;
-import static org.mockito.Matchers.any;
-import static org.mockito.Mockito.times;
+import static org.mockito.BDDMockito.willThrow;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
@@ -14,21 +14,35 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import org.joda.time.DateTime;
+import org.joda.time.Duration;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.stt.model.ItemInserted;
 import org.stt.model.TimeTrackingItem;
+import org.stt.persistence.ItemReader;
+import org.stt.persistence.ItemReaderProvider;
+import org.stt.persistence.ListItemReader;
+import org.stt.persistence.PreCachingItemReaderProvider;
 import org.stt.persistence.db.h2.H2Configuration;
 import org.stt.persistence.db.h2.H2ConnectionProvider;
+import org.stt.persistence.db.h2.H2DBStorage;
+import org.stt.query.DNFClause;
+import org.stt.query.DefaultTimeTrackingItemQueries;
+import org.stt.query.TimeTrackingItemQueries;
 
 import com.google.common.base.Optional;
 
 
-
+
 public class DBItemPersisterTest {
 
 
@@ -43,6 +57,10 @@ public class DBItemPersisterTest {
 
 	private Connection connection;
 
+	private DBStorage storage;
+	// persists to storage instead of the mock
+	private DBItemPersister dbPersister;
+
 	@Before
 	public void setUp() throws ClassNotFoundException, SQLException {
 		MockitoAnnotations.initMocks(this);
@@ -54,7 +72,8 @@ public class DBItemPersisterTest {
 		this.connectionProvider = new H2ConnectionProvider(configuration);
 		connection = connectionProvider.acquire();
 
-		//this.dbStorage = new H2DBStorage(connectionProvider);
+		this.storage = new H2DBStorage(connectionProvider);
+		dbPersister = new DBItemPersister(storage);
 
 		sut = new DBItemPersister(dbStorage);
 	}
@@ -64,6 +83,8 @@ public class DBItemPersisterTest {
 		sut.close();
 
 		connectionProvider.release(connection);
+		// drops the named in memory database for the next test
+		connectionProvider.close();
 
 		assumeThat(connectionProvider.getOpenConnectionCount(), is(0));
 	}
@@ -83,17 +104,16 @@ public class DBItemPersisterTest {
 	public void writeCommentSucceeds() throws IOException, SQLException {
 
 		// GIVEN
-		given(dbStorage.getItemsInRange(any(), any())).willReturn(Collections.emptyList());
-		
 		DateTime startDate = DateTime.now().withMillisOfSecond(0);
 		TimeTrackingItem theItem = new TimeTrackingItem("the comment", startDate);
 
 		// WHEN
 		sut.insert(theItem);
-		
+
 		// THEN
-		verify(dbStorage).getItemsInRange(Optional.of(startDate), Optional.absent());
+		verify(dbStorage).resolveOverlapsWith(theItem);
 		verify(dbStorage).insertItemInDB(theItem);
+		verify(dbStorage).updateDailyTotals(startDate, Optional.<DateTime>absent());
 		verify(dbStorage).startTransaction();
 		verify(dbStorage).endTransaction();
 		verifyNoMoreInteractions(dbStorage);
@@ -103,63 +123,45 @@ public class DBItemPersisterTest {
 	public void writeStartSucceeds() throws IOException, SQLException {
 
 		// GIVEN
-		given(dbStorage.getItemsInRange(any(), any())).willReturn(Collections.emptyList());
-		
 		DateTime theTime = new DateTime(2011, 10, 12, 13, 14, 15);
 		TimeTrackingItem theItem = new TimeTrackingItem(null, theTime);
-		
+
 		// WHEN
-		sut.insert(theItem);
-		
+		dbPersister.insert(theItem);
+
 		// THEN
-		verify(dbStorage).getItemsInRange(Optional.of(theTime), Optional.absent());
-		verify(dbStorage).insertItemInDB(theItem);
-		verify(dbStorage).startTransaction();
-		verify(dbStorage).endTransaction();
-		verifyNoMoreInteractions(dbStorage);
+		assertThatDBContains(theItem);
 	}
 
 	@Test
 	public void writeEndSucceeds() throws IOException, SQLException {
 
 		// GIVEN
-		given(dbStorage.getItemsInRange(any(), any())).willReturn(Collections.emptyList());
-		
 		DateTime start = new DateTime(2011, 10, 12, 13, 14, 15);
 		DateTime end = new DateTime(2012, 10, 12, 13, 14, 15);
 
 		TimeTrackingItem theItem = new TimeTrackingItem(null, start, end);
 
 		// WHEN
-		sut.insert(theItem);
-		
+		dbPersister.insert(theItem);
+
 		// THEN
-		verify(dbStorage).getItemsInRange(Optional.of(start), Optional.of(end));
-		verify(dbStorage).insertItemInDB(theItem);
-		verify(dbStorage).startTransaction();
-		verify(dbStorage).endTransaction();
-		verifyNoMoreInteractions(dbStorage);
+		assertThatDBContains(theItem);
 	}
 
 	@Test
 	public void writeCompleteEntrySucceeds() throws IOException, SQLException {
 
 		// GIVEN
-		given(dbStorage.getItemsInRange(any(), any())).willReturn(Collections.emptyList());
-		
 		DateTime start = new DateTime(2011, 10, 12, 13, 14, 15);
 		DateTime end = new DateTime(2012, 10, 12, 13, 14, 15);
 		TimeTrackingItem theItem = new TimeTrackingItem("the comment", start, end);
 
 		// WHEN
-		sut.insert(theItem);
-		
+		dbPersister.insert(theItem);
+
 		// THEN
-		verify(dbStorage).getItemsInRange(Optional.of(start), Optional.of(end));
-		verify(dbStorage).insertItemInDB(theItem);
-		verify(dbStorage).startTransaction();
-		verify(dbStorage).endTransaction();
-		verifyNoMoreInteractions(dbStorage);
+		assertThatDBContains(theItem);
 	}
 
 	@Test
@@ -173,6 +175,7 @@ public class DBItemPersisterTest {
 
 		// THEN
 		verify(dbStorage).deleteItemInDB(theItem);
+		verify(dbStorage).updateDailyTotals(theItem.getStart(), Optional.of(theItem.getStart()));
 		verify(dbStorage).startTransaction();
 		verify(dbStorage).endTransaction();
 		verifyNoMoreInteractions(dbStorage);
@@ -188,38 +191,34 @@ public class DBItemPersisterTest {
 
 		// WHEN
 		sut.replace(theItem2, theItem);
-		
+
 		// THEN
 		verify(dbStorage).deleteItemInDB(theItem2);
 		verify(dbStorage).insertItemInDB(theItem);
+		verify(dbStorage).updateDailyTotals(theItem2.getStart(), Optional.of(theItem2.getStart()));
+		verify(dbStorage).updateDailyTotals(theItem.getStart(), Optional.of(theItem.getStart()));
 		verify(dbStorage).startTransaction();
 		verify(dbStorage).endTransaction();
 		verifyNoMoreInteractions(dbStorage);
 	}
 
-	@Test
-	public void shouldRemoveCoveredTimeIntervalsIfNewItemHasNoEnd() throws IOException, SQLException {
+	@Test
+	public void shouldRemoveCoveredTimeIntervalsIfNewItemHasNoEnd() throws IOException, SQLException {
 		DateTime startOfExistingItem = new DateTime(2011, 10, 10, 11, 12, 13);
 
 		// GIVEN
 		TimeTrackingItem existingItem = new TimeTrackingItem("testitem", startOfExistingItem);
-		
-		given(dbStorage.getItemsInRange(any(), any())).willReturn(Collections.singletonList(existingItem));
+		givenDBContains(existingItem);
 
 		TimeTrackingItem newItem = new TimeTrackingItem("testitem2", startOfExistingItem);
 
 		// WHEN
-		sut.insert(newItem);
-		
+		dbPersister.insert(newItem);
+
 		// THEN
-		verify(dbStorage).getItemsInRange(Optional.of(startOfExistingItem), Optional.absent());
-		verify(dbStorage).deleteItemInDB(existingItem);
-		verify(dbStorage).insertItemInDB(newItem);
-		verify(dbStorage).startTransaction();
-		verify(dbStorage).endTransaction();
-		verifyNoMoreInteractions(dbStorage);
+		assertThatDBContains(newItem);
 	}
-	
+
 	@Test
 	public void shouldRemoveCoveredTimeItem() throws IOException, SQLException {
 		DateTime startOfExistingItem1 = new DateTime(2011, 10, 10, 16, 14, 00);
@@ -232,21 +231,15 @@ public class DBItemPersisterTest {
 		TimeTrackingItem existingItem1 = new TimeTrackingItem("existingItem1", startOfExistingItem1, endOfExistingItem1);
 		TimeTrackingItem existingItem2 = new TimeTrackingItem("existingItem2", startOfExistingItem2, endOfExistingItem2);
 		TimeTrackingItem existingItem3 = new TimeTrackingItem("existingItem3", startOfExistingItem3);
-		
-		given(dbStorage.getItemsInRange(any(), any())).willReturn(Arrays.asList(existingItem1, existingItem2, existingItem3));
+		givenDBContains(existingItem1, existingItem2, existingItem3);
 
 		TimeTrackingItem newItem = new TimeTrackingItem("testitem", startOfExistingItem2, endOfExistingItem2);
 
 		// WHEN
-		sut.insert(newItem);
-		
+		dbPersister.insert(newItem);
+
 		// THEN
-		verify(dbStorage).getItemsInRange(Optional.of(startOfExistingItem2), Optional.of(endOfExistingItem2));
-		verify(dbStorage).deleteItemInDB(existingItem2);
-		verify(dbStorage).insertItemInDB(newItem);
-		verify(dbStorage).startTransaction();
-		verify(dbStorage).endTransaction();
-		verifyNoMoreInteractions(dbStorage);
+		assertThatDBContains(existingItem1, newItem, existingItem3);
 	}
 
 	@Test
@@ -254,8 +247,7 @@ public class DBItemPersisterTest {
 		// GIVEN
 		DateTime startOfExistingItem = new DateTime(2011, 10, 10, 11, 12, 13);
 		TimeTrackingItem existingItem = new TimeTrackingItem("testitem", startOfExistingItem);
-		
-		given(dbStorage.getItemsInRange(any(), any())).willReturn(Collections.singletonList(existingItem));
+		givenDBContains(existingItem);
 
 		DateTime startOfNewItem = new DateTime(2011, 10, 10, 11, 12, 14);
 		TimeTrackingItem newItem = new TimeTrackingItem("testitem2", startOfNewItem);
@@ -263,171 +255,123 @@ public class DBItemPersisterTest {
 		// WHEN
 		// |------
 		// |---
-		sut.insert(newItem);
+		dbPersister.insert(newItem);
 
 		// THEN
-		verify(dbStorage).getItemsInRange(Optional.of(startOfNewItem), Optional.absent());
-		verify(dbStorage).deleteItemInDB(existingItem);
-		verify(dbStorage).insertItemInDB(new TimeTrackingItem("testitem", startOfExistingItem, startOfNewItem));
-		verify(dbStorage).insertItemInDB(newItem);
-		verify(dbStorage, times(2)).startTransaction();
-		verify(dbStorage, times(2)).endTransaction();
-		verifyNoMoreInteractions(dbStorage);
+		assertThatDBContains(new TimeTrackingItem("testitem", startOfExistingItem, startOfNewItem), newItem);
 	}
 
-	@Test
-	public void shouldRemoveCoveredTimeIntervalsIfCoveredByNewItem() throws IOException, SQLException {
+	@Test
+	public void shouldRemoveCoveredTimeIntervalsIfCoveredByNewItem() throws IOException, SQLException {
 		DateTime startOfExistingItem = new DateTime(2011, 10, 10, 11, 12, 13);
 		DateTime endOfNewItem = new DateTime(2020, 10, 10, 11, 12, 13);
 
 		// GIVEN
 		TimeTrackingItem existingItem = new TimeTrackingItem("existing item", startOfExistingItem, endOfNewItem);
-		
-		given(dbStorage.getItemsInRange(any(), any())).willReturn(Collections.singletonList(existingItem));
+		givenDBContains(existingItem);
 
 		TimeTrackingItem newItem = new TimeTrackingItem("new item", startOfExistingItem, endOfNewItem);
 
 		// WHEN
-		sut.insert(newItem);
-		
+		dbPersister.insert(newItem);
+
 		// THEN
-		verify(dbStorage).getItemsInRange(Optional.of(startOfExistingItem), Optional.of(endOfNewItem));
-		verify(dbStorage).deleteItemInDB(existingItem);
-		verify(dbStorage).insertItemInDB(newItem);
-		verify(dbStorage).startTransaction();
-		verify(dbStorage).endTransaction();
-		verifyNoMoreInteractions(dbStorage);
-	}
-	
-	@Test
-	public void shouldReduceItemIfCoveredToEnd() throws IOException, SQLException {
-	
-		DateTime startOfExistingItem = new DateTime(2011, 10, 10, 11, 10, 13);
-		DateTime endOfExistingItem = new DateTime(2011, 10, 10, 11, 13, 13);
-		DateTime startOfNewItem = new DateTime(2011, 10, 10, 11, 12, 00);
-		DateTime endOfNewItem = endOfExistingItem;
-
-		// GIVEN
-		TimeTrackingItem existingItem = new TimeTrackingItem("existing item", startOfExistingItem, endOfExistingItem);
-		
-		given(dbStorage.getItemsInRange(any(), any())).willReturn(Collections.singletonList(existingItem));
-
-		TimeTrackingItem newItem = new TimeTrackingItem("new item", startOfNewItem, endOfNewItem);
-
-		// WHEN
-		sut.insert(newItem);
-		
-		// THEN
-		verify(dbStorage).getItemsInRange(Optional.of(startOfNewItem), Optional.of(endOfNewItem));
-		verify(dbStorage).deleteItemInDB(existingItem);
-		verify(dbStorage).insertItemInDB(new TimeTrackingItem("existing item", startOfExistingItem, startOfNewItem));
-		verify(dbStorage).insertItemInDB(newItem);
-		verify(dbStorage, times(2)).startTransaction();
-		verify(dbStorage, times(2)).endTransaction();
-		verifyNoMoreInteractions(dbStorage);
+		assertThatDBContains(newItem);
+	}
+
+	@Test
+	public void shouldReduceItemIfCoveredToEnd() throws IOException, SQLException {
+
+		DateTime startOfExistingItem = new DateTime(2011, 10, 10, 11, 10, 13);
+		DateTime endOfExistingItem = new DateTime(2011, 10, 10, 11, 13, 13);
+		DateTime startOfNewItem = new DateTime(2011, 10, 10, 11, 12, 00);
+		DateTime endOfNewItem = endOfExistingItem;
+
+		// GIVEN
+		TimeTrackingItem existingItem = new TimeTrackingItem("existing item", startOfExistingItem, endOfExistingItem);
+		givenDBContains(existingItem);
+
+		TimeTrackingItem newItem = new TimeTrackingItem("new item", startOfNewItem, endOfNewItem);
+
+		// WHEN
+		dbPersister.insert(newItem);
+
+		// THEN
+		assertThatDBContains(new TimeTrackingItem("existing item", startOfExistingItem, startOfNewItem), newItem);
 	}
 
-	@Test
-	public void shouldSplitOverlappingTimeIntervalWithEndIfNewItemEndsBefore()
+	@Test
+	public void shouldSplitOverlappingTimeIntervalWithEndIfNewItemEndsBefore()
 			throws IOException, SQLException {
 		DateTime startOfExistingItem = new DateTime(2011, 10, 10, 11, 12, 13);
 		DateTime endOfNewItem = new DateTime(2020, 10, 10, 11, 12, 13);
 		DateTime endOfExistingItem = endOfNewItem.plusMinutes(1);
 
-		
+
 		// GIVEN
 		TimeTrackingItem existingItem = new TimeTrackingItem("existing item", startOfExistingItem, endOfExistingItem);
-		
-		given(dbStorage.getItemsInRange(any(), any())).willReturn(Collections.singletonList(existingItem));
+		givenDBContains(existingItem);
 
 		TimeTrackingItem newItem = new TimeTrackingItem("new item", startOfExistingItem, endOfNewItem);
 
 		// WHEN
-		sut.insert(newItem);
+		dbPersister.insert(newItem);
 
 		// THEN
 		TimeTrackingItem splitItem = new TimeTrackingItem("existing item", endOfNewItem, endOfExistingItem);
-		
-		verify(dbStorage).getItemsInRange(Optional.of(startOfExistingItem), Optional.of(endOfNewItem));
-		verify(dbStorage).deleteItemInDB(existingItem);
-		verify(dbStorage).insertItemInDB(splitItem);
-		verify(dbStorage).insertItemInDB(newItem);
-		verify(dbStorage, times(2)).startTransaction();
-		verify(dbStorage, times(2)).endTransaction();
-		verifyNoMoreInteractions(dbStorage);
+		assertThatDBContains(newItem, splitItem);
 	}
 
-	@Test
-	public void shouldSplitOverlappingTimeIntervalWithoutEndIfNewItemEndsBefore()
+	@Test
+	public void shouldSplitOverlappingTimeIntervalWithoutEndIfNewItemEndsBefore()
 			throws IOException, SQLException {
 		DateTime startOfExistingItem = new DateTime(2011, 10, 10, 11, 12, 13);
 		DateTime endOfNewItem = new DateTime(2020, 10, 10, 11, 12, 13);
 
-		
+
 		// GIVEN
 		TimeTrackingItem existingItem = new TimeTrackingItem("existing item", startOfExistingItem);
-		
-		given(dbStorage.getItemsInRange(any(), any())).willReturn(Collections.singletonList(existingItem));
+		givenDBContains(existingItem);
 
 		TimeTrackingItem newItem = new TimeTrackingItem("new item", startOfExistingItem, endOfNewItem);
 
 		// WHEN
-		sut.insert(newItem);
-		
+		dbPersister.insert(newItem);
+
 		// THEN
-		verify(dbStorage).getItemsInRange(Optional.of(startOfExistingItem), Optional.of(endOfNewItem));
-		verify(dbStorage).deleteItemInDB(existingItem);
-		verify(dbStorage).insertItemInDB(new TimeTrackingItem("existing item", endOfNewItem));
-		verify(dbStorage).insertItemInDB(new TimeTrackingItem("new item", startOfExistingItem, endOfNewItem));
-		verify(dbStorage, times(2)).startTransaction();
-		verify(dbStorage, times(2)).endTransaction();
-		verifyNoMoreInteractions(dbStorage);
+		assertThatDBContains(newItem, new TimeTrackingItem("existing item", endOfNewItem));
 	}
 
 	@Test
 	public void shouldChangeEndOfIntervalBeforeRemoveOverlappingIntervalAndChangeStartOfIntervalAfter()
 			throws IOException, SQLException {
 		// GIVEN
-//		TimeTrackingItem itemBeforeBefore = new TimeTrackingItem("Item before before",
-//				new DateTime(2010, 10, 10, 11, 12, 13), new DateTime(2010, 10, 10, 11, 14, 13));
-		//sut.insert(itemBeforeBefore);
+		TimeTrackingItem itemBeforeBefore = new TimeTrackingItem("Item before before",
+				new DateTime(2010, 10, 10, 11, 12, 13), new DateTime(2010, 10, 10, 11, 14, 13));
 		TimeTrackingItem itemBefore = new TimeTrackingItem("Item before", new DateTime(2020, 10, 10, 11, 12, 13),
 				new DateTime(2020, 10, 10, 11, 14, 13));
-		//sut.insert(itemBefore);
 		TimeTrackingItem overlappedItem = new TimeTrackingItem("Overlapped item",
 				new DateTime(2020, 10, 10, 11, 14, 13), new DateTime(2020, 10, 10, 11, 15, 13));
-		//sut.insert(overlappedItem);
 		TimeTrackingItem itemAfter = new TimeTrackingItem("Item after", new DateTime(2020, 10, 10, 11, 15, 13),
 				new DateTime(2020, 10, 10, 11, 17, 13));
-		//sut.insert(itemAfter);
-//		TimeTrackingItem itemAfterAfter = new TimeTrackingItem("Item even after",
-//				new DateTime(2020, 10, 10, 11, 17, 13), new DateTime(2020, 10, 10, 11, 19, 13));
-		//sut.insert(itemAfterAfter);
+		TimeTrackingItem itemAfterAfter = new TimeTrackingItem("Item even after",
+				new DateTime(2020, 10, 10, 11, 17, 13), new DateTime(2020, 10, 10, 11, 19, 13));
+		givenDBContains(itemBeforeBefore, itemBefore, overlappedItem, itemAfter, itemAfterAfter);
 
-		given(dbStorage.getItemsInRange(any(), any())).willReturn(Arrays.asList(itemBefore, overlappedItem, itemAfter));
-		
 		DateTime startOfNewItem = new DateTime(2020, 10, 10, 11, 13, 13);
 		DateTime endOfNewItem = new DateTime(2020, 10, 10, 11, 16, 13);
 		TimeTrackingItem newItem = new TimeTrackingItem("new item", startOfNewItem,
 				endOfNewItem);
 
 		// WHEN
-		sut.insert(newItem);
+		dbPersister.insert(newItem);
 
 		// THEN
-		
-		verify(dbStorage).getItemsInRange(Optional.of(startOfNewItem), Optional.of(endOfNewItem));
-		verify(dbStorage).deleteItemInDB(itemBefore);
-		verify(dbStorage).insertItemInDB(new TimeTrackingItem("Item before", new DateTime(2020, 10, 10, 11, 12, 13),
-						startOfNewItem));
-		verify(dbStorage).deleteItemInDB(overlappedItem);
-		verify(dbStorage).deleteItemInDB(itemAfter);
-		verify(dbStorage).insertItemInDB(new TimeTrackingItem("Item after", endOfNewItem,
-						new DateTime(2020, 10, 10, 11, 17, 13)));
-		verify(dbStorage).insertItemInDB(newItem);
-		verify(dbStorage, times(3)).startTransaction();
-		verify(dbStorage, times(3)).endTransaction();
-		verifyNoMoreInteractions(dbStorage);
+		assertThatDBContains(itemBeforeBefore,
+				new TimeTrackingItem("Item before", new DateTime(2020, 10, 10, 11, 12, 13), startOfNewItem),
+				newItem,
+				new TimeTrackingItem("Item after", endOfNewItem, new DateTime(2020, 10, 10, 11, 17, 13)),
+				itemAfterAfter);
 	}
 
 	@Test
@@ -436,100 +380,77 @@ public class DBItemPersisterTest {
 		DateTime startOfExistingItem = new DateTime(2012, 1, 1, 10, 0, 0);
 		DateTime endOfExistingItem = new DateTime(2012, 1, 1, 13, 0, 0);
 		TimeTrackingItem coveringItem = new TimeTrackingItem("covering", startOfExistingItem, endOfExistingItem);
+		givenDBContains(coveringItem);
 
 		DateTime startOfNewItem = new DateTime(2012, 1, 1, 11, 0, 0);
 		DateTime endOfNewItem = new DateTime(2012, 1, 1, 12, 0, 0);
-		
-		given(dbStorage.getItemsInRange(Optional.of(startOfNewItem), Optional.of(endOfNewItem))).willReturn(Collections.singletonList(coveringItem));
-		
+
 		// WHEN
 		TimeTrackingItem coveredItem = new TimeTrackingItem("newItem", startOfNewItem, endOfNewItem);
-		sut.insert(coveredItem);
-		
-		// THEN		
-		verify(dbStorage).getItemsInRange(Optional.of(startOfNewItem), Optional.of(endOfNewItem));
-		verify(dbStorage).deleteItemInDB(coveringItem);
-		verify(dbStorage).insertItemInDB(new TimeTrackingItem("covering", startOfExistingItem, startOfNewItem));
-		verify(dbStorage).insertItemInDB(new TimeTrackingItem("newItem", startOfNewItem, endOfNewItem));
-		verify(dbStorage).insertItemInDB(new TimeTrackingItem("covering", endOfNewItem, endOfExistingItem));
-		verify(dbStorage).startTransaction();
-		verify(dbStorage).endTransaction();
-		verifyNoMoreInteractions(dbStorage);
+		dbPersister.insert(coveredItem);
+
+		// THEN
+		assertThatDBContains(new TimeTrackingItem("covering", startOfExistingItem, startOfNewItem),
+				new TimeTrackingItem("newItem", startOfNewItem, endOfNewItem),
+				new TimeTrackingItem("covering", endOfNewItem, endOfExistingItem));
 	}
-	
+
 	@Test
 	public void shouldEndExistingItem() throws IOException, SQLException {
 		// GIVEN
 		DateTime startOfExistingItem = new DateTime(2012, 1, 1, 10, 0, 0);
 		DateTime endOfExistingItem = new DateTime(2012, 1, 1, 13, 0, 0);
 		TimeTrackingItem coveringItem = new TimeTrackingItem("covering", startOfExistingItem, endOfExistingItem);
+		givenDBContains(coveringItem);
 
 		DateTime startOfNewItem = new DateTime(2012, 1, 1, 11, 0, 0);
-		
-		given(dbStorage.getItemsInRange(Optional.of(startOfNewItem), Optional.absent())).willReturn(Collections.singletonList(coveringItem));
-		
+
 		// WHEN
 		TimeTrackingItem coveredItem = new TimeTrackingItem("newItem", startOfNewItem);
-		sut.insert(coveredItem);
-		
-		// THEN		
-		verify(dbStorage).getItemsInRange(Optional.of(startOfNewItem), Optional.absent());
-		verify(dbStorage).deleteItemInDB(coveringItem);
-		verify(dbStorage).insertItemInDB(new TimeTrackingItem("covering", startOfExistingItem, startOfNewItem));
-		verify(dbStorage).insertItemInDB(new TimeTrackingItem("newItem", startOfNewItem));
-		verify(dbStorage, times(2)).startTransaction();
-		verify(dbStorage, times(2)).endTransaction();
-		verifyNoMoreInteractions(dbStorage);
+		dbPersister.insert(coveredItem);
+
+		// THEN
+		assertThatDBContains(new TimeTrackingItem("covering", startOfExistingItem, startOfNewItem),
+				new TimeTrackingItem("newItem", startOfNewItem));
 	}
-	
+
 	@Test
 	public void shouldNotChangeUncoveredItem() throws IOException, SQLException {
 		// GIVEN
 		DateTime startOfExistingItem = new DateTime(2012, 1, 1, 10, 0, 0);
 		DateTime endOfExistingItem = new DateTime(2012, 1, 1, 13, 0, 0);
 		TimeTrackingItem coveringItem = new TimeTrackingItem("covering", startOfExistingItem, endOfExistingItem);
+		givenDBContains(coveringItem);
 
 		DateTime startOfNewItem = endOfExistingItem;
 		DateTime endOfNewItem = new DateTime(2012, 1, 1, 14, 0, 0);
-		
-		given(dbStorage.getItemsInRange(Optional.of(startOfNewItem), Optional.of(endOfNewItem))).willReturn(Collections.singletonList(coveringItem));
-		
+
 		// WHEN
 		TimeTrackingItem newItem = new TimeTrackingItem("newItem", startOfNewItem, endOfNewItem);
-		sut.insert(newItem);
-		
-		// THEN		
-		verify(dbStorage).getItemsInRange(Optional.of(startOfNewItem), Optional.of(endOfNewItem));
-		verify(dbStorage).insertItemInDB(new TimeTrackingItem("newItem", startOfNewItem, endOfNewItem));
-		verify(dbStorage).startTransaction();
-		verify(dbStorage).endTransaction();
-		verifyNoMoreInteractions(dbStorage);
+		dbPersister.insert(newItem);
+
+		// THEN
+		assertThatDBContains(coveringItem, newItem);
 	}
-	
+
 	@Test
 	public void shouldSplitItemWithoutEnd() throws IOException, SQLException {
 		// GIVEN
 		DateTime startOfExistingItem = new DateTime(2012, 1, 1, 10, 0, 0);
 		TimeTrackingItem coveringItem = new TimeTrackingItem("covering", startOfExistingItem);
+		givenDBContains(coveringItem);
 
 		DateTime startOfNewItem = new DateTime(2012, 1, 1, 11, 0, 0);
 		DateTime endOfNewItem = new DateTime(2012, 1, 1, 12, 0, 0);
-		
-		given(dbStorage.getItemsInRange(Optional.of(startOfNewItem), Optional.of(endOfNewItem))).willReturn(Collections.singletonList(coveringItem));
-		
+
 		// WHEN
 		TimeTrackingItem coveredItem = new TimeTrackingItem("newItem", startOfNewItem, endOfNewItem);
-		sut.insert(coveredItem);
-		
-		// THEN		
-		verify(dbStorage).getItemsInRange(Optional.of(startOfNewItem), Optional.of(endOfNewItem));
-		verify(dbStorage).deleteItemInDB(coveringItem);
-		verify(dbStorage).insertItemInDB(new TimeTrackingItem("covering", startOfExistingItem, startOfNewItem));
-		verify(dbStorage).insertItemInDB(new TimeTrackingItem("newItem", startOfNewItem, endOfNewItem));
-		verify(dbStorage).insertItemInDB(new TimeTrackingItem("covering", endOfNewItem));
-		verify(dbStorage).startTransaction();
-		verify(dbStorage).endTransaction();
-		verifyNoMoreInteractions(dbStorage);
+		dbPersister.insert(coveredItem);
+
+		// THEN
+		assertThatDBContains(new TimeTrackingItem("covering", startOfExistingItem, startOfNewItem),
+				new TimeTrackingItem("newItem", startOfNewItem, endOfNewItem),
+				new TimeTrackingItem("covering", endOfNewItem));
 	}
 
 	@Test
@@ -538,30 +459,26 @@ public class DBItemPersisterTest {
 		DateTime startOfExistingItem = new DateTime(2010, 10, 10, 11, 12, 13);
 		DateTime endOfExistingItem = new DateTime(2010, 10, 10, 11, 14, 13);
 		TimeTrackingItem oldItem = new TimeTrackingItem("old item", startOfExistingItem, endOfExistingItem);
+		givenDBContains(oldItem);
 
-		given(dbStorage.getItemsInRange(Optional.of(endOfExistingItem), Optional.absent())).willReturn(Collections.singletonList(oldItem));
 		TimeTrackingItem newItem = new TimeTrackingItem("new item", endOfExistingItem);
 
 		// WHEN
-		sut.insert(newItem);
-		
+		dbPersister.insert(newItem);
+
 		// THEN
-		verify(dbStorage).getItemsInRange(Optional.of(endOfExistingItem), Optional.absent());
-		verify(dbStorage).insertItemInDB(newItem);
-		verify(dbStorage).startTransaction();
-		verify(dbStorage).endTransaction();
-		verifyNoMoreInteractions(dbStorage);
+		assertThatDBContains(oldItem, newItem);
 	}
-	
+
 	@Test
 	public void shouldRollbackOnFail() throws SQLException, IOException
 	{
 		// GIVEN
 		DateTime startOfNewItem = new DateTime(2010, 10, 10, 11, 14, 13);
-
-		given(dbStorage.getItemsInRange(Optional.of(startOfNewItem), Optional.absent())).willThrow(new SQLException());
 		TimeTrackingItem newItem = new TimeTrackingItem("new item", startOfNewItem);
 
+		willThrow(new SQLException()).given(dbStorage).resolveOverlapsWith(newItem);
+
 		// WHEN
 		try {
 			sut.insert(newItem);
@@ -569,14 +486,87 @@ public class DBItemPersisterTest {
 		} catch (Exception e) {
 			// Nothing to do
 		}
-		
+
 		// THEN
-		
-		verify(dbStorage).getItemsInRange(Optional.of(startOfNewItem), Optional.absent());
+
+		verify(dbStorage).resolveOverlapsWith(newItem);
 		verify(dbStorage).startTransaction();
 		verify(dbStorage).rollback();
 		verify(dbStorage).endTransaction();
 		verifyNoMoreInteractions(dbStorage);
 	}
 
+	@Test
+	public void shouldResolveOverlapsLikeSttPersister() throws IOException, SQLException {
+		Random random = new Random(42);
+		// items span midnight, so the daily totals of several days change
+		DateTime base = new DateTime(2015, 1, 1, 16, 0, 0);
+		DateTime ongoingUntil = base.plusDays(1);
+		for (int round = 0; round < 20; round++) {
+			for (TimeTrackingItem item : storage.getAllItems()) {
+				dbPersister.delete(item);
+			}
+			// applies inserts like the STT persister
+			PreCachingItemReaderProvider reference = new PreCachingItemReaderProvider(
+					readerProviderOf(Collections.<TimeTrackingItem>emptyList()));
+			reference.getItems();
+			for (int i = 0; i < 30; i++) {
+				DateTime start = base.plusMinutes(random.nextInt(48) * 15);
+				TimeTrackingItem item = random.nextInt(5) == 0 ? new TimeTrackingItem("item " + i % 7, start)
+						: new TimeTrackingItem("item " + i % 7, start, start.plusMinutes((1 + random.nextInt(12)) * 15));
+
+				dbPersister.insert(item);
+				reference.itemInserted(new ItemInserted(item));
+
+				assertThat(item.toString(), storage.getAllItems(), is(reference.getItems()));
+				TimeTrackingItemQueries referenceQueries = new DefaultTimeTrackingItemQueries(
+						readerProviderOf(reference.getItems()));
+				DNFClause lastDay = new DNFClause().withStartNotBefore(base.plusDays(1).withTimeAtStartOfDay());
+				assertThat(item.toString(), storage.sumDurationsByDayAndComment(new DNFClause(), ongoingUntil),
+						is(referenceQueries.sumDurationsByDayAndComment(new DNFClause(), ongoingUntil)));
+				assertThat(item.toString(), storage.sumDurationsByComment(lastDay, ongoingUntil),
+						is(referenceQueries.sumDurationsByComment(lastDay, ongoingUntil)));
+			}
+		}
+	}
+
+	@Test
+	public void rebuildingShouldKeepMaintainedDailyTotals() throws IOException, SQLException {
+		// GIVEN
+		DateTime start = new DateTime(2015, 1, 1, 23, 0, 0);
+		dbPersister.insert(new TimeTrackingItem("first", start, start.plusHours(2)));
+		dbPersister.insert(new TimeTrackingItem("second", start.plusHours(2), start.plusHours(3)));
+		dbPersister.insert(new TimeTrackingItem("first", start.plusHours(1), start.plusHours(4)));
+		DNFClause days = new DNFClause().withStartNotBefore(start.withTimeAtStartOfDay());
+		Map<DateTime, Map<String, Duration>> maintained = storage.sumDurationsByDayAndComment(days, start);
+
+		// WHEN
+		storage.rebuildDailyTotals();
+
+		// THEN
+		assertThat(storage.sumDurationsByDayAndComment(days, start), is(maintained));
+		Map<String, Duration> expected = new HashMap<>();
+		expected.put("first", Duration.standardHours(4));
+		assertThat(storage.sumDurationsByComment(days, start), is(expected));
+	}
+
+	private static ItemReaderProvider readerProviderOf(final List<TimeTrackingItem> items) {
+		return new ItemReaderProvider() {
+			@Override
+			public ItemReader provideReader() {
+				return new ListItemReader(items);
+			}
+		};
+	}
+
+	private void givenDBContains(TimeTrackingItem... items) throws SQLException {
+		for (TimeTrackingItem item : items) {
+			storage.insertItemInDB(item);
+		}
+	}
+
+	private void assertThatDBContains(TimeTrackingItem... items) throws SQLException {
+		assertThat(storage.getAllItems(), is(Arrays.asList(items)));
+	}
+
 }
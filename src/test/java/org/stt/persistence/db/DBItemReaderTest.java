@@ -6,6 +6,8 @@ import static org.mockito.BDDMockito.given;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.hamcrest.Matchers;
 import org.joda.time.DateTime;
@@ -55,6 +57,8 @@ public class DBItemReaderTest {
 		sut.close();
 		
 		connectionProvider.release(connection);
+		// drops the named in memory database for the next test
+		connectionProvider.close();
 		
 		Assume.assumeThat(connectionProvider.getOpenConnectionCount(), is(0));
 	}
@@ -106,4 +110,32 @@ public class DBItemReaderTest {
 	}
 
 
+	@Test
+	public void shouldStreamItemsInOrderAndReleaseConnection() throws SQLException {
+
+		// GIVEN
+		sut = new DBItemReader(new H2DBStorage(connectionProvider, 1, 3));
+		List<TimeTrackingItem> items = new ArrayList<>();
+		for (int i = 9; i >= 0; i--) {
+			TimeTrackingItem item = new TimeTrackingItem("item " + i, new DateTime(2012, 10, 10, 10, i, 0),
+					new DateTime(2012, 10, 10, 10, i + 1, 0));
+			dbStorage.insertItemInDB(item);
+			items.add(0, item);
+		}
+
+		// WHEN
+		List<TimeTrackingItem> readItems = new ArrayList<>();
+		readItems.add(sut.read().get());
+		int openConnectionsWhileReading = connectionProvider.getOpenConnectionCount();
+		Optional<TimeTrackingItem> item;
+		while ((item = sut.read()).isPresent()) {
+			readItems.add(item.get());
+		}
+
+		// THEN
+		Assert.assertThat(readItems, Matchers.is(items));
+		Assert.assertThat(openConnectionsWhileReading, Matchers.is(2));
+		Assert.assertThat(connectionProvider.getOpenConnectionCount(), Matchers.is(1));
+	}
+
 }
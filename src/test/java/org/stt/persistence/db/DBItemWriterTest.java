@@ -2,14 +2,20 @@ package org.stt.persistence.db;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Arrays;
 
 import org.hamcrest.Matchers;
 import org.joda.time.DateTime;
+import org.jooq.exception.DataAccessException;
 import org.junit.After;
 import org.junit.Assume;
 import org.junit.Before;
@@ -17,6 +23,7 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.stt.model.TimeTrackingItem;
+import org.stt.persistence.ListItemReader;
 import org.stt.persistence.db.h2.H2Configuration;
 import org.stt.persistence.db.h2.H2ConnectionProvider;
 import org.stt.persistence.db.h2.H2DBStorage;
@@ -54,6 +61,8 @@ public class DBItemWriterTest {
 		sut.close();
 		
 		connectionProvider.release(connection);
+		// drops the named in memory database for the next test
+		connectionProvider.close();
 		
 		Assume.assumeThat(connectionProvider.getOpenConnectionCount(), is(0));
 	}
@@ -69,6 +78,40 @@ public class DBItemWriterTest {
 		// THEN
 		assertThat(dbStorage.getAllItems(), Matchers.contains(item));
 	}
+
+	@Test
+	public void shouldWriteAllItemsToDB() throws IOException, SQLException {
+		// GIVEN
+		TimeTrackingItem first = new TimeTrackingItem("first", new DateTime(7500000L), new DateTime(7600000L));
+		TimeTrackingItem second = new TimeTrackingItem("second", new DateTime(7600000L));
+
+		// WHEN
+		int count = sut.writeAll(new ListItemReader(Arrays.asList(first, second)));
+
+		// THEN
+		assertThat(count, is(2));
+		assertThat(dbStorage.getAllItems(), Matchers.contains(first, second));
+	}
+
+	@Test
+	public void failedWriteShouldEndTransaction() throws IOException, SQLException {
+		// GIVEN
+		DBStorage failingStorage = mock(DBStorage.class);
+		TimeTrackingItem item = new TimeTrackingItem("Test", new DateTime(7500000L));
+		willThrow(new DataAccessException("test")).given(failingStorage).insertItemInDB(item);
+
+		// WHEN
+		try {
+			new DBItemWriter(failingStorage).write(item);
+			fail("Should throw exception");
+		} catch (DataAccessException e) {
+			// Nothing to do
+		}
+
+		// THEN
+		verify(failingStorage).startTransaction();
+		verify(failingStorage).endTransaction();
+	}
 	
 	
 
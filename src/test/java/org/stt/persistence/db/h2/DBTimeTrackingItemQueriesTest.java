@@ -2,6 +2,8 @@ package org.stt.persistence.db.h2;
 
 import static org.hamcrest.CoreMatchers.anyOf;
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertNotNull;
@@ -16,12 +18,18 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
 
 import org.hamcrest.CoreMatchers;
 import org.hamcrest.Matchers;
 import org.hamcrest.collection.IsCollectionWithSize;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
 import org.joda.time.Interval;
 import org.joda.time.LocalDate;
 import org.junit.After;
@@ -35,6 +43,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.stt.model.TimeTrackingItem;
 import org.stt.query.DNFClause;
+import org.stt.query.DNFClauseMatcher;
 import org.stt.query.TimeTrackingItemQueries;
 
 import com.google.common.base.Optional;
@@ -82,6 +91,7 @@ public class DBTimeTrackingItemQueriesTest {
 		{
 			dbStorage.insertItemInDB(item);
 		}
+		dbStorage.rebuildDailyTotals();
 	}
 
     @Test
@@ -125,6 +135,76 @@ public class DBTimeTrackingItemQueriesTest {
         return items;
     }
 
+    @Test
+    public void shouldSumDurationsByComment() throws SQLException {
+        // GIVEN
+        DateTime start = new DateTime(2015, 1, 3, 8, 0);
+        givenDBContains(new TimeTrackingItem("work", start, start.plusHours(2)),
+                new TimeTrackingItem(null, start.plusHours(2), start.plusHours(3)),
+                new TimeTrackingItem("work", start.plusHours(3), start.plusHours(4)),
+                new TimeTrackingItem("pause", start.plusHours(4)));
+
+        // WHEN
+        Map<String, Duration> result = sut.sumDurationsByComment(new DNFClause(), start.plusHours(5));
+
+        // THEN
+        Map<String, Duration> expected = new HashMap<>();
+        expected.put("work", Duration.standardHours(3));
+        expected.put("", Duration.standardHours(1));
+        expected.put("pause", Duration.standardHours(1));
+        assertThat(result, is(expected));
+    }
+
+    @Test
+    public void shouldSumDurationsOfMatchingItemsByDayAndComment() throws SQLException {
+        // GIVEN
+        DateTime start = new DateTime(2015, 1, 3, 23, 0);
+        givenDBContains(new TimeTrackingItem("before", start.minusDays(1), start.minusDays(1).plusHours(1)),
+                new TimeTrackingItem("work", start, start.plusHours(2)),
+                new TimeTrackingItem("work", start.plusHours(2), start.plusHours(3)));
+        DNFClause dnfClause = new DNFClause();
+        dnfClause.withStartNotBefore(start);
+
+        // WHEN
+        SortedMap<DateTime, Map<String, Duration>> result = sut.sumDurationsByDayAndComment(dnfClause,
+                start.plusHours(5));
+
+        // THEN
+        assertThat(result.keySet(), contains(start.withTimeAtStartOfDay(), start.plusDays(1).withTimeAtStartOfDay()));
+        assertThat(result.get(start.withTimeAtStartOfDay()),
+                is(Collections.singletonMap("work", Duration.standardHours(2))));
+        assertThat(result.get(start.plusDays(1).withTimeAtStartOfDay()),
+                is(Collections.singletonMap("work", Duration.standardHours(1))));
+    }
+
+    @Test
+    public void dailyTotalsShouldFollowChangedTimeZone() throws SQLException {
+        // GIVEN
+        DateTimeZone defaultZone = DateTimeZone.getDefault();
+        DateTimeZone newYork = DateTimeZone.forID("America/New_York");
+        try {
+            DateTimeZone.setDefault(DateTimeZone.forID("Europe/Berlin"));
+            DateTime start = new DateTime(2015, 1, 3, 22, 0);
+            givenDBContains(new TimeTrackingItem("work", start, start.plusHours(3)),
+                    new TimeTrackingItem("pause", start.plusHours(3), start.plusHours(4)));
+            DateTimeZone.setDefault(newYork);
+            H2DBStorage restarted = new H2DBStorage(connectionProvider);
+
+            // WHEN
+            SortedMap<DateTime, Map<String, Duration>> result = restarted
+                    .sumDurationsByDayAndComment(new DNFClause(), start.plusHours(5));
+
+            // THEN
+            Map<String, Duration> expected = new HashMap<>();
+            expected.put("work", Duration.standardHours(3));
+            expected.put("pause", Duration.standardHours(1));
+            assertThat(result, is((Map<DateTime, Map<String, Duration>>) Collections
+                    .singletonMap(new DateTime(2015, 1, 3, 0, 0, newYork), expected)));
+        } finally {
+            DateTimeZone.setDefault(defaultZone);
+        }
+    }
+
     @Test
     public void shouldNotFindCurrentItemIfNoneCanBeRead() {
         // GIVEN
@@ -395,6 +475,125 @@ public class DBTimeTrackingItemQueriesTest {
     }
 
 
+    @Test
+    public void shouldReturnItemsWithCommentContainingAllTrigrams() throws SQLException {
+        // GIVEN
+        TimeTrackingItem expectedResult = new TimeTrackingItem("review pull request", new DateTime(8000), new DateTime(9000));
+        givenDBContains(expectedResult, new TimeTrackingItem("pull review request", new DateTime(9000), new DateTime(10000)),
+                new TimeTrackingItem("review pull request", new DateTime(10000), new DateTime(11000)));
+        dbStorage.deleteItemInDB(new TimeTrackingItem("review pull request", new DateTime(10000), new DateTime(11000)));
+        DNFClause dnfClause = new DNFClause();
+        dnfClause.withCommentContains("w pull");
+
+        // WHEN
+        Collection<TimeTrackingItem> result = sut.queryItems(dnfClause);
+
+        // THEN
+        assertThat(result, CoreMatchers.<Collection<TimeTrackingItem>>is(Collections.singletonList(expectedResult)));
+    }
+
+    @Test
+    public void shouldReturnItemsWithCommentContainingStringShorterThanTrigram() throws SQLException {
+        // GIVEN
+        TimeTrackingItem expectedResult = new TimeTrackingItem("ab", new DateTime(8000), new DateTime(9000));
+        givenDBContains(expectedResult, new TimeTrackingItem("ba", new DateTime(9000), new DateTime(10000)));
+        DNFClause dnfClause = new DNFClause();
+        dnfClause.withCommentContains("b");
+
+        // WHEN
+        Collection<TimeTrackingItem> result = sut.queryItems(dnfClause);
+
+        // THEN
+        assertThat(result, CoreMatchers.<Collection<TimeTrackingItem>>is(Arrays.asList(expectedResult,
+                new TimeTrackingItem("ba", new DateTime(9000), new DateTime(10000)))));
+    }
+
+    @Test
+    public void shouldReturnItemsWithCommentContainingWildcards() throws SQLException {
+        // GIVEN
+        TimeTrackingItem expectedResult = new TimeTrackingItem("100% done_", new DateTime(8000), new DateTime(9000));
+        givenDBContains(expectedResult, new TimeTrackingItem("1000 done", new DateTime(9000), new DateTime(10000)),
+                new TimeTrackingItem(null, new DateTime(10000)));
+        DNFClause dnfClause = new DNFClause();
+        dnfClause.withCommentContains("0% done_");
+
+        // WHEN
+        Collection<TimeTrackingItem> result = sut.queryItems(dnfClause);
+
+        // THEN
+        assertThat(result, CoreMatchers.<Collection<TimeTrackingItem>>is(Collections.singletonList(expectedResult)));
+    }
+
+    @Test
+    public void shouldReturnLatestDistinctComments() throws SQLException {
+        // GIVEN
+        givenDBContains(new TimeTrackingItem("a", new DateTime(1000), new DateTime(2000)),
+                new TimeTrackingItem("b", new DateTime(2000), new DateTime(3000)),
+                new TimeTrackingItem("a", new DateTime(3000), new DateTime(4000)),
+                new TimeTrackingItem("c", new DateTime(4000), new DateTime(5000)),
+                new TimeTrackingItem("b", new DateTime(5000), new DateTime(6000)),
+                new TimeTrackingItem(null, new DateTime(6000)));
+
+        // WHEN
+        List<String> latest = sut.queryLatestComments(new DNFClause(), 2);
+        List<String> all = sut.queryLatestComments(new DNFClause(), Integer.MAX_VALUE);
+
+        // THEN
+        assertThat(latest, is(Arrays.asList("b", "c")));
+        assertThat(all, is(Arrays.asList("b", "c", "a")));
+    }
+
+    @Test
+    public void latestCommentsShouldContinueAcrossChunks() throws SQLException {
+        // GIVEN
+        H2DBStorage smallChunks = new H2DBStorage(connectionProvider, H2DBStorage.DEFAULT_BATCH_SIZE, 2);
+        givenDBContains(new TimeTrackingItem("work a", new DateTime(1000), new DateTime(2000)),
+                new TimeTrackingItem("pause", new DateTime(2000), new DateTime(3000)),
+                new TimeTrackingItem("work b", new DateTime(3000), new DateTime(3000)),
+                new TimeTrackingItem("work c", new DateTime(3000), new DateTime(4000)),
+                new TimeTrackingItem("pause", new DateTime(4000), new DateTime(5000)),
+                new TimeTrackingItem("work d", new DateTime(5000), new DateTime(6000)),
+                new TimeTrackingItem("work d", new DateTime(6000)));
+        dbStorage.deleteItemInDB(new TimeTrackingItem("work a", new DateTime(1000), new DateTime(2000)));
+        givenDBContains(new TimeTrackingItem("work e", new DateTime(1000), new DateTime(2000)));
+        DNFClause dnfClause = new DNFClause();
+        dnfClause.withCommentContains("work");
+
+        // WHEN
+        List<String> result = smallChunks.queryLatestComments(dnfClause, Integer.MAX_VALUE);
+
+        // THEN
+        assertThat(result, containsInAnyOrder("work d", "work c", "work b", "work e"));
+        assertThat(result.get(0), is("work d"));
+        assertThat(result.get(3), is("work e"));
+    }
+
+    @Test
+    public void queryItemsShouldMatchClauseMatcherForBoundsWithMillis() throws SQLException {
+        // GIVEN
+        TimeTrackingItem[] items = givenOneTTIPerHourStartingWith(new DateTime(2000, 1, 1, 0, 0), 10);
+        givenDBContains(new TimeTrackingItem("current", new DateTime(2000, 1, 1, 10, 0)));
+        DateTime bound = new DateTime(2000, 1, 1, 3, 0, 0, 500);
+
+        for (DNFClause dnfClause : Arrays.asList(new DNFClause().withStartNotBefore(bound),
+                new DNFClause().withStartBefore(bound), new DNFClause().withEndNotAfter(bound),
+                new DNFClause().withEndBefore(bound), new DNFClause().withStartNotBefore(items[3].getStart())
+                        .withEndBefore(items[6].getEnd().get()))) {
+            // WHEN
+            Collection<TimeTrackingItem> result = sut.queryItems(dnfClause);
+
+            // THEN
+            DNFClauseMatcher matcher = new DNFClauseMatcher(dnfClause);
+            Collection<TimeTrackingItem> expected = new ArrayList<>();
+            for (TimeTrackingItem item : dbStorage.getAllItems()) {
+                if (matcher.matches(item)) {
+                    expected.add(item);
+                }
+            }
+            assertThat(result, is(expected));
+        }
+    }
+
     private Collection<DateTime> mapItemToStartDateTime(Collection<TimeTrackingItem> items) {
         ArrayList<DateTime> result = new ArrayList<>();
         for (TimeTrackingItem item: items) {
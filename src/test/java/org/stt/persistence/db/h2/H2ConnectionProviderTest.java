@@ -0,0 +1,230 @@
+package org.stt.persistence.db.h2;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.jooq.exception.DataAccessException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class H2ConnectionProviderTest {
+
+	@Mock
+	H2Configuration configuration;
+
+	private H2ConnectionProvider sut;
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	@Before
+	public void setUp() throws Exception {
+		MockitoAnnotations.initMocks(this);
+
+		given(configuration.getDatabase()).willReturn("mem:");
+		given(configuration.getUserName()).willReturn("test");
+		given(configuration.getPassword()).willReturn("");
+
+		sut = new H2ConnectionProvider(configuration, 1, 200);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+		sut.close();
+	}
+
+	@Test
+	public void nestedAcquireShouldReturnSameConnection() {
+		// GIVEN
+		Connection outer = sut.acquire();
+
+		// WHEN
+		Connection inner = sut.acquire();
+
+		// THEN
+		assertThat(inner, sameInstance(outer));
+		assertThat(sut.getOpenConnectionCount(), is(2));
+		sut.release(inner);
+		sut.release(outer);
+		assertThat(sut.getOpenConnectionCount(), is(0));
+		assertThat(sut.getLeaseCount(), is(1L));
+	}
+
+	@Test
+	public void releasedConnectionShouldBeReused() {
+		// GIVEN
+		Connection first = sut.acquire();
+		sut.release(first);
+
+		// WHEN
+		Connection second = sut.acquire();
+
+		// THEN
+		assertThat(second, sameInstance(first));
+		sut.release(second);
+	}
+
+	@Test
+	public void otherThreadShouldWaitForReleasedConnection() throws Exception {
+		// GIVEN
+		Connection connection = sut.acquire();
+		final CountDownLatch waiting = new CountDownLatch(1);
+
+		// WHEN
+		Future<Connection> other = executor.submit(new Callable<Connection>() {
+			@Override
+			public Connection call() {
+				waiting.countDown();
+				Connection result = sut.acquire();
+				sut.release(result);
+				return result;
+			}
+		});
+		waiting.await();
+		Thread.sleep(50);
+		sut.release(connection);
+
+		// THEN
+		assertThat(other.get(), sameInstance(connection));
+		assertThat(sut.getMaxLeaseWaitTime(TimeUnit.MILLISECONDS), is(greaterThanOrEqualTo(40L)));
+	}
+
+	@Test(expected = DataAccessException.class)
+	public void acquireShouldTimeOutIfPoolIsExhausted() throws Throwable {
+		// GIVEN
+		sut.acquire();
+
+		// WHEN
+		Future<Connection> other = executor.submit(new Callable<Connection>() {
+			@Override
+			public Connection call() {
+				return sut.acquire();
+			}
+		});
+
+		// THEN
+		try {
+			other.get();
+		} catch (ExecutionException e) {
+			throw e.getCause();
+		}
+	}
+
+	@Test
+	public void connectionReleasedInTransactionShouldBeRolledBack() throws Exception {
+		// GIVEN
+		Connection connection = sut.acquire();
+		connection.createStatement().execute("CREATE TABLE T(X INT)");
+		connection.setAutoCommit(false);
+		connection.createStatement().execute("INSERT INTO T VALUES(1)");
+
+		// WHEN
+		sut.release(connection);
+
+		// THEN
+		Connection reused = sut.acquire();
+		assertThat(reused.getAutoCommit(), is(true));
+		ResultSet resultSet = reused.createStatement().executeQuery("SELECT COUNT(*) FROM T");
+		resultSet.next();
+		assertThat(resultSet.getInt(1), is(0));
+		sut.release(reused);
+	}
+
+	@Test
+	public void threadsShouldGetOwnConnections() throws Exception {
+		// GIVEN
+		sut = new H2ConnectionProvider(configuration, 2, 200);
+		Connection connection = sut.acquire();
+
+		// WHEN
+		Future<Connection> other = executor.submit(new Callable<Connection>() {
+			@Override
+			public Connection call() {
+				return sut.acquire();
+			}
+		});
+
+		// THEN
+		assertThat(other.get(), not(sameInstance(connection)));
+		assertThat(sut.getOpenConnectionCount(), is(2));
+	}
+
+	@Test
+	public void fileDatabaseShouldBeOpenedInAutoServerMode() throws Exception {
+		// GIVEN
+		String database = new File(tempFolder.getRoot(), "stt").getAbsolutePath();
+		given(configuration.getDatabase()).willReturn(database);
+		given(configuration.getAutoServer()).willReturn(true);
+		sut = new H2ConnectionProvider(configuration, 1, 200);
+
+		// WHEN
+		Connection connection = sut.acquire();
+
+		// THEN
+		// the lock file tells other processes where to connect to
+		Properties lock = new Properties();
+		try (InputStream in = new FileInputStream(database + ".lock.db")) {
+			lock.load(in);
+		}
+		assertThat(lock.getProperty("server"), containsString(":"));
+		sut.release(connection);
+	}
+
+	@Test
+	public void idleConnectionsShouldBeClosedWithoutAutoServer() throws Exception {
+		// GIVEN
+		String database = new File(tempFolder.getRoot(), "stt").getAbsolutePath();
+		given(configuration.getDatabase()).willReturn(database);
+		sut = new H2ConnectionProvider(configuration, 1, 200, 50);
+		Connection connection = sut.acquire();
+
+		// WHEN
+		sut.release(connection);
+
+		// THEN
+		assertThat(connection.isClosed(), is(false));
+		long timeout = System.currentTimeMillis() + 5000;
+		while (!connection.isClosed() && System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		assertThat(connection.isClosed(), is(true));
+	}
+
+	@Test
+	public void inMemoryDatabaseShouldNotBeServed() {
+		// GIVEN
+
+		// WHEN
+		String url = H2ConnectionProvider.urlOf("mem:", true);
+
+		// THEN
+		assertThat(url, is("jdbc:h2:mem:"));
+	}
+}
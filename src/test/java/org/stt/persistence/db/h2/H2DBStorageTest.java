@@ -8,6 +8,7 @@ import static org.mockito.BDDMockito.given;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
@@ -26,6 +27,7 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.stt.model.TimeTrackingItem;
+import org.stt.persistence.ListItemReader;
 import org.stt.persistence.db.DBStorage;
 
 import com.google.common.base.Optional;
@@ -74,6 +76,29 @@ public class H2DBStorageTest {
         // Exception expected
     }
 
+    @Test
+    public void shouldInsertItemsInBatches() throws SQLException {
+
+        // GIVEN
+        sut = new H2DBStorage(connectionProvider, 3);
+        List<TimeTrackingItem> items = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            items.add(new TimeTrackingItem("item " + i, new DateTime(2016, 12, 17, 10, i, 0, 500),
+                    new DateTime(2016, 12, 17, 10, i + 1, 0)));
+        }
+
+        // WHEN
+        int count = sut.insertItemsInDB(new ListItemReader(items));
+
+        // THEN
+        assertThat(count, is(10));
+        List<TimeTrackingItem> expected = new ArrayList<>();
+        for (TimeTrackingItem item : items) {
+            expected.add(item.withStart(item.getStart().withMillisOfSecond(0)));
+        }
+        assertThatDBContains(expected.toArray(new TimeTrackingItem[expected.size()]));
+    }
+
     @Test
     public void shouldInsertItem() throws SQLException {
 
@@ -0,0 +1,137 @@
+package org.stt.persistence.db.h2;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.stt.model.TimeTrackingItem;
+import org.stt.persistence.ItemPersister;
+import org.stt.persistence.db.DBItemPersister;
+import org.stt.persistence.db.DBStorage;
+
+public class H2DBStorageTransactionTest {
+
+	private static final DateTime BASE = new DateTime(2016, 12, 17, 8, 0, 0);
+
+	private H2ConnectionProvider connectionProvider;
+
+	@Mock
+	H2Configuration configuration;
+
+	private DBStorage sut;
+
+	private Connection connection;
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+	@Before
+	public void setUp() throws Exception {
+		MockitoAnnotations.initMocks(this);
+
+		// named, so the connections of all threads share it
+		given(configuration.getDatabase()).willReturn("mem:" + UUID.randomUUID());
+		given(configuration.getUserName()).willReturn("test");
+		given(configuration.getPassword()).willReturn("");
+
+		this.connectionProvider = new H2ConnectionProvider(configuration);
+		connection = connectionProvider.acquire();
+
+		this.sut = new H2DBStorage(connectionProvider);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+		connectionProvider.release(connection);
+		connectionProvider.close();
+	}
+
+	@Test
+	public void otherThreadsShouldNotSeeUncommittedItems() throws Exception {
+		// GIVEN
+		TimeTrackingItem item = new TimeTrackingItem("item", BASE);
+		sut.startTransaction();
+		sut.insertItemInDB(item);
+
+		// WHEN
+		List<TimeTrackingItem> seenByOtherThread = executor.submit(new Callable<List<TimeTrackingItem>>() {
+			@Override
+			public List<TimeTrackingItem> call() throws Exception {
+				return sut.getAllItems();
+			}
+		}).get();
+
+		// THEN
+		assertThat(seenByOtherThread, is(empty()));
+		sut.endTransaction();
+		assertThat(sut.getAllItems(), contains(item));
+	}
+
+	@Test
+	public void nestedTransactionShouldCommitWithOuterTransaction() throws Exception {
+		// GIVEN
+		TimeTrackingItem item = new TimeTrackingItem("item", BASE);
+		sut.startTransaction();
+		sut.startTransaction();
+		sut.insertItemInDB(item);
+
+		// WHEN
+		sut.endTransaction();
+		sut.rollback();
+		sut.endTransaction();
+
+		// THEN
+		assertThat(sut.getAllItems(), is(empty()));
+	}
+
+	@Test
+	public void concurrentInsertsShouldNotInterleave() throws Exception {
+		// GIVEN
+		final ItemPersister persister = new DBItemPersister(sut);
+		List<Future<Void>> inserts = new ArrayList<>();
+
+		// WHEN
+		for (int thread = 0; thread < 2; thread++) {
+			final Random random = new Random(thread);
+			inserts.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					for (int i = 0; i < 50; i++) {
+						DateTime start = BASE.plusMinutes(random.nextInt(48) * 15);
+						persister.insert(new TimeTrackingItem("item " + i, start,
+								start.plusMinutes((1 + random.nextInt(8)) * 15)));
+					}
+					return null;
+				}
+			}));
+		}
+		for (Future<Void> insert : inserts) {
+			insert.get();
+		}
+
+		// THEN
+		List<TimeTrackingItem> items = sut.getAllItems();
+		for (int i = 1; i < items.size(); i++) {
+			assertThat(items.get(i - 1) + " overlaps " + items.get(i),
+					items.get(i - 1).getEnd().get().isAfter(items.get(i).getStart()), is(false));
+		}
+	}
+}
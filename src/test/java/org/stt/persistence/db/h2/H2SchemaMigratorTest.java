@@ -0,0 +1,144 @@
+package org.stt.persistence.db.h2;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.stt.model.TimeTrackingItem;
+
+public class H2SchemaMigratorTest {
+
+	private H2ConnectionProvider connectionProvider;
+
+	@Mock
+	H2Configuration configuration;
+
+	private Connection connection;
+
+	private DSLContext context;
+
+	private H2SchemaMigrator sut;
+
+	@Before
+	public void setUp() throws Exception {
+		MockitoAnnotations.initMocks(this);
+
+		given(configuration.getDatabase()).willReturn("mem:");
+		given(configuration.getUserName()).willReturn("test");
+		given(configuration.getPassword()).willReturn("");
+
+		connectionProvider = new H2ConnectionProvider(configuration);
+		// keeps the in memory database open
+		connection = connectionProvider.acquire();
+		context = DSL.using(connection, SQLDialect.H2);
+
+		sut = new H2SchemaMigrator(connectionProvider);
+	}
+
+	@After
+	public void tearDown() {
+		connectionProvider.release(connection);
+	}
+
+	@Test
+	public void shouldCreateLatestSchema() {
+		// WHEN
+		int version = sut.migrate();
+
+		// THEN
+		assertThat(version, is(H2SchemaMigrator.latestVersion()));
+		assertThat(H2SchemaMigrator.currentVersion(context), is(H2SchemaMigrator.latestVersion()));
+		assertThat(indexedColumns(true), is(Arrays.asList("ID")));
+		assertThat(indexedColumns(false), containsInAnyOrder("START_TIME", "START_TIME", "END_TIME", "COMMENT"));
+	}
+
+	@Test
+	public void shouldUpgradeUnversionedDatabaseInPlace() throws Exception {
+		// GIVEN
+		context.execute("CREATE TABLE TimeTrackingItems(START_TIME TIMESTAMP, END_TIME TIMESTAMP,"
+				+ " COMMENT VARCHAR, LOGGED BOOLEAN)");
+		context.execute("INSERT INTO TimeTrackingItems VALUES"
+				+ " ('2016-12-17 10:00:00', '2016-12-17 11:00:00', 'first', FALSE),"
+				+ " ('2016-12-17 11:00:00', NULL, 'second', FALSE)");
+
+		// WHEN
+		sut.migrate();
+
+		// THEN
+		assertThat(H2SchemaMigrator.currentVersion(context), is(H2SchemaMigrator.latestVersion()));
+		assertThat(context.fetch("SELECT ID FROM TimeTrackingItems").getValues(0, Long.class),
+				containsInAnyOrder(1L, 2L));
+		TimeTrackingItem first = new TimeTrackingItem("first", new DateTime(2016, 12, 17, 10, 0, 0),
+				new DateTime(2016, 12, 17, 11, 0, 0));
+		TimeTrackingItem second = new TimeTrackingItem("second", new DateTime(2016, 12, 17, 11, 0, 0));
+		assertThat(new H2DBStorage(connectionProvider).getAllItems(), containsInAnyOrder(first, second));
+	}
+
+	@Test
+	public void shouldConvertTimestampsToEpochMillis() throws Exception {
+		// GIVEN
+		context.execute("CREATE TABLE TimeTrackingItems(START_TIME TIMESTAMP, END_TIME TIMESTAMP,"
+				+ " COMMENT VARCHAR, LOGGED BOOLEAN)");
+		context.execute("INSERT INTO TimeTrackingItems VALUES"
+				+ " ('2016-12-17 10:00:00', '2016-12-17 11:00:00', 'first', FALSE),"
+				+ " ('2016-12-17 11:00:00', NULL, 'second', FALSE)");
+
+		// WHEN
+		sut.migrate();
+
+		// THEN
+		assertThat(H2SchemaMigrator.columnType(context, "START_TIME"), is("BIGINT"));
+		assertThat(H2SchemaMigrator.columnType(context, "END_TIME"), is("BIGINT"));
+		assertThat(H2SchemaMigrator.columnType(context, "START_MILLIS"), is(nullValue()));
+		assertThat(context.fetch("SELECT START_TIME, END_TIME FROM TimeTrackingItems ORDER BY START_TIME")
+				.intoArray(1, Long.class), is(new Long[] { new DateTime(2016, 12, 17, 11, 0, 0).getMillis(), null }));
+	}
+
+	@Test
+	public void migratingTwiceShouldKeepSchema() {
+		// GIVEN
+		sut.migrate();
+
+		// WHEN
+		int version = sut.migrate();
+
+		// THEN
+		assertThat(version, is(H2SchemaMigrator.latestVersion()));
+		assertThat(context.fetchCount(H2SchemaMigrator.VERSION_TABLE), is(1));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void shouldRejectNewerSchema() {
+		// GIVEN
+		sut.migrate();
+		context.update(H2SchemaMigrator.VERSION_TABLE)
+				.set(H2SchemaMigrator.COLUMN_VERSION, H2SchemaMigrator.latestVersion() + 1).execute();
+
+		// WHEN
+		sut.migrate();
+	}
+
+	/**
+	 * @return the first column of each index
+	 */
+	private List<String> indexedColumns(boolean primaryKey) {
+		return context.fetch("SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.INDEXES"
+				+ " WHERE TABLE_NAME = 'TIMETRACKINGITEMS' AND ORDINAL_POSITION = 1 AND PRIMARY_KEY = ?", primaryKey)
+				.getValues(0, String.class);
+	}
+}
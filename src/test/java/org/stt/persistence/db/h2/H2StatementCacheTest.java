@@ -0,0 +1,83 @@
+package org.stt.persistence.db.h2;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class H2StatementCacheTest {
+
+	private static final String SQL = "SELECT ? + 1";
+
+	private H2StatementCache sut;
+
+	private Connection connection;
+
+	@Before
+	public void setUp() throws Exception {
+		Class.forName("org.h2.Driver");
+		connection = DriverManager.getConnection("jdbc:h2:mem:", "test", "");
+
+		sut = new H2StatementCache();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		connection.close();
+	}
+
+	@Test
+	public void shouldReuseStatementOfConnection() throws Exception {
+		// GIVEN
+		PreparedStatement first = sut.prepare(connection, SQL);
+		first.setInt(1, 1);
+
+		// WHEN
+		PreparedStatement second = sut.prepare(connection, SQL);
+		second.setInt(1, 2);
+
+		// THEN
+		assertThat(second, sameInstance(first));
+		try (ResultSet resultSet = second.executeQuery()) {
+			resultSet.next();
+			assertThat(resultSet.getInt(1), is(3));
+		}
+	}
+
+	@Test
+	public void shouldPrepareStatementPerConnection() throws Exception {
+		// GIVEN
+		PreparedStatement first = sut.prepare(connection, SQL);
+
+		// WHEN
+		try (Connection other = DriverManager.getConnection("jdbc:h2:mem:", "test", "")) {
+			PreparedStatement second = sut.prepare(other, SQL);
+
+			// THEN
+			assertThat(second, not(sameInstance(first)));
+		}
+	}
+
+	@Test
+	public void shouldPrepareAgainIfStatementWasClosed() throws Exception {
+		// GIVEN
+		PreparedStatement first = sut.prepare(connection, SQL);
+		first.close();
+
+		// WHEN
+		PreparedStatement second = sut.prepare(connection, SQL);
+
+		// THEN
+		assertThat(second, not(sameInstance(first)));
+		assertThat(second.isClosed(), is(false));
+	}
+}
@@ -0,0 +1,123 @@
+package org.stt.persistence.stt;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.stt.persistence.OwnFileWrites;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class AtomicFileWriterTest {
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private final OwnFileWrites ownWrites = new OwnFileWrites();
+	private File target;
+
+	@Before
+	public void setUp() throws IOException {
+		target = tempFolder.newFile("test.stt");
+		FileUtils.writeStringToFile(target, "old", "UTF-8");
+	}
+
+	@Test
+	public void targetShouldBeUnchangedUntilClosed() throws IOException {
+		// GIVEN
+		AtomicFileWriter sut = new AtomicFileWriter(target, ownWrites);
+
+		// WHEN
+		sut.write("new ä");
+		sut.flush();
+
+		// THEN
+		assertThat(FileUtils.readFileToString(target, "UTF-8"), is("old"));
+		sut.close();
+		assertThat(FileUtils.readFileToString(target, "UTF-8"), is("new ä"));
+		assertThat(tempFolder.getRoot().list(), arrayContaining("test.stt"));
+	}
+
+	@Test
+	public void discardShouldKeepTarget() throws IOException {
+		// GIVEN
+		AtomicFileWriter sut = new AtomicFileWriter(target, ownWrites);
+		sut.write("new");
+
+		// WHEN
+		sut.discard();
+
+		// THEN
+		assertThat(FileUtils.readFileToString(target, "UTF-8"), is("old"));
+		assertThat(tempFolder.getRoot().list(), arrayContaining("test.stt"));
+	}
+
+	@Test
+	public void replacedTargetShouldBeRecordedAsOwnWrite() throws IOException {
+		// GIVEN
+		AtomicFileWriter sut = new AtomicFileWriter(target, ownWrites);
+		sut.write("new");
+
+		// WHEN
+		sut.close();
+
+		// THEN
+		assertThat(ownWrites.consume(target.toPath()), is(true));
+	}
+
+	@Test
+	public void shouldReplaceFileOfSymbolicLink() throws IOException {
+		// GIVEN
+		Path link = new File(tempFolder.newFolder(), "link.stt").toPath();
+		Files.createSymbolicLink(link, target.toPath());
+		AtomicFileWriter sut = new AtomicFileWriter(link.toFile(), ownWrites);
+
+		// WHEN
+		sut.write("new");
+		sut.close();
+
+		// THEN
+		assertThat(Files.isSymbolicLink(link), is(true));
+		assertThat(FileUtils.readFileToString(target, "UTF-8"), is("new"));
+	}
+
+	@Test
+	public void shouldKeepPermissionsOfTarget() throws IOException {
+		// GIVEN
+		assumeTrue(Files.getFileAttributeView(target.toPath(), PosixFileAttributeView.class) != null);
+		Files.setPosixFilePermissions(target.toPath(), PosixFilePermissions.fromString("rw-r-----"));
+		AtomicFileWriter sut = new AtomicFileWriter(target, ownWrites);
+
+		// WHEN
+		sut.write("new");
+		sut.close();
+
+		// THEN
+		assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(target.toPath())),
+				is("rw-r-----"));
+	}
+
+	@Test
+	public void shouldCreateMissingTarget() throws IOException {
+		// GIVEN
+		File newTarget = new File(tempFolder.getRoot(), "new.stt");
+
+		// WHEN
+		try (AtomicFileWriter sut = new AtomicFileWriter(newTarget, ownWrites)) {
+			sut.write("content");
+		}
+
+		// THEN
+		assertThat(FileUtils.readFileToString(newTarget, "UTF-8"), is("content"));
+	}
+}
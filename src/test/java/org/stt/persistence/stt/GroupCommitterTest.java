@@ -0,0 +1,144 @@
+package org.stt.persistence.stt;
+
+import com.google.inject.Provider;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class GroupCommitterTest {
+	private volatile String content = "";
+	private final AtomicInteger writes = new AtomicInteger();
+
+	private final GroupCommitter sut = new GroupCommitter(new Provider<Reader>() {
+		@Override
+		public Reader get() {
+			return new StringReader(content);
+		}
+	}, new Provider<Writer>() {
+		@Override
+		public Writer get() {
+			return new StringWriter() {
+				@Override
+				public void close() {
+					content = toString();
+					writes.incrementAndGet();
+				}
+			};
+		}
+	});
+
+	@Test
+	public void mutationsArrivingDuringCommitShouldShareOneWrite() throws Exception {
+		// GIVEN
+		final CountDownLatch firstCommitStarted = new CountDownLatch(1);
+		final CountDownLatch releaseFirstCommit = new CountDownLatch(1);
+		Thread first = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				commitQuietly(new GroupCommitter.Mutation() {
+					@Override
+					public String applyTo(String content) throws IOException {
+						firstCommitStarted.countDown();
+						try {
+							releaseFirstCommit.await();
+						} catch (InterruptedException e) {
+							throw new IllegalStateException(e);
+						}
+						return content + "first\n";
+					}
+				});
+			}
+		});
+		first.start();
+		firstCommitStarted.await();
+
+		// WHEN
+		List<Thread> followers = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			final String line = "line " + i + "\n";
+			Thread follower = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					commitQuietly(append(line));
+				}
+			});
+			follower.start();
+			followers.add(follower);
+		}
+		for (Thread follower : followers) {
+			awaitWaiting(follower);
+		}
+		releaseFirstCommit.countDown();
+		first.join();
+		for (Thread follower : followers) {
+			follower.join();
+		}
+
+		// THEN
+		assertThat(writes.get(), is(2));
+		assertThat(content, containsString("first\n"));
+		for (int i = 0; i < 10; i++) {
+			assertThat(content, containsString("line " + i + "\n"));
+		}
+	}
+
+	@Test
+	public void failingMutationShouldNotAffectOthers() throws IOException {
+		// GIVEN
+		sut.commit(append("a\n"));
+
+		// WHEN
+		try {
+			sut.commit(new GroupCommitter.Mutation() {
+				@Override
+				public String applyTo(String content) throws IOException {
+					throw new IOException("failed");
+				}
+			});
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+		sut.commit(append("b\n"));
+
+		// THEN
+		assertThat(content, is("a\nb\n"));
+		assertThat(writes.get(), is(2));
+	}
+
+	private static GroupCommitter.Mutation append(final String line) {
+		return new GroupCommitter.Mutation() {
+			@Override
+			public String applyTo(String content) {
+				return content + line;
+			}
+		};
+	}
+
+	private void commitQuietly(GroupCommitter.Mutation mutation) {
+		try {
+			sut.commit(mutation);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void awaitWaiting(Thread thread) throws InterruptedException {
+		while (thread.getState() != Thread.State.WAITING) {
+			Thread.sleep(1);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package org.stt.persistence.stt;
+
+import com.google.common.base.Strings;
+import org.apache.commons.io.FileUtils;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.stt.model.TimeTrackingItem;
+import org.stt.persistence.IOUtil;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class STTChunkedLoaderTest {
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private final ForkJoinPool pool = new ForkJoinPool(4);
+	private final STTItemConverter converter = new STTItemConverter();
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void shouldLoadSameItemsAsItemReader() throws IOException {
+		// GIVEN
+		File sttFile = tempFolder.newFile();
+		FileUtils.writeStringToFile(sttFile, generateContent(new Random(42), 1000), "UTF-8");
+
+		// WHEN + THEN
+		for (int chunkSize : new int[]{1, 7, 64, 1000, 1 << 20}) {
+			assertThat("chunk size " + chunkSize, load(sttFile, chunkSize), is(readWithItemReader(sttFile)));
+		}
+	}
+
+	@Test
+	public void shouldFindChunkBoundariesBehindLongLines() throws IOException {
+		// GIVEN
+		File sttFile = tempFolder.newFile();
+		DateTime start = new DateTime(2015, 1, 1, 10, 0, 0);
+		String content = converter.timeTrackingItemToLine(new TimeTrackingItem(Strings.repeat("long ", 3000), start,
+				start.plusHours(1))) + "\n" + converter.timeTrackingItemToLine(new TimeTrackingItem("short",
+				start.plusHours(1)));
+		FileUtils.writeStringToFile(sttFile, content, "UTF-8");
+
+		// WHEN + THEN
+		assertThat(load(sttFile, 10), is(readWithItemReader(sttFile)));
+	}
+
+	@Test
+	public void shouldLoadEmptyFile() throws IOException {
+		// GIVEN
+		File sttFile = tempFolder.newFile();
+
+		// WHEN
+		List<TimeTrackingItem> result = load(sttFile, 10);
+
+		// THEN
+		assertThat(result.isEmpty(), is(true));
+	}
+
+	private List<TimeTrackingItem> load(File sttFile, int chunkSize) throws IOException {
+		return new STTChunkedLoader(chunkSize, pool).load(sttFile);
+	}
+
+	private List<TimeTrackingItem> readWithItemReader(File sttFile) throws IOException {
+		Reader reader = new InputStreamReader(new FileInputStream(sttFile), "UTF-8");
+		return new ArrayList<>(IOUtil.readAll(new STTItemReader(reader)));
+	}
+
+	private String generateContent(Random random, int count) {
+		String[] separators = {"\n", "\r\n", "\n\n", "\n  \n"};
+		String[] comments = {"work", "äöü €", "multi\nline", "漢字", "", "a  b   "};
+		StringBuilder content = new StringBuilder();
+		DateTime start = new DateTime(2015, 1, 1, 10, 0, 0);
+		for (int i = 0; i < count; i++) {
+			DateTime end = start.plusMinutes(1 + random.nextInt(120));
+			String comment = comments[random.nextInt(comments.length)];
+			content.append(converter.timeTrackingItemToLine(new TimeTrackingItem(comment, start, end)));
+			content.append(separators[random.nextInt(separators.length)]);
+			start = end;
+		}
+		return content.toString();
+	}
+}
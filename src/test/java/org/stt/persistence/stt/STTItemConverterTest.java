@@ -0,0 +1,204 @@
+package org.stt.persistence.stt;
+
+import org.apache.commons.io.FileUtils;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.stt.model.TimeTrackingItem;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Compares the converter against the previous split and regex based
+ * implementation over generated .stt files.
+ */
+public class STTItemConverterTest {
+	private static final String[] WORDS = {"work", "pause", "ABC-123:", "a_b:c", "\\n", "\\r",
+			"\\\\n", "x\\", "äöü", "", "2015-02-30_10:00:00", "2015-1-5_3:04:05",
+			"2015-13-01_00:00:00", "2015-03-29_02:30:00", "2015-10-25_02:30:00", "24:00", "_:"};
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private final STTItemConverter sut = new STTItemConverter();
+	private final LegacyConverter legacy = new LegacyConverter();
+	private final DateTimeFormatter dateFormat = DateTimeFormat.forPattern("yyyy-MM-dd_HH:mm:ss");
+	private DateTimeZone defaultZone;
+
+	@Before
+	public void setUp() {
+		defaultZone = DateTimeZone.getDefault();
+		// a zone with daylight saving gaps and overlaps
+		DateTimeZone.setDefault(DateTimeZone.forID("Europe/Berlin"));
+	}
+
+	@After
+	public void tearDown() {
+		DateTimeZone.setDefault(defaultZone);
+	}
+
+	@Test
+	public void shouldParseGeneratedFilesLikeLegacyConverter() throws IOException {
+		Random random = new Random(4711);
+		for (int fileNumber = 0; fileNumber < 20; fileNumber++) {
+			File sttFile = tempFolder.newFile();
+			FileUtils.writeLines(sttFile, "UTF-8", generateLines(random, 500));
+
+			for (String line : FileUtils.readLines(sttFile, "UTF-8")) {
+				assertThat(line, parseWithSut(line), is(parseWithLegacy(line)));
+			}
+		}
+	}
+
+	@Test
+	public void shouldWriteLinesLikeLegacyConverter() {
+		Random random = new Random(815);
+		for (String line : generateLines(random, 2000)) {
+			TimeTrackingItem item;
+			try {
+				item = legacy.lineToTimeTrackingItem(line);
+			} catch (RuntimeException e) {
+				continue;
+			}
+			assertThat(sut.timeTrackingItemToLine(item), is(legacy.timeTrackingItemToLine(item)));
+		}
+	}
+
+	@Test
+	public void shouldDecodeEscapedLineEndings() {
+		// WHEN
+		TimeTrackingItem item = sut.lineToTimeTrackingItem(
+				"2012-10-10_22:00:00 2012-11-10_22:00:01 this is\\n a multiline\\r string\\\\n  ");
+
+		// THEN
+		assertThat(item.getComment().get(), is("this is\n a multiline\r string\\\n"));
+		assertThat(item.getEnd().get(), is(new DateTime(2012, 11, 10, 22, 0, 1)));
+	}
+
+	private String parseWithSut(String line) {
+		try {
+			return describe(sut.lineToTimeTrackingItem(line));
+		} catch (RuntimeException e) {
+			return e.getClass().getName();
+		}
+	}
+
+	private String parseWithLegacy(String line) {
+		try {
+			return describe(legacy.lineToTimeTrackingItem(line));
+		} catch (RuntimeException e) {
+			return e.getClass().getName();
+		}
+	}
+
+	private String describe(TimeTrackingItem item) {
+		return item.getStart().getMillis() + "|" + item.getStart().getChronology() + "|"
+				+ (item.getEnd().isPresent() ? item.getEnd().get().getMillis() + "|"
+				+ item.getEnd().get().getChronology() : "-") + "|" + item.getComment().orNull();
+	}
+
+	private List<String> generateLines(Random random, int count) {
+		List<String> lines = new ArrayList<>();
+		DateTime time = new DateTime(2014, 1, 1, 0, 0, 0);
+		for (int i = 0; i < count; i++) {
+			time = time.plusMinutes(random.nextInt(60 * 24 * 20));
+			StringBuilder line = new StringBuilder();
+			line.append(random.nextInt(30) == 0 ? randomWord(random) : time.toString(dateFormat));
+			if (random.nextBoolean()) {
+				line.append(' ').append(time.plusMinutes(random.nextInt(600)).toString(dateFormat));
+			}
+			int words = random.nextInt(6);
+			for (int w = 0; w < words; w++) {
+				line.append(random.nextInt(5) == 0 ? "  " : " ").append(randomWord(random));
+			}
+			if (random.nextInt(10) == 0) {
+				line.append("   ");
+			}
+			lines.add(line.toString());
+		}
+		return lines;
+	}
+
+	private String randomWord(Random random) {
+		return WORDS[random.nextInt(WORDS.length)];
+	}
+
+	/**
+	 * The converter as it was before the single pass parser.
+	 */
+	private static class LegacyConverter {
+		private final DateTimeFormatter dateFormat = DateTimeFormat
+				.forPattern("yyyy-MM-dd_HH:mm:ss");
+
+		public TimeTrackingItem lineToTimeTrackingItem(String singleLine) {
+			List<String> splitLine = new LinkedList<>(Arrays.asList(singleLine
+					.split(" ")));
+
+			DateTime start = dateFormat.parseDateTime(splitLine.remove(0));
+
+			DateTime end = null;
+			if (splitLine.size() > 0) {
+				try {
+					end = dateFormat.parseDateTime(splitLine.get(0));
+					splitLine.remove(0);
+				} catch (IllegalArgumentException i) { // NOPMD
+				}
+			}
+			String comment = null;
+			if (splitLine.size() > 0) {
+				StringBuilder commentBuilder = new StringBuilder(
+						singleLine.length());
+				for (String current : splitLine) {
+					current = current.replaceAll("\\\\r", "\r");
+					current = current.replaceAll("\\\\n", "\n");
+					commentBuilder.append(current);
+
+					commentBuilder.append(" ");
+				}
+				commentBuilder.deleteCharAt(commentBuilder.length() - 1);
+
+				comment = commentBuilder.toString();
+			}
+
+			if (end != null) {
+				return new TimeTrackingItem(comment, start, end);
+			} else {
+				return new TimeTrackingItem(comment, start);
+			}
+		}
+
+		public String timeTrackingItemToLine(TimeTrackingItem item) {
+			StringBuilder builder = new StringBuilder();
+			builder.append(item.getStart().toString(dateFormat));
+			builder.append(' ');
+			if (item.getEnd().isPresent()) {
+				builder.append(item.getEnd().get().toString(dateFormat));
+				builder.append(' ');
+			}
+
+			if (item.getComment().isPresent()) {
+				String oneLineComment = item.getComment().get();
+				oneLineComment = oneLineComment.replaceAll("\r", "\\\\r");
+				oneLineComment = oneLineComment.replaceAll("\n", "\\\\n");
+				builder.append(oneLineComment);
+			}
+
+			return builder.toString();
+		}
+	}
+}
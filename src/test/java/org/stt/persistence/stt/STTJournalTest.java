@@ -0,0 +1,280 @@
+package org.stt.persistence.stt;
+
+import com.google.inject.Provider;
+import org.apache.commons.io.FileUtils;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.stt.Configuration;
+import org.stt.model.TimeTrackingItem;
+import org.stt.persistence.IOUtil;
+import org.stt.persistence.ItemPersister;
+import org.stt.persistence.OwnFileWrites;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+
+public class STTJournalTest {
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	@Mock
+	private Configuration configuration;
+
+	private File journaledFile;
+	private File rewrittenFile;
+	private STTJournal sut;
+	private ItemPersister journalPersister;
+	private ItemPersister rewritingPersister;
+
+	@Before
+	public void setUp() throws IOException {
+		MockitoAnnotations.initMocks(this);
+		given(configuration.getSttJournalCompactionThreshold()).willReturn(Integer.MAX_VALUE);
+
+		journaledFile = tempFolder.newFile();
+		rewrittenFile = tempFolder.newFile();
+		sut = new STTJournal(journaledFile, readerFor(journaledFile), new STTOffsetIndex(journaledFile),
+				new STTFileLock(journaledFile), new OwnFileWrites());
+		journalPersister = new STTJournalItemPersister(sut, configuration);
+		rewritingPersister = new STTItemPersister(readerFor(rewrittenFile), writerFor(rewrittenFile));
+	}
+
+	@Test
+	public void mutationsAreAppendedWithoutTouchingSttFile() throws IOException {
+		// WHEN
+		journalPersister.insert(new TimeTrackingItem("first", new DateTime(2015, 1, 1, 10, 0, 0)));
+		journalPersister.insert(new TimeTrackingItem("second", new DateTime(2015, 1, 1, 11, 0, 0)));
+
+		// THEN
+		assertThat(journaledFile.length(), is(0L));
+		assertThat(sut.size(), is(2));
+	}
+
+	@Test
+	public void readerShouldMatchRewritingPersister() throws IOException {
+		// WHEN
+		applyToBoth(new Mutation() {
+			@Override
+			public void applyTo(ItemPersister persister) throws IOException {
+				DateTime start = new DateTime(2015, 1, 1, 10, 0, 0);
+				persister.insert(new TimeTrackingItem("first", start));
+				persister.insert(new TimeTrackingItem("second", start.plusHours(2)));
+				persister.insert(new TimeTrackingItem("third", start.plusHours(5)));
+				// split "second"
+				persister.insert(new TimeTrackingItem("inner", start.plusHours(3), start.plusHours(4)));
+				// cover "first" completely and trim the first part of "second"
+				persister.insert(new TimeTrackingItem("cover", start.minusHours(1), start.plusHours(2).plusMinutes(30)));
+				persister.replace(new TimeTrackingItem("inner", start.plusHours(3), start.plusHours(4)),
+						new TimeTrackingItem("replaced inner", start.plusHours(3), start.plusHours(4)));
+				persister.delete(new TimeTrackingItem("cover", start.minusHours(1), start.plusHours(2).plusMinutes(30)));
+				persister.insert(new TimeTrackingItem("multi\nline", start.plusHours(6)));
+			}
+		});
+
+		// THEN
+		assertThat(IOUtil.readAll(sut.openReader()), is(readRewrittenItems()));
+	}
+
+	@Test
+	public void reverseReaderShouldMatchRewritingPersister() throws IOException {
+		// GIVEN
+		applyToBoth(new Mutation() {
+			@Override
+			public void applyTo(ItemPersister persister) throws IOException {
+				DateTime start = new DateTime(2015, 1, 1, 10, 0, 0);
+				for (int i = 0; i < 10; i++) {
+					persister.insert(new TimeTrackingItem("item " + i, start.plusHours(i)));
+				}
+			}
+		});
+		sut.compact();
+
+		// WHEN
+		applyToBoth(new Mutation() {
+			@Override
+			public void applyTo(ItemPersister persister) throws IOException {
+				DateTime start = new DateTime(2015, 1, 1, 10, 0, 0);
+				// split "item 6"
+				persister.insert(new TimeTrackingItem("inner", start.plusHours(6).plusMinutes(10),
+						start.plusHours(6).plusMinutes(20)));
+				persister.delete(new TimeTrackingItem("item 8", start.plusHours(8), start.plusHours(9)));
+				persister.insert(new TimeTrackingItem("latest", start.plusHours(12)));
+			}
+		});
+
+		// THEN
+		List<TimeTrackingItem> expected = new ArrayList<>(readRewrittenItems());
+		Collections.reverse(expected);
+		assertThat(new ArrayList<>(IOUtil.readAll(sut.openReverseReader())), is(expected));
+	}
+
+	@Test
+	public void compactionShouldFoldJournalIntoSttFile() throws IOException {
+		// GIVEN
+		applyToBoth(new Mutation() {
+			@Override
+			public void applyTo(ItemPersister persister) throws IOException {
+				DateTime start = new DateTime(2015, 1, 1, 10, 0, 0);
+				persister.insert(new TimeTrackingItem("first", start));
+				persister.insert(new TimeTrackingItem("second", start.plusHours(2)));
+				persister.insert(new TimeTrackingItem("inner", start.plusHours(1), start.plusHours(3)));
+			}
+		});
+
+		// WHEN
+		sut.compact();
+
+		// THEN
+		assertThat(sut.size(), is(0));
+		assertThat(FileUtils.readFileToString(journaledFile, "UTF-8"),
+				is(FileUtils.readFileToString(rewrittenFile, "UTF-8")));
+		assertThat(IOUtil.readAll(sut.openReader()), is(readRewrittenItems()));
+	}
+
+	@Test
+	public void entriesAppendedAfterCompactionShouldBeReplayedOnCompactedFile() throws IOException {
+		// GIVEN
+		applyToBoth(new Mutation() {
+			@Override
+			public void applyTo(ItemPersister persister) throws IOException {
+				persister.insert(new TimeTrackingItem("first", new DateTime(2015, 1, 1, 10, 0, 0)));
+			}
+		});
+		sut.compact();
+
+		// WHEN
+		applyToBoth(new Mutation() {
+			@Override
+			public void applyTo(ItemPersister persister) throws IOException {
+				persister.insert(new TimeTrackingItem("second", new DateTime(2015, 1, 1, 11, 0, 0)));
+			}
+		});
+
+		// THEN
+		assertThat(sut.size(), is(1));
+		assertThat(IOUtil.readAll(sut.openReader()), is(readRewrittenItems()));
+	}
+
+	@Test
+	public void entriesAppendedByOthersWhileCompactingShouldNotBeLost() throws Exception {
+		// GIVEN
+		final STTJournal other = new STTJournal(journaledFile, readerFor(journaledFile),
+				new STTOffsetIndex(journaledFile), new STTFileLock(journaledFile), new OwnFileWrites());
+		final DateTime start = new DateTime(2015, 1, 1, 10, 0, 0);
+		final int itemCount = 200;
+		final AtomicReference<Exception> failure = new AtomicReference<>();
+		Thread appender = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < itemCount; i++) {
+						other.appendInsert(new TimeTrackingItem("item " + i, start.plusHours(i)));
+					}
+				} catch (IOException e) {
+					failure.set(e);
+				}
+			}
+		});
+
+		// WHEN
+		appender.start();
+		while (appender.isAlive()) {
+			sut.compact();
+		}
+		appender.join();
+		sut.compact();
+
+		// THEN
+		assertThat(failure.get(), is((Exception) null));
+		assertThat(IOUtil.readAll(sut.openReader()).size(), is(itemCount));
+	}
+
+	@Test
+	public void concurrentAppendsShouldAllBeWritten() throws Exception {
+		// GIVEN
+		final DateTime start = new DateTime(2015, 1, 1, 10, 0, 0);
+		final AtomicReference<Exception> failure = new AtomicReference<>();
+		List<Thread> appenders = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			final int thread = i;
+			appenders.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < 25; j++) {
+							sut.appendInsert(new TimeTrackingItem("item " + thread + " " + j,
+									start.plusHours(thread * 25 + j), start.plusHours(thread * 25 + j + 1)));
+						}
+					} catch (IOException e) {
+						failure.set(e);
+					}
+				}
+			}));
+		}
+
+		// WHEN
+		for (Thread appender : appenders) {
+			appender.start();
+		}
+		for (Thread appender : appenders) {
+			appender.join();
+		}
+
+		// THEN
+		assertThat(failure.get(), is((Exception) null));
+		assertThat(sut.size(), is(200));
+		assertThat(IOUtil.readAll(sut.openReader()).size(), is(200));
+	}
+
+	private Collection<TimeTrackingItem> readRewrittenItems() throws IOException {
+		return IOUtil.readAll(new STTItemReader(readerFor(rewrittenFile).get()));
+	}
+
+	private void applyToBoth(Mutation mutation) throws IOException {
+		mutation.applyTo(journalPersister);
+		mutation.applyTo(rewritingPersister);
+	}
+
+	private interface Mutation {
+		void applyTo(ItemPersister persister) throws IOException;
+	}
+
+	private static Provider<Reader> readerFor(final File file) {
+		return new Provider<Reader>() {
+			@Override
+			public Reader get() {
+				try {
+					return new InputStreamReader(new FileInputStream(file), "UTF-8");
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+	}
+
+	private static Provider<Writer> writerFor(final File file) {
+		return new Provider<Writer>() {
+			@Override
+			public Writer get() {
+				try {
+					return new OutputStreamWriter(new FileOutputStream(file, false), "UTF-8");
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,203 @@
+package org.stt.persistence.stt;
+
+import com.google.inject.Provider;
+import org.apache.commons.io.FileUtils;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.stt.model.TimeTrackingItem;
+import org.stt.persistence.IOUtil;
+import org.stt.persistence.ItemReader;
+import org.stt.persistence.OwnFileWrites;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class STTOffsetIndexTest {
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private final STTItemConverter converter = new STTItemConverter();
+	private File sttFile;
+	private STTJournal journal;
+
+	@Before
+	public void setUp() throws IOException {
+		sttFile = tempFolder.newFile();
+		journal = new STTJournal(sttFile, readerFor(sttFile), new STTOffsetIndex(sttFile), new STTFileLock(sttFile),
+				new OwnFileWrites());
+	}
+
+	@Test
+	public void seekingShouldReturnSameItemsAsFullRead() throws IOException {
+		// GIVEN
+		writeItems(generateItems(new DateTime(2015, 1, 1, 8, 0, 0), 300));
+
+		// WHEN + THEN
+		assertSeekingMatchesFullRead();
+		assertThat(new File(sttFile.getPath() + ".index").exists(), is(true));
+	}
+
+	@Test
+	public void seekingShouldReturnLastItemBeforeStart() throws IOException {
+		// GIVEN
+		TimeTrackingItem first = new TimeTrackingItem("first", new DateTime(2015, 1, 1, 8, 0, 0));
+		TimeTrackingItem second = new TimeTrackingItem("second", new DateTime(2015, 1, 5, 8, 0, 0));
+		writeItems(first, second);
+
+		// WHEN
+		List<TimeTrackingItem> result = readFrom(new DateTime(2015, 1, 5, 7, 0, 0));
+
+		// THEN
+		assertThat(result.get(0), is(first));
+	}
+
+	@Test
+	public void seekingShouldHandleAppendedItems() throws IOException {
+		// GIVEN
+		List<TimeTrackingItem> items = generateItems(new DateTime(2015, 1, 1, 8, 0, 0), 100);
+		writeItems(items);
+		assertSeekingMatchesFullRead();
+
+		// WHEN
+		items.addAll(generateItems(items.get(items.size() - 1).getStart().plusHours(1), 100));
+		writeItems(items);
+
+		// THEN
+		assertSeekingMatchesFullRead();
+	}
+
+	@Test
+	public void seekingShouldHandleRewrittenItems() throws IOException {
+		// GIVEN
+		List<TimeTrackingItem> items = generateItems(new DateTime(2015, 1, 1, 8, 0, 0), 200);
+		writeItems(items);
+		assertSeekingMatchesFullRead();
+
+		// WHEN
+		items.subList(50, 120).clear();
+		writeItems(items);
+
+		// THEN
+		assertSeekingMatchesFullRead();
+	}
+
+	@Test
+	public void seekingShouldDetectRewritesKeepingLengthAndTimestamp() throws IOException {
+		// GIVEN
+		List<TimeTrackingItem> items = generateItems(new DateTime(2015, 1, 1, 8, 0, 0), 200);
+		writeItems(items);
+		assertSeekingMatchesFullRead();
+		long length = sttFile.length();
+		long lastModified = sttFile.lastModified();
+
+		// WHEN
+		items.set(10, new TimeTrackingItem("item 1", items.get(10).getStart(), items.get(10).getEnd()));
+		items.set(50, new TimeTrackingItem("item 500", items.get(50).getStart(), items.get(50).getEnd()));
+		List<String> lines = new ArrayList<>();
+		for (TimeTrackingItem item : items) {
+			lines.add(converter.timeTrackingItemToLine(item));
+		}
+		FileUtils.writeLines(sttFile, "UTF-8", lines);
+		sttFile.setLastModified(lastModified);
+
+		// THEN
+		assertThat(sttFile.length(), is(length));
+		assertSeekingMatchesFullRead();
+	}
+
+	@Test
+	public void seekingShouldApplyJournalEntries() throws IOException {
+		// GIVEN
+		List<TimeTrackingItem> items = generateItems(new DateTime(2015, 1, 1, 8, 0, 0), 200);
+		writeItems(items);
+
+		// WHEN
+		DateTime coverStart = items.get(20).getStart().minusMinutes(1);
+		journal.appendInsert(new TimeTrackingItem("cover", coverStart, items.get(150).getStart().plusMinutes(1)));
+		journal.appendDelete(items.get(180));
+
+		// THEN
+		assertSeekingMatchesFullRead();
+	}
+
+	private void assertSeekingMatchesFullRead() throws IOException {
+		List<TimeTrackingItem> allItems = new ArrayList<>(IOUtil.readAll(journal.openReader()));
+		for (TimeTrackingItem item : allItems) {
+			for (DateTime start : new DateTime[]{item.getStart(), item.getStart().plusMinutes(1),
+					item.getStart().withTimeAtStartOfDay()}) {
+				assertThat(start.toString(), startingAt(start, readFrom(start)), is(startingAt(start, allItems)));
+			}
+		}
+	}
+
+	private List<TimeTrackingItem> readFrom(DateTime start) throws IOException {
+		ItemReader reader = journal.openReaderFrom(start);
+		return new ArrayList<>(IOUtil.readAll(reader));
+	}
+
+	private static List<TimeTrackingItem> startingAt(DateTime start, List<TimeTrackingItem> items) {
+		List<TimeTrackingItem> result = new ArrayList<>();
+		TimeTrackingItem lastBefore = null;
+		for (TimeTrackingItem item : items) {
+			if (item.getStart().isBefore(start)) {
+				lastBefore = item;
+			} else {
+				result.add(item);
+			}
+		}
+		if (lastBefore != null) {
+			result.add(0, lastBefore);
+		}
+		return result;
+	}
+
+	private static List<TimeTrackingItem> generateItems(DateTime from, int count) {
+		List<TimeTrackingItem> items = new ArrayList<>();
+		DateTime start = from;
+		for (int i = 0; i < count; i++) {
+			DateTime end = start.plusMinutes(30 + i % 7 * 50);
+			items.add(new TimeTrackingItem("item " + i, start, end));
+			start = end.plusMinutes(i % 5 == 0 ? 60 * 20 : 10);
+		}
+		return items;
+	}
+
+	private void writeItems(TimeTrackingItem... items) throws IOException {
+		List<TimeTrackingItem> list = new ArrayList<>();
+		for (TimeTrackingItem item : items) {
+			list.add(item);
+		}
+		writeItems(list);
+	}
+
+	private void writeItems(List<TimeTrackingItem> items) throws IOException {
+		List<String> lines = new ArrayList<>();
+		for (TimeTrackingItem item : items) {
+			lines.add(converter.timeTrackingItemToLine(item));
+		}
+		long lastModified = sttFile.lastModified();
+		FileUtils.writeLines(sttFile, "UTF-8", lines);
+		// file systems with coarse timestamps must still see a change
+		sttFile.setLastModified(lastModified + 2000);
+	}
+
+	private static Provider<Reader> readerFor(final File file) {
+		return new Provider<Reader>() {
+			@Override
+			public Reader get() {
+				try {
+					return new InputStreamReader(new FileInputStream(file), "UTF-8");
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,87 @@
+package org.stt.persistence.stt;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.stt.model.TimeTrackingItem;
+import org.stt.persistence.IOUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class STTReverseItemReaderTest {
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private final STTItemConverter converter = new STTItemConverter();
+	private File sttFile;
+
+	@Before
+	public void setUp() throws IOException {
+		sttFile = tempFolder.newFile();
+	}
+
+	@Test
+	public void shouldReturnItemsFromLatestToEarliest() throws IOException {
+		// GIVEN
+		List<TimeTrackingItem> items = new ArrayList<>();
+		DateTime start = new DateTime(2015, 1, 1, 8, 0, 0);
+		for (int i = 0; i < 100; i++) {
+			items.add(new TimeTrackingItem("item äöü " + i, start, start.plusMinutes(30)));
+			start = start.plusHours(1);
+		}
+		items.add(new TimeTrackingItem("multi\nline", start));
+		writeLines(items);
+
+		// WHEN
+		// blocks end within lines and multi byte characters
+		Collection<TimeTrackingItem> result = IOUtil.readAll(new STTReverseItemReader(sttFile, 7));
+
+		// THEN
+		assertThat(new ArrayList<>(result), is(Lists.reverse(items)));
+	}
+
+	@Test
+	public void shouldIgnoreBlankLinesAndCarriageReturns() throws IOException {
+		// GIVEN
+		DateTime start = new DateTime(2015, 1, 1, 8, 0, 0);
+		TimeTrackingItem first = new TimeTrackingItem("first", start, start.plusHours(1));
+		TimeTrackingItem second = new TimeTrackingItem("second", start.plusHours(1));
+		FileUtils.writeStringToFile(sttFile, "\r\n" + converter.timeTrackingItemToLine(first) + "\r\n  \r\n"
+				+ converter.timeTrackingItemToLine(second) + "\r\n\r\n", "UTF-8");
+
+		// WHEN
+		Collection<TimeTrackingItem> result = IOUtil.readAll(new STTReverseItemReader(sttFile, 5));
+
+		// THEN
+		assertThat(new ArrayList<>(result), is(Lists.newArrayList(second, first)));
+	}
+
+	@Test
+	public void shouldReadNothingFromEmptyFile() throws IOException {
+		// WHEN
+		Collection<TimeTrackingItem> result = IOUtil.readAll(new STTReverseItemReader(sttFile));
+
+		// THEN
+		assertThat(result, is(empty()));
+	}
+
+	private void writeLines(List<TimeTrackingItem> items) throws IOException {
+		StringBuilder content = new StringBuilder();
+		for (TimeTrackingItem item : items) {
+			content.append(converter.timeTrackingItemToLine(item)).append("\n");
+		}
+		FileUtils.writeStringToFile(sttFile, content.toString(), "UTF-8");
+	}
+}
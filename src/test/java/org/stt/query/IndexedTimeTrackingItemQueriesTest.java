@@ -0,0 +1,194 @@
+package org.stt.query;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.EventBus;
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+import org.stt.model.FileChanged;
+import org.stt.model.ItemDeleted;
+import org.stt.model.ItemInserted;
+import org.stt.model.TimeTrackingItem;
+import org.stt.persistence.ItemReader;
+import org.stt.persistence.ItemReaderProvider;
+import org.stt.persistence.ListItemReader;
+import org.stt.persistence.PreCachingItemReaderProvider;
+import org.stt.persistence.ReversibleItemReaderProvider;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class IndexedTimeTrackingItemQueriesTest {
+    private static final DateTime BASE = new DateTime(2015, 1, 1, 8, 0, 0);
+
+    private final List<TimeTrackingItem> items = new ArrayList<>();
+    private final EventBus eventBus = new EventBus();
+    private TimeTrackingItemQueries sut;
+    private TimeTrackingItemQueries reference;
+
+    @Before
+    public void setUp() {
+        ItemReaderProvider provider = new ItemReaderProvider() {
+            @Override
+            public ItemReader provideReader() {
+                return new ListItemReader(items);
+            }
+        };
+        sut = new IndexedTimeTrackingItemQueries(new PreCachingItemReaderProvider(provider), eventBus);
+        reference = new DefaultTimeTrackingItemQueries(provider);
+    }
+
+    @Test
+    public void shouldAnswerLikeLinearScan() {
+        Random random = new Random(99);
+        givenRandomItems(random, 500);
+
+        assertThat(sut.getLatestTimeTrackingitem(), is(reference.getLatestTimeTrackingitem()));
+        assertThat(sut.getCurrentTimeTrackingitem(), is(reference.getCurrentTimeTrackingitem()));
+        assertThat(new ArrayList<>(sut.getAllTrackedDays()), is(new ArrayList<>(reference.getAllTrackedDays())));
+        assertThat(new ArrayList<>(sut.queryAllItems()), is(new ArrayList<>(reference.queryAllItems())));
+        for (TimeTrackingItem item : items) {
+            assertThat(sut.getPreviousTimeTrackingItem(item), is(reference.getPreviousTimeTrackingItem(item)));
+            assertThat(sut.getNextTimeTrackingTime(item), is(reference.getNextTimeTrackingTime(item)));
+        }
+        for (int i = 0; i < 300; i++) {
+            Optional<DateTime> start = randomTime(random);
+            Optional<DateTime> end = randomTime(random);
+            Optional<Integer> maxItems = random.nextBoolean() ? Optional.of(random.nextInt(20))
+                    : Optional.<Integer>absent();
+            assertThat(new ArrayList<>(sut.queryFirstNItems(start, end, maxItems)),
+                    is(new ArrayList<>(reference.queryFirstNItems(start, end, maxItems))));
+
+            DNFClause clause = randomClause(random);
+            assertThat(new ArrayList<>(sut.queryItems(clause)), is(new ArrayList<>(reference.queryItems(clause))));
+            DateTime ongoingUntil = randomTime(random).or(BASE);
+            assertThat(sut.sumDurationsByComment(clause, ongoingUntil),
+                    is(reference.sumDurationsByComment(clause, ongoingUntil)));
+            assertThat(sut.sumDurationsByDayAndComment(clause, ongoingUntil),
+                    is(reference.sumDurationsByDayAndComment(clause, ongoingUntil)));
+            int maxComments = random.nextInt(30);
+            assertThat(sut.queryLatestComments(clause, maxComments),
+                    is(reference.queryLatestComments(clause, maxComments)));
+        }
+    }
+
+    @Test
+    public void shouldApplyItemEvents() {
+        // GIVEN
+        TimeTrackingItem first = new TimeTrackingItem("first", BASE);
+        items.add(first);
+        sut.queryAllItems();
+
+        // WHEN
+        TimeTrackingItem second = new TimeTrackingItem("second", BASE.plusHours(1));
+        eventBus.post(new ItemInserted(second));
+        eventBus.post(new ItemDeleted(first.withEnd(BASE.plusHours(1))));
+
+        // THEN
+        assertThat(new ArrayList<>(sut.queryAllItems()), is(list(second)));
+        assertThat(sut.getCurrentTimeTrackingitem(), is(Optional.of(second)));
+    }
+
+    @Test
+    public void latestItemShouldBeReadFromTheEnd() {
+        // GIVEN
+        items.add(new TimeTrackingItem("first", BASE, BASE.plusHours(1)));
+        items.add(new TimeTrackingItem("second", BASE.plusHours(1)));
+        final List<String> reads = new ArrayList<>();
+        sut = new IndexedTimeTrackingItemQueries(new PreCachingItemReaderProvider(new ReversibleItemReaderProvider() {
+            @Override
+            public ItemReader provideReader() {
+                reads.add("forward");
+                return new ListItemReader(items);
+            }
+
+            @Override
+            public ItemReader provideReverseReader() {
+                reads.add("reverse");
+                return new ListItemReader(Lists.reverse(items));
+            }
+        }), eventBus);
+
+        // WHEN
+        Optional<TimeTrackingItem> latest = sut.getLatestTimeTrackingitem();
+        TimeTrackingItem third = new TimeTrackingItem("third", BASE.plusHours(2));
+        eventBus.post(new ItemInserted(third));
+
+        // THEN
+        assertThat(latest, is(Optional.of(items.get(1))));
+        assertThat(sut.getCurrentTimeTrackingitem(), is(Optional.of(third)));
+        assertThat(reads, is(Arrays.asList("reverse")));
+    }
+
+    @Test
+    public void fileChangesShouldReloadIndex() {
+        // GIVEN
+        sut.queryAllItems();
+        TimeTrackingItem item = new TimeTrackingItem("external", BASE);
+        items.add(item);
+
+        // WHEN
+        eventBus.post(new FileChanged(Paths.get("test.stt")));
+
+        // THEN
+        assertThat(sut.getLatestTimeTrackingitem(), is(Optional.of(item)));
+    }
+
+    private void givenRandomItems(Random random, int count) {
+        DateTime start = BASE;
+        for (int i = 0; i < count; i++) {
+            DateTime end = start.plusMinutes(random.nextInt(4) * 30);
+            items.add(new TimeTrackingItem(random.nextBoolean() ? "work " + i : "pause", start, end));
+            start = end.plusMinutes(random.nextInt(3) == 0 ? random.nextInt(60 * 36) : 0);
+        }
+        items.add(new TimeTrackingItem("current", start));
+    }
+
+    private Optional<DateTime> randomTime(Random random) {
+        if (random.nextInt(4) == 0) {
+            return Optional.absent();
+        }
+        DateTime last = items.get(items.size() - 1).getStart();
+        long span = last.getMillis() - BASE.getMillis();
+        return Optional.of(BASE.plusMinutes((int) ((random.nextDouble() * span) / 60000 / 30) * 30));
+    }
+
+    private DNFClause randomClause(Random random) {
+        DNFClause clause = new DNFClause();
+        switch (random.nextInt(5)) {
+            case 0:
+                clause.withPeriodAtDay(new LocalDate(randomTime(random).or(BASE)));
+                break;
+            case 1:
+                DateTime from = randomTime(random).or(BASE);
+                clause.withStartBetween(new Interval(from, from.plusHours(random.nextInt(100))));
+                break;
+            case 2:
+                clause.withEndNotAfter(randomTime(random).or(BASE));
+                break;
+            case 3:
+                clause.withStartNotBefore(randomTime(random).or(BASE)).withEndBefore(randomTime(random).or(BASE));
+                break;
+            default:
+                clause.withCommentContains("work 1");
+        }
+        return clause;
+    }
+
+    private static List<TimeTrackingItem> list(TimeTrackingItem... items) {
+        List<TimeTrackingItem> result = new ArrayList<>();
+        for (TimeTrackingItem item : items) {
+            result.add(item);
+        }
+        return result;
+    }
+}